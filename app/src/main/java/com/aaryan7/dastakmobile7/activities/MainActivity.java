@@ -5,6 +5,8 @@ import android.widget.TextView;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
 
 import com.aaryan7.dastakmobile7.R;
 import com.aaryan7.dastakmobile7.fragments.BillingFragment;
@@ -18,9 +20,15 @@ import com.google.android.material.bottomnavigation.BottomNavigationView;
  * Main Activity for the app
  */
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG_PRODUCTS = "products";
+    private static final String TAG_BILLING = "billing";
+    private static final String TAG_SALES = "sales";
+    private static final String STATE_CURRENT_TAB = "current_tab";
+
     private MaterialToolbar toolbar;
     private TextView tvGreeting;
     private BottomNavigationView bottomNavigation;
+    private String currentTab;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,12 +49,20 @@ public class MainActivity extends AppCompatActivity {
         // Set up bottom navigation
         setupBottomNavigation();
         
-        // Load default fragment
+        // Load default fragment; after recreation the fragment manager has restored the tabs
         if (savedInstanceState == null) {
-            loadFragment(new ProductFragment());
+            showTab(TAG_PRODUCTS);
+        } else {
+            currentTab = savedInstanceState.getString(STATE_CURRENT_TAB);
         }
     }
     
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_CURRENT_TAB, currentTab);
+    }
+    
     @Override
     protected void onResume() {
         super.onResume();
@@ -67,37 +83,73 @@ public class MainActivity extends AppCompatActivity {
      */
     private void setupBottomNavigation() {
         bottomNavigation.setOnItemSelectedListener(item -> {
-            Fragment fragment = null;
-            
             int itemId = item.getItemId();
             if (itemId == R.id.nav_products) {
-                fragment = new ProductFragment();
                 toolbar.setTitle("Products");
+                return showTab(TAG_PRODUCTS);
             } else if (itemId == R.id.nav_billing) {
-                fragment = new BillingFragment();
                 toolbar.setTitle("Billing");
+                return showTab(TAG_BILLING);
             } else if (itemId == R.id.nav_sales) {
-                fragment = new SalesFragment();
                 toolbar.setTitle("Sales Analysis");
+                return showTab(TAG_SALES);
             }
             
-            return loadFragment(fragment);
+            return false;
         });
     }
     
     /**
-     * Load fragment
-     * @param fragment Fragment to load
+     * Show a tab, keeping the other tabs' fragments alive but hidden so
+     * switching back is instant and needs no reload
+     * @param tag Tag of the tab to show
      * @return true if successful, false otherwise
      */
-    private boolean loadFragment(Fragment fragment) {
-        if (fragment != null) {
-            getSupportFragmentManager()
-                    .beginTransaction()
-                    .replace(R.id.fragment_container, fragment)
-                    .commit();
+    private boolean showTab(String tag) {
+        FragmentManager fragmentManager = getSupportFragmentManager();
+        
+        // Screens opened on top of a tab, such as the bill history, close on a tab switch
+        if (fragmentManager.getBackStackEntryCount() > 0) {
+            fragmentManager.popBackStackImmediate(null, FragmentManager.POP_BACK_STACK_INCLUSIVE);
+        }
+        
+        if (tag.equals(currentTab)) {
             return true;
         }
-        return false;
+        
+        FragmentTransaction transaction = fragmentManager.beginTransaction();
+        
+        Fragment current = currentTab == null ? null : fragmentManager.findFragmentByTag(currentTab);
+        if (current != null) {
+            transaction.hide(current);
+        }
+        
+        Fragment target = fragmentManager.findFragmentByTag(tag);
+        if (target == null) {
+            transaction.add(R.id.fragment_container, createTab(tag), tag);
+        } else {
+            transaction.show(target);
+        }
+        
+        transaction.commit();
+        currentTab = tag;
+        return true;
+    }
+    
+    /**
+     * Create the fragment for a tab
+     * @param tag Tag of the tab
+     * @return New fragment
+     */
+    private Fragment createTab(String tag) {
+        switch (tag) {
+            case TAG_BILLING:
+                return new BillingFragment();
+            case TAG_SALES:
+                return new SalesFragment();
+            case TAG_PRODUCTS:
+            default:
+                return new ProductFragment();
+        }
     }
 }
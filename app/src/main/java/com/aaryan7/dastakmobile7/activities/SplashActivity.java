@@ -3,20 +3,27 @@ package com.aaryan7.dastakmobile7.activities;
 import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
+import android.util.Log;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.aaryan7.dastakmobile7.R;
+import com.aaryan7.dastakmobile7.database.DatabaseHelper;
+import com.aaryan7.dastakmobile7.utils.AppExecutors;
 import com.aaryan7.dastakmobile7.utils.TrialManager;
 
 /**
  * Splash Activity for app launch
  */
 public class SplashActivity extends AppCompatActivity {
+    private static final String TAG = "SplashActivity";
     private static final int SPLASH_DURATION = 2000; // 2 seconds
     private TextView tvAppName, tvDeveloper;
     private TrialManager trialManager;
+    private boolean splashDone;
+    private boolean databaseReady;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -33,8 +40,72 @@ public class SplashActivity extends AppCompatActivity {
         // Animate views
         animateViews();
         
+        // Open the database in the background so any schema upgrade runs off
+        // the main thread while the splash is showing
+        openDatabase();
+        
         // Navigate to appropriate activity after delay
-        new Handler().postDelayed(this::navigateNext, SPLASH_DURATION);
+        new Handler().postDelayed(() -> {
+            splashDone = true;
+            navigateWhenReady();
+        }, SPLASH_DURATION);
+    }
+    
+    /**
+     * Open the shared database, then continue any chunked backfills
+     */
+    private void openDatabase() {
+        DatabaseHelper dbHelper = DatabaseHelper.getInstance(this);
+        AppExecutors executors = AppExecutors.getInstance();
+        
+        // Opening may upgrade the schema, which is a write
+        executors.diskWrite().execute(() -> {
+            try {
+                dbHelper.getDatabase();
+                
+                // Load the product catalog now so billing never waits on the disk
+                dbHelper.getProductCatalog().preload();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Could not open the database", e);
+                runOnUiThread(this::showDatabaseError);
+                return;
+            }
+            
+            runOnUiThread(() -> {
+                databaseReady = true;
+                navigateWhenReady();
+            });
+            
+            // Backfills commit in small chunks, so the app can be used meanwhile
+            executors.jobs().execute(() -> {
+                try {
+                    dbHelper.runPendingBackfills();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Backfill failed", e);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Tell the user the shop data could not be opened, instead of leaving the
+     * splash up with no explanation
+     */
+    private void showDatabaseError() {
+        if (isFinishing()) {
+            return;
+        }
+        tvDeveloper.setText("Could not open shop data. Please restart the app.");
+        Toast.makeText(this, "Could not open shop data", Toast.LENGTH_LONG).show();
+    }
+    
+    /**
+     * Navigate once both the splash delay has passed and the database is open
+     */
+    private void navigateWhenReady() {
+        if (splashDone && databaseReady && !isFinishing()) {
+            navigateNext();
+        }
     }
     
     /**
@@ -0,0 +1,159 @@
+package com.aaryan7.dastakmobile7.adapters;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.aaryan7.dastakmobile7.R;
+import com.aaryan7.dastakmobile7.models.Bill;
+import com.aaryan7.dastakmobile7.models.BillItem;
+import com.aaryan7.dastakmobile7.utils.Money;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Adapter for displaying saved bills in a RecyclerView, with expandable items
+ */
+public class BillHistoryAdapter extends RecyclerView.Adapter<BillHistoryAdapter.BillViewHolder> {
+    private List<Bill> bills;
+    private Map<Long, List<BillItem>> expandedItems;
+    private OnBillClickListener listener;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy, HH:mm", Locale.getDefault());
+
+    public interface OnBillClickListener {
+        void onBillClick(Bill bill);
+    }
+
+    public BillHistoryAdapter(OnBillClickListener listener) {
+        this.bills = new ArrayList<>();
+        this.expandedItems = new HashMap<>();
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @NonNull
+    @Override
+    public BillViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_bill_history, parent, false);
+        return new BillViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull BillViewHolder holder, int position) {
+        Bill bill = bills.get(position);
+        holder.bind(bill, expandedItems.get(bill.getId()));
+    }
+
+    @Override
+    public int getItemCount() {
+        return bills.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return bills.get(position).getId();
+    }
+
+    /**
+     * Update the adapter with a new window of bills. Only the pages that were
+     * added or dropped are notified, so the scroll position is kept.
+     * @param newBills New list of bills
+     */
+    public void setBills(List<Bill> newBills) {
+        List<Bill> oldBills = bills;
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldBills.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newBills.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return oldBills.get(oldPosition).getId() == newBills.get(newPosition).getId();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                // Saved bills do not change
+                return true;
+            }
+        });
+        
+        bills = newBills;
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Update the items of expanded bills, rebinding only bills whose state changed
+     * @param newExpandedItems Items keyed by bill ID
+     */
+    public void setExpandedItems(Map<Long, List<BillItem>> newExpandedItems) {
+        Map<Long, List<BillItem>> oldExpandedItems = expandedItems;
+        expandedItems = newExpandedItems;
+        
+        for (int i = 0; i < bills.size(); i++) {
+            long billId = bills.get(i).getId();
+            if (oldExpandedItems.get(billId) != newExpandedItems.get(billId)) {
+                notifyItemChanged(i);
+            }
+        }
+    }
+
+    class BillViewHolder extends RecyclerView.ViewHolder {
+        private TextView tvBillNumber;
+        private TextView tvBillDate;
+        private TextView tvBillAmount;
+        private TextView tvBillItems;
+
+        public BillViewHolder(@NonNull View itemView) {
+            super(itemView);
+            tvBillNumber = itemView.findViewById(R.id.tv_bill_number);
+            tvBillDate = itemView.findViewById(R.id.tv_bill_date);
+            tvBillAmount = itemView.findViewById(R.id.tv_bill_amount);
+            tvBillItems = itemView.findViewById(R.id.tv_bill_items);
+        }
+
+        public void bind(final Bill bill, List<BillItem> items) {
+            tvBillNumber.setText("Bill #" + bill.getId());
+            tvBillDate.setText(dateFormat.format(bill.getDate()));
+            tvBillAmount.setText(Money.formatRupees(bill.getFinalAmount()));
+            
+            if (items == null) {
+                tvBillItems.setVisibility(View.GONE);
+            } else {
+                StringBuilder text = new StringBuilder();
+                for (BillItem item : items) {
+                    if (text.length() > 0) {
+                        text.append('\n');
+                    }
+                    text.append(item.getProductName()).append(" x ").append(item.getQuantity()).append(" = ₹");
+                    Money.appendTo(text, item.getSubtotal());
+                }
+                tvBillItems.setText(text);
+                tvBillItems.setVisibility(View.VISIBLE);
+            }
+
+            itemView.setOnClickListener(v -> {
+                if (listener != null) {
+                    listener.onBillClick(bill);
+                }
+            });
+        }
+    }
+}
@@ -10,26 +10,39 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.aaryan7.dastakmobile7.R;
+import com.aaryan7.dastakmobile7.models.Bill;
 import com.aaryan7.dastakmobile7.models.BillItem;
+import com.aaryan7.dastakmobile7.utils.Money;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
 
 /**
- * Adapter for displaying bill items in a RecyclerView
+ * Adapter for displaying bill items in a RecyclerView. It replays the line
+ * changes the bill recorded since it was last shown, so adding a line inserts
+ * one row and adding more of a product only rebinds that row's quantity and
+ * subtotal, without diffing the whole bill.
  */
 public class BillItemAdapter extends RecyclerView.Adapter<BillItemAdapter.BillItemViewHolder> {
-    private List<BillItem> items;
-    private OnItemRemoveListener listener;
+    // Change payloads, combined as bit flags
+    public static final int CHANGED_NAME = 1;
+    public static final int CHANGED_PRICE = 1 << 1;
+    public static final int CHANGED_QUANTITY = 1 << 2;
+
+    private final OnItemRemoveListener listener;
+    // Copies of the lines as shown, and the bill revision they reflect
+    private final List<BillItem> items = new ArrayList<>();
+    private Bill shownBill;
+    private int shownRevision;
 
     public interface OnItemRemoveListener {
         void onItemRemove(int position);
     }
 
     public BillItemAdapter(OnItemRemoveListener listener) {
-        this.items = new ArrayList<>();
         this.listener = listener;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -42,8 +55,21 @@ public class BillItemAdapter extends RecyclerView.Adapter<BillItemAdapter.BillIt
 
     @Override
     public void onBindViewHolder(@NonNull BillItemViewHolder holder, int position) {
-        BillItem item = items.get(position);
-        holder.bind(item, position);
+        holder.bind(items.get(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull BillItemViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        int changed = 0;
+        for (Object payload : payloads) {
+            changed |= (Integer) payload;
+        }
+        holder.bindChanges(items.get(position), changed);
     }
 
     @Override
@@ -51,13 +77,70 @@ public class BillItemAdapter extends RecyclerView.Adapter<BillItemAdapter.BillIt
         return items.size();
     }
 
+    @Override
+    public long getItemId(int position) {
+        return items.get(position).getProductId();
+    }
+
     /**
-     * Update the adapter with new items
-     * @param items New list of items
+     * Show the lines of a bill. Changes made to the same bill since the last
+     * call are applied row by row; a different bill, or one that changed too
+     * much meanwhile, is reloaded in full.
+     * @param bill Bill to show
      */
-    public void setItems(List<BillItem> items) {
-        this.items = items;
-        notifyDataSetChanged();
+    public void showBill(Bill bill) {
+        List<Bill.Change> changes = bill == shownBill ? bill.getChangesSince(shownRevision) : null;
+        shownBill = bill;
+        shownRevision = bill.getRevision();
+
+        if (changes == null) {
+            items.clear();
+            for (BillItem item : bill.getItems()) {
+                items.add(new BillItem(item));
+            }
+            notifyDataSetChanged();
+            return;
+        }
+
+        for (Bill.Change change : changes) {
+            int position = change.getPosition();
+            switch (change.getType()) {
+                case Bill.Change.INSERTED:
+                    items.add(position, change.getItem());
+                    notifyItemInserted(position);
+                    break;
+                case Bill.Change.CHANGED:
+                    int changed = changedFields(items.get(position), change.getItem());
+                    items.set(position, change.getItem());
+                    notifyItemChanged(position, changed);
+                    break;
+                case Bill.Change.REMOVED:
+                    items.remove(position);
+                    notifyItemRemoved(position);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Work out which shown fields differ between two versions of a bill item
+     * @param oldItem Item as shown
+     * @param newItem Item as it is now
+     * @return CHANGED_* flags, or 0 if the row looks the same
+     */
+    static int changedFields(BillItem oldItem, BillItem newItem) {
+        int changed = 0;
+        if (!Objects.equals(oldItem.getProductName(), newItem.getProductName())) {
+            changed |= CHANGED_NAME;
+        }
+        if (oldItem.getPrice() != newItem.getPrice()) {
+            changed |= CHANGED_PRICE;
+        }
+        if (oldItem.getQuantity() != newItem.getQuantity()
+                || oldItem.getSubtotal() != newItem.getSubtotal()) {
+            changed |= CHANGED_QUANTITY;
+        }
+        return changed;
     }
 
     class BillItemViewHolder extends RecyclerView.ViewHolder {
@@ -74,19 +157,36 @@ public class BillItemAdapter extends RecyclerView.Adapter<BillItemAdapter.BillIt
             tvItemPrice = itemView.findViewById(R.id.tv_item_price);
             tvItemSubtotal = itemView.findViewById(R.id.tv_item_subtotal);
             btnRemoveItem = itemView.findViewById(R.id.btn_remove_item);
-        }
-
-        public void bind(final BillItem item, final int position) {
-            tvItemName.setText(item.getProductName());
-            tvItemQuantity.setText(String.valueOf(item.getQuantity()));
-            tvItemPrice.setText(String.format(Locale.getDefault(), "%.2f", item.getPrice()));
-            tvItemSubtotal.setText(String.format(Locale.getDefault(), "%.2f", item.getSubtotal()));
 
+            // Ask for the position on click, as rows move without being rebound
             btnRemoveItem.setOnClickListener(v -> {
-                if (listener != null) {
+                int position = getBindingAdapterPosition();
+                if (listener != null && position != RecyclerView.NO_POSITION) {
                     listener.onItemRemove(position);
                 }
             });
         }
+
+        public void bind(final BillItem item) {
+            bindChanges(item, CHANGED_NAME | CHANGED_PRICE | CHANGED_QUANTITY);
+        }
+
+        /**
+         * Rebind only some fields of the row
+         * @param item Item to show
+         * @param changed CHANGED_* flags of the fields to update
+         */
+        void bindChanges(BillItem item, int changed) {
+            if ((changed & CHANGED_NAME) != 0) {
+                tvItemName.setText(item.getProductName());
+            }
+            if ((changed & CHANGED_PRICE) != 0) {
+                tvItemPrice.setText(Money.format(item.getPrice()));
+            }
+            if ((changed & CHANGED_QUANTITY) != 0) {
+                tvItemQuantity.setText(String.valueOf(item.getQuantity()));
+                tvItemSubtotal.setText(Money.format(item.getSubtotal()));
+            }
+        }
     }
 }
@@ -6,22 +6,50 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.aaryan7.dastakmobile7.R;
 import com.aaryan7.dastakmobile7.models.Product;
+import com.aaryan7.dastakmobile7.utils.Money;
 import com.google.android.material.button.MaterialButton;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
 
 /**
- * Adapter for displaying products in a RecyclerView
+ * Adapter for displaying products in a RecyclerView. New lists are diffed on a
+ * background thread, and a product whose stock or prices changed only has
+ * those fields rebound.
  */
-public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductViewHolder> {
-    private List<Product> products;
-    private OnProductClickListener listener;
+public class ProductAdapter extends ListAdapter<Product, ProductAdapter.ProductViewHolder> {
+    // Change payloads, combined as bit flags
+    public static final int CHANGED_NAME = 1;
+    public static final int CHANGED_PRICES = 1 << 1;
+    public static final int CHANGED_QUANTITY = 1 << 2;
+
+    /**
+     * Matches products by ID and reports which of the shown fields changed
+     */
+    public static final DiffUtil.ItemCallback<Product> DIFF_CALLBACK = new DiffUtil.ItemCallback<Product>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Product oldItem, @NonNull Product newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Product oldItem, @NonNull Product newItem) {
+            return changedFields(oldItem, newItem) == 0;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Product oldItem, @NonNull Product newItem) {
+            return changedFields(oldItem, newItem);
+        }
+    };
+
+    private final OnProductClickListener listener;
 
     public interface OnProductClickListener {
         void onEditClick(Product product);
@@ -29,8 +57,9 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
     }
 
     public ProductAdapter(OnProductClickListener listener) {
-        this.products = new ArrayList<>();
+        super(DIFF_CALLBACK);
         this.listener = listener;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -43,22 +72,57 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
 
     @Override
     public void onBindViewHolder(@NonNull ProductViewHolder holder, int position) {
-        Product product = products.get(position);
-        holder.bind(product);
+        holder.bind(getItem(position));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ProductViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        int changed = 0;
+        for (Object payload : payloads) {
+            changed |= (Integer) payload;
+        }
+        holder.bindChanges(getItem(position), changed);
     }
 
     @Override
-    public int getItemCount() {
-        return products.size();
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
 
     /**
-     * Update the adapter with new products
-     * @param products New list of products
+     * Update the adapter with new products. The list is diffed against the
+     * current one in the background and only changed rows are rebound.
+     * @param products New list of products; must not be modified afterwards
      */
     public void setProducts(List<Product> products) {
-        this.products = products;
-        notifyDataSetChanged();
+        submitList(products);
+    }
+
+    /**
+     * Work out which shown fields differ between two versions of a product
+     * @param oldItem Product as shown
+     * @param newItem Product as it is now
+     * @return CHANGED_* flags, or 0 if the row looks the same
+     */
+    static int changedFields(Product oldItem, Product newItem) {
+        int changed = 0;
+        if (!Objects.equals(oldItem.getName(), newItem.getName())) {
+            changed |= CHANGED_NAME;
+        }
+        if (oldItem.getPurchasePrice() != newItem.getPurchasePrice()
+                || oldItem.getSellingPrice() != newItem.getSellingPrice()
+                || oldItem.getProfit() != newItem.getProfit()) {
+            changed |= CHANGED_PRICES;
+        }
+        if (oldItem.getQuantity() != newItem.getQuantity()) {
+            changed |= CHANGED_QUANTITY;
+        }
+        return changed;
     }
 
     class ProductViewHolder extends RecyclerView.ViewHolder {
@@ -79,26 +143,44 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ProductV
             tvQuantity = itemView.findViewById(R.id.tv_quantity);
             btnEdit = itemView.findViewById(R.id.btn_edit_product);
             btnDelete = itemView.findViewById(R.id.btn_delete_product);
-        }
-
-        public void bind(final Product product) {
-            tvProductName.setText(product.getName());
-            tvPurchasePrice.setText(String.format(Locale.getDefault(), "%.2f", product.getPurchasePrice()));
-            tvSellingPrice.setText(String.format(Locale.getDefault(), "%.2f", product.getSellingPrice()));
-            tvProfit.setText(String.format(Locale.getDefault(), "%.2f", product.getProfit()));
-            tvQuantity.setText(String.format(Locale.getDefault(), "%d pcs", product.getQuantity()));
 
+            // Look the product up on click, so rows rebound with a payload still act on the current one
             btnEdit.setOnClickListener(v -> {
-                if (listener != null) {
-                    listener.onEditClick(product);
+                int position = getBindingAdapterPosition();
+                if (listener != null && position != RecyclerView.NO_POSITION) {
+                    listener.onEditClick(getItem(position));
                 }
             });
 
             btnDelete.setOnClickListener(v -> {
-                if (listener != null) {
-                    listener.onDeleteClick(product);
+                int position = getBindingAdapterPosition();
+                if (listener != null && position != RecyclerView.NO_POSITION) {
+                    listener.onDeleteClick(getItem(position));
                 }
             });
         }
+
+        public void bind(final Product product) {
+            bindChanges(product, CHANGED_NAME | CHANGED_PRICES | CHANGED_QUANTITY);
+        }
+
+        /**
+         * Rebind only some fields of the row
+         * @param product Product to show
+         * @param changed CHANGED_* flags of the fields to update
+         */
+        void bindChanges(Product product, int changed) {
+            if ((changed & CHANGED_NAME) != 0) {
+                tvProductName.setText(product.getName());
+            }
+            if ((changed & CHANGED_PRICES) != 0) {
+                tvPurchasePrice.setText(Money.format(product.getPurchasePrice()));
+                tvSellingPrice.setText(Money.format(product.getSellingPrice()));
+                tvProfit.setText(Money.format(product.getProfit()));
+            }
+            if ((changed & CHANGED_QUANTITY) != 0) {
+                tvQuantity.setText(product.getQuantity() + " pcs");
+            }
+        }
     }
 }
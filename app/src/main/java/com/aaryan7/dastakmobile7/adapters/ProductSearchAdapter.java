@@ -0,0 +1,105 @@
+package com.aaryan7.dastakmobile7.adapters;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import com.aaryan7.dastakmobile7.models.Product;
+import com.aaryan7.dastakmobile7.utils.Money;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Suggestions for a product AutoCompleteTextView. Each change of the typed
+ * text runs a search on the filter's worker thread; a search still queued
+ * when the next key arrives is dropped, so only the latest text is searched.
+ */
+public class ProductSearchAdapter extends BaseAdapter implements Filterable {
+    private final LayoutInflater inflater;
+    private final SearchSource source;
+    private List<Product> products;
+
+    /**
+     * Runs a product search. Called on a background thread.
+     */
+    public interface SearchSource {
+        List<Product> search(String query);
+    }
+
+    public ProductSearchAdapter(Context context, SearchSource source) {
+        this.inflater = LayoutInflater.from(context);
+        this.source = source;
+        this.products = new ArrayList<>();
+    }
+
+    /**
+     * Get the text shown for a product in the list and in the text field
+     * @param product Product
+     * @return Name with selling price
+     */
+    public static String getDisplayName(Product product) {
+        return product.getName() + " (" + Money.formatRupees(product.getSellingPrice()) + ")";
+    }
+
+    @Override
+    public int getCount() {
+        return products.size();
+    }
+
+    @Override
+    public Product getItem(int position) {
+        return products.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return products.get(position).getId();
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView view = (TextView) (convertView != null ? convertView
+                : inflater.inflate(android.R.layout.simple_dropdown_item_1line, parent, false));
+        view.setText(getDisplayName(getItem(position)));
+        return view;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<Product> results = source.search(constraint == null ? "" : constraint.toString());
+
+            FilterResults filterResults = new FilterResults();
+            filterResults.values = results;
+            filterResults.count = results.size();
+            return filterResults;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            products = results.values != null ? (List<Product>) results.values : new ArrayList<>();
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+
+        @Override
+        public CharSequence convertResultToString(Object resultValue) {
+            return getDisplayName((Product) resultValue);
+        }
+    };
+}
@@ -0,0 +1,34 @@
+package com.aaryan7.dastakmobile7.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Data fill-in for a large table that runs after the schema upgrade, one
+ * chunk of rows at a time. Progress is recorded after every chunk, so a
+ * backfill interrupted by the app being killed resumes where it stopped.
+ */
+public abstract class Backfill {
+    private final String name;
+
+    /**
+     * @param name Unique name under which progress is recorded
+     */
+    public Backfill(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Process the next chunk of rows
+     * @param db Database, inside a transaction
+     * @param afterId Last row ID already processed, 0 at the start
+     * @param endId Last row ID to process; rows added after the backfill was
+     *              scheduled are already complete and must be left alone
+     * @param chunkSize Maximum number of rows to process
+     * @return ID of the last row processed, or -1 if no rows were left
+     */
+    public abstract long runChunk(SQLiteDatabase db, long afterId, long endId, int chunkSize);
+}
@@ -0,0 +1,47 @@
+package com.aaryan7.dastakmobile7.database;
+
+/**
+ * Controls when the write-ahead log is folded back into the main database file
+ */
+public class CheckpointPolicy {
+    // SQLite page size used by Android databases
+    private static final int PAGE_SIZE_BYTES = 4096;
+
+    private final long idleDelayMillis;
+    private final int sizeThresholdPages;
+
+    /**
+     * Default policy: checkpoint after 5 seconds without writes, or as soon
+     * as the log grows past 1000 pages (about 4 MB)
+     */
+    public CheckpointPolicy() {
+        this(5000, 1000);
+    }
+
+    /**
+     * @param idleDelayMillis Run a checkpoint once no write has happened for this long,
+     *                        or 0 to disable idle-time checkpoints
+     * @param sizeThresholdPages Let SQLite checkpoint automatically when the log exceeds
+     *                           this many pages
+     */
+    public CheckpointPolicy(long idleDelayMillis, int sizeThresholdPages) {
+        this.idleDelayMillis = idleDelayMillis;
+        this.sizeThresholdPages = sizeThresholdPages;
+    }
+
+    public long getIdleDelayMillis() {
+        return idleDelayMillis;
+    }
+
+    public int getSizeThresholdPages() {
+        return sizeThresholdPages;
+    }
+
+    /**
+     * Get the size the log file is truncated back to after a checkpoint
+     * @return Size limit in bytes
+     */
+    public long getJournalSizeLimitBytes() {
+        return (long) sizeThresholdPages * PAGE_SIZE_BYTES;
+    }
+}
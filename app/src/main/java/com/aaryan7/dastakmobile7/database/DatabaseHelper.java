@@ -1,28 +1,36 @@
 package com.aaryan7.dastakmobile7.database;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
 
 import com.aaryan7.dastakmobile7.models.Product;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Database helper class for product management
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
-    private static final String DATABASE_NAME = "dastakmobile.db";
-    private static final int DATABASE_VERSION = 1;
+    static final String DATABASE_NAME = "dastakmobile.db";
+    private static final int DATABASE_VERSION = 9;
+    private static final int BACKFILL_CHUNK_SIZE = 500;
 
     // Table names
     private static final String TABLE_PRODUCTS = "products";
     private static final String TABLE_BILLS = "bills";
     private static final String TABLE_BILL_ITEMS = "bill_items";
     private static final String TABLE_SALES = "sales";
+    private static final String TABLE_DAILY_SALES_SUMMARY = "daily_sales_summary";
+    private static final String TABLE_PRODUCTS_FTS = "products_fts";
 
     // Common column names
     private static final String COLUMN_ID = "id";
@@ -33,6 +41,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_SELLING_PRICE = "selling_price";
     private static final String COLUMN_QUANTITY = "quantity";
     private static final String COLUMN_PROFIT = "profit";
+    private static final String COLUMN_SKU = "sku";
     
     // Bills table columns
     private static final String COLUMN_BILL_DATE = "date";
@@ -43,31 +52,42 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     // Bill items table columns
     private static final String COLUMN_BILL_ID = "bill_id";
     private static final String COLUMN_PRODUCT_ID = "product_id";
+    private static final String COLUMN_ITEM_PRODUCT_NAME = "product_name";
     private static final String COLUMN_ITEM_QUANTITY = "quantity";
     private static final String COLUMN_ITEM_PRICE = "price";
+    private static final String COLUMN_ITEM_PURCHASE_PRICE = "purchase_price";
     private static final String COLUMN_ITEM_SUBTOTAL = "subtotal";
     
     // Sales table columns
     private static final String COLUMN_SALE_DATE = "date";
     private static final String COLUMN_SALE_AMOUNT = "amount";
     private static final String COLUMN_SALE_PROFIT = "profit";
+    private static final String COLUMN_SALE_ITEM_COUNT = "item_count";
+    
+    // Daily sales summary table columns
+    private static final String COLUMN_DAY_START = "day_start";
+    private static final String COLUMN_DAY_AMOUNT = "amount";
+    private static final String COLUMN_DAY_PROFIT = "profit";
+    private static final String COLUMN_DAY_BILL_COUNT = "bill_count";
+    private static final String COLUMN_DAY_ITEM_COUNT = "item_count";
 
-    // Create table statements
+    // Create table statements. Money columns hold whole paise.
     private static final String CREATE_TABLE_PRODUCTS = "CREATE TABLE " + TABLE_PRODUCTS + "("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
             + COLUMN_PRODUCT_NAME + " TEXT,"
-            + COLUMN_PURCHASE_PRICE + " REAL,"
-            + COLUMN_SELLING_PRICE + " REAL,"
+            + COLUMN_PURCHASE_PRICE + " INTEGER,"
+            + COLUMN_SELLING_PRICE + " INTEGER,"
             + COLUMN_QUANTITY + " INTEGER,"
-            + COLUMN_PROFIT + " REAL"
+            + COLUMN_PROFIT + " INTEGER,"
+            + COLUMN_SKU + " TEXT"
             + ")";
             
     private static final String CREATE_TABLE_BILLS = "CREATE TABLE " + TABLE_BILLS + "("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
-            + COLUMN_BILL_DATE + " TEXT,"
-            + COLUMN_BILL_TOTAL + " REAL,"
-            + COLUMN_BILL_DISCOUNT + " REAL,"
-            + COLUMN_BILL_FINAL_AMOUNT + " REAL"
+            + COLUMN_BILL_DATE + " INTEGER,"
+            + COLUMN_BILL_TOTAL + " INTEGER,"
+            + COLUMN_BILL_DISCOUNT + " INTEGER,"
+            + COLUMN_BILL_FINAL_AMOUNT + " INTEGER"
             + ")";
             
     private static final String CREATE_TABLE_BILL_ITEMS = "CREATE TABLE " + TABLE_BILL_ITEMS + "("
@@ -75,21 +95,240 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             + COLUMN_BILL_ID + " INTEGER,"
             + COLUMN_PRODUCT_ID + " INTEGER,"
             + COLUMN_ITEM_QUANTITY + " INTEGER,"
-            + COLUMN_ITEM_PRICE + " REAL,"
-            + COLUMN_ITEM_SUBTOTAL + " REAL,"
+            + COLUMN_ITEM_PRICE + " INTEGER,"
+            + COLUMN_ITEM_SUBTOTAL + " INTEGER,"
+            + COLUMN_ITEM_PRODUCT_NAME + " TEXT,"
+            + COLUMN_ITEM_PURCHASE_PRICE + " INTEGER,"
             + "FOREIGN KEY(" + COLUMN_BILL_ID + ") REFERENCES " + TABLE_BILLS + "(" + COLUMN_ID + "),"
             + "FOREIGN KEY(" + COLUMN_PRODUCT_ID + ") REFERENCES " + TABLE_PRODUCTS + "(" + COLUMN_ID + ")"
             + ")";
             
     private static final String CREATE_TABLE_SALES = "CREATE TABLE " + TABLE_SALES + "("
             + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT,"
-            + COLUMN_SALE_DATE + " TEXT,"
-            + COLUMN_SALE_AMOUNT + " REAL,"
-            + COLUMN_SALE_PROFIT + " REAL"
+            + COLUMN_SALE_DATE + " INTEGER,"
+            + COLUMN_SALE_AMOUNT + " INTEGER,"
+            + COLUMN_SALE_PROFIT + " INTEGER,"
+            + COLUMN_SALE_ITEM_COUNT + " INTEGER NOT NULL DEFAULT 0"
+            + ")";
+
+    // One row per local day, kept up to date with every recorded sale
+    private static final String CREATE_TABLE_DAILY_SALES_SUMMARY = "CREATE TABLE " + TABLE_DAILY_SALES_SUMMARY + "("
+            + COLUMN_DAY_START + " INTEGER PRIMARY KEY,"
+            + COLUMN_DAY_AMOUNT + " INTEGER NOT NULL DEFAULT 0,"
+            + COLUMN_DAY_PROFIT + " INTEGER NOT NULL DEFAULT 0,"
+            + COLUMN_DAY_BILL_COUNT + " INTEGER NOT NULL DEFAULT 0,"
+            + COLUMN_DAY_ITEM_COUNT + " INTEGER NOT NULL DEFAULT 0"
             + ")";
 
-    public DatabaseHelper(Context context) {
+    // Dates are stored as epoch milliseconds, indexed for range reports
+    private static final String CREATE_INDEX_BILLS_DATE = "CREATE INDEX IF NOT EXISTS idx_bills_date ON "
+            + TABLE_BILLS + "(" + COLUMN_BILL_DATE + ")";
+    private static final String CREATE_INDEX_SALES_DATE = "CREATE INDEX IF NOT EXISTS idx_sales_date ON "
+            + TABLE_SALES + "(" + COLUMN_SALE_DATE + ")";
+
+    // Bill items are looked up by bill and analysed by product
+    private static final String CREATE_INDEX_BILL_ITEMS_BILL = "CREATE INDEX IF NOT EXISTS idx_bill_items_bill_id ON "
+            + TABLE_BILL_ITEMS + "(" + COLUMN_BILL_ID + ")";
+    private static final String CREATE_INDEX_BILL_ITEMS_PRODUCT = "CREATE INDEX IF NOT EXISTS idx_bill_items_product_id ON "
+            + TABLE_BILL_ITEMS + "(" + COLUMN_PRODUCT_ID + ")";
+
+    // Scanned codes resolve to exactly one product; products without a SKU store NULL
+    private static final String CREATE_INDEX_PRODUCTS_SKU = "CREATE UNIQUE INDEX IF NOT EXISTS idx_products_sku ON "
+            + TABLE_PRODUCTS + "(" + COLUMN_SKU + ")";
+
+    // Full-text index of product names. It stores no text of its own and reads
+    // names from the products table, which the triggers below keep it in step
+    // with; stock updates do not touch the name and skip it.
+    private static final String CREATE_TABLE_PRODUCTS_FTS = "CREATE VIRTUAL TABLE " + TABLE_PRODUCTS_FTS
+            + " USING fts4(content=\"" + TABLE_PRODUCTS + "\", " + COLUMN_PRODUCT_NAME + ", tokenize=unicode61)";
+    private static final String[] CREATE_TRIGGERS_PRODUCTS_FTS = {
+            "CREATE TRIGGER products_fts_before_update BEFORE UPDATE OF " + COLUMN_PRODUCT_NAME
+                    + " ON " + TABLE_PRODUCTS + " BEGIN"
+                    + " DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old." + COLUMN_ID + "; END",
+            "CREATE TRIGGER products_fts_before_delete BEFORE DELETE ON " + TABLE_PRODUCTS + " BEGIN"
+                    + " DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old." + COLUMN_ID + "; END",
+            "CREATE TRIGGER products_fts_after_update AFTER UPDATE OF " + COLUMN_PRODUCT_NAME
+                    + " ON " + TABLE_PRODUCTS + " BEGIN"
+                    + " INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, " + COLUMN_PRODUCT_NAME + ")"
+                    + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_PRODUCT_NAME + "); END",
+            "CREATE TRIGGER products_fts_after_insert AFTER INSERT ON " + TABLE_PRODUCTS + " BEGIN"
+                    + " INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, " + COLUMN_PRODUCT_NAME + ")"
+                    + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_PRODUCT_NAME + "); END"
+    };
+
+    // Ranked name search: names starting with the first word come first, then
+    // shorter names, which are the closer matches for the same prefix
+    private static final String SQL_SEARCH_PRODUCTS = "SELECT p." + COLUMN_ID
+            + " FROM " + TABLE_PRODUCTS_FTS + " JOIN " + TABLE_PRODUCTS + " p ON p." + COLUMN_ID
+            + " = " + TABLE_PRODUCTS_FTS + ".docid"
+            + " WHERE " + TABLE_PRODUCTS_FTS + " MATCH ?"
+            + " AND (CAST(? AS INTEGER) = 0 OR p." + COLUMN_QUANTITY + " > 0)"
+            + " ORDER BY p." + COLUMN_PRODUCT_NAME + " LIKE ? ESCAPE '\\' DESC, length(p." + COLUMN_PRODUCT_NAME + "),"
+            + " p." + COLUMN_PRODUCT_NAME + " COLLATE NOCASE"
+            + " LIMIT ";
+
+    // Compiled write statements for the products table
+    private static final String SQL_INSERT_PRODUCT = "INSERT INTO " + TABLE_PRODUCTS + " ("
+            + COLUMN_PRODUCT_NAME + ", " + COLUMN_PURCHASE_PRICE + ", " + COLUMN_SELLING_PRICE + ", "
+            + COLUMN_QUANTITY + ", " + COLUMN_PROFIT + ", " + COLUMN_SKU + ") VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SQL_UPDATE_PRODUCT = "UPDATE " + TABLE_PRODUCTS + " SET "
+            + COLUMN_PRODUCT_NAME + " = ?, " + COLUMN_PURCHASE_PRICE + " = ?, " + COLUMN_SELLING_PRICE + " = ?, "
+            + COLUMN_QUANTITY + " = ?, " + COLUMN_PROFIT + " = ?, " + COLUMN_SKU + " = ?"
+            + " WHERE " + COLUMN_ID + " = ?";
+
+    // An imported row for a known product replaces its details and adds to its
+    // stock; a row without a SKU keeps the product's SKU. Binds like the update.
+    private static final String SQL_IMPORT_UPDATE_PRODUCT = "UPDATE " + TABLE_PRODUCTS + " SET "
+            + COLUMN_PRODUCT_NAME + " = ?, " + COLUMN_PURCHASE_PRICE + " = ?, " + COLUMN_SELLING_PRICE + " = ?, "
+            + COLUMN_QUANTITY + " = " + COLUMN_QUANTITY + " + ?, " + COLUMN_PROFIT + " = ?, "
+            + COLUMN_SKU + " = IFNULL(?, " + COLUMN_SKU + ")"
+            + " WHERE " + COLUMN_ID + " = ?";
+
+    // Decrease stock only if enough is left, so the check and the write are one step
+    private static final String SQL_RESERVE_STOCK = "UPDATE " + TABLE_PRODUCTS
+            + " SET " + COLUMN_QUANTITY + " = " + COLUMN_QUANTITY + " - ?"
+            + " WHERE " + COLUMN_ID + " = ? AND " + COLUMN_QUANTITY + " >= ?";
+
+    private static DatabaseHelper instance;
+
+    private final CheckpointPolicy checkpointPolicy = new CheckpointPolicy();
+    private final Handler checkpointHandler;
+    private final Runnable idleCheckpoint = this::checkpoint;
+    private StatementCache statementCache;
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();
+    private final ProductCatalog productCatalog = new ProductCatalog(this::queryAllProducts);
+    private final AtomicBoolean backfillsStarted = new AtomicBoolean();
+
+    /**
+     * Get the process-wide database helper. All repositories share this
+     * instance so the underlying connection is opened only once.
+     * @param context Any context; the application context is retained
+     * @return Shared DatabaseHelper
+     */
+    public static synchronized DatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Create a helper of its own. The app uses getInstance(); tests in this
+     * package open the database file the way the app does on start.
+     * @param context Context whose database directory holds the file
+     */
+    DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        
+        // With write-ahead logging the framework connection pool serves
+        // read-only queries on secondary connections, so reports can read
+        // while a bill is being committed on the primary connection
+        setWriteAheadLoggingEnabled(true);
+        
+        HandlerThread checkpointThread = new HandlerThread("db-checkpoint");
+        checkpointThread.start();
+        checkpointHandler = new Handler(checkpointThread.getLooper());
+    }
+
+    /**
+     * Get the shared database connection. The handle stays open for the
+     * lifetime of the process, so callers borrow it and must never close it.
+     * @return Open database
+     */
+    public SQLiteDatabase getDatabase() {
+        return getWritableDatabase();
+    }
+
+    /**
+     * Get the cache of compiled statements bound to the shared connection
+     * @return Statement cache
+     */
+    public synchronized StatementCache getStatementCache() {
+        if (statementCache == null) {
+            statementCache = new StatementCache(getDatabase());
+        }
+        return statementCache;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (statementCache != null) {
+            statementCache.clear();
+            statementCache = null;
+        }
+        super.close();
+    }
+
+    /**
+     * Record that a write was committed. Invalidates queries on the written
+     * tables, and restarts the idle timer so a checkpoint runs once the shop
+     * stops writing for a while.
+     * @param tables Tables the write touched
+     */
+    public void notifyWrite(String... tables) {
+        invalidationTracker.notifyTablesChanged(tables);
+        scheduleIdleCheckpoint();
+    }
+
+    /**
+     * Restart the idle timer of the checkpoint policy
+     */
+    private void scheduleIdleCheckpoint() {
+        checkpointHandler.removeCallbacks(idleCheckpoint);
+        long idleDelay = checkpointPolicy.getIdleDelayMillis();
+        if (idleDelay > 0) {
+            checkpointHandler.postDelayed(idleCheckpoint, idleDelay);
+        }
+    }
+
+    /**
+     * Get the tracker of table writes, for observable queries
+     * @return Invalidation tracker
+     */
+    public InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    /**
+     * Get the in-memory product catalog that serves product reads
+     * @return Product catalog
+     */
+    public ProductCatalog getProductCatalog() {
+        return productCatalog;
+    }
+
+    /**
+     * Copy committed pages from the write-ahead log into the database file.
+     * Passive mode never waits for readers or the writer.
+     */
+    public void checkpoint() {
+        runPragma(getDatabase(), "PRAGMA wal_checkpoint(PASSIVE)");
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        applyCheckpointPolicy(db);
+    }
+
+    /**
+     * Apply the size threshold of the checkpoint policy
+     * @param db Database to configure
+     */
+    private void applyCheckpointPolicy(SQLiteDatabase db) {
+        runPragma(db, "PRAGMA wal_autocheckpoint=" + checkpointPolicy.getSizeThresholdPages());
+        runPragma(db, "PRAGMA journal_size_limit=" + checkpointPolicy.getJournalSizeLimitBytes());
+    }
+
+    /**
+     * Run a pragma that may return a result row
+     * @param db Database to run on
+     * @param pragma Pragma statement
+     */
+    private static void runPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        cursor.moveToFirst();
+        cursor.close();
     }
 
     @Override
@@ -99,18 +338,36 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_TABLE_BILLS);
         db.execSQL(CREATE_TABLE_BILL_ITEMS);
         db.execSQL(CREATE_TABLE_SALES);
+        db.execSQL(CREATE_TABLE_DAILY_SALES_SUMMARY);
+        db.execSQL(CREATE_INDEX_BILLS_DATE);
+        db.execSQL(CREATE_INDEX_SALES_DATE);
+        db.execSQL(CREATE_INDEX_BILL_ITEMS_BILL);
+        db.execSQL(CREATE_INDEX_BILL_ITEMS_PRODUCT);
+        db.execSQL(CREATE_INDEX_PRODUCTS_SKU);
+        db.execSQL(CREATE_TABLE_PRODUCTS_FTS);
+        for (String trigger : CREATE_TRIGGERS_PRODUCTS_FTS) {
+            db.execSQL(trigger);
+        }
+        db.execSQL(MigrationRunner.CREATE_TABLE_BACKFILLS);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Drop older tables if existed
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BILL_ITEMS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BILLS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SALES);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS);
-        
-        // Create tables again
-        onCreate(db);
+        // Upgrade in place through every intermediate version; shop data is kept
+        MigrationRunner.migrate(db, oldVersion, newVersion, Migrations.ALL);
+    }
+    
+    /**
+     * Run backfills scheduled by migrations, one committed chunk at a time.
+     * Call from a background thread; it resumes where it stopped if the
+     * process was killed part-way. Only the first call in a process runs
+     * them; later calls return at once.
+     */
+    public void runPendingBackfills() {
+        if (!backfillsStarted.compareAndSet(false, true)) {
+            return;
+        }
+        MigrationRunner.runPendingBackfills(getDatabase(), Migrations.BACKFILLS, BACKFILL_CHUNK_SIZE);
     }
     
     /**
@@ -119,65 +376,203 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @return ID of the newly inserted product
      */
     public long addProduct(Product product) {
-        SQLiteDatabase db = this.getWritableDatabase();
+        long id;
         
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_PRODUCT_NAME, product.getName());
-        values.put(COLUMN_PURCHASE_PRICE, product.getPurchasePrice());
-        values.put(COLUMN_SELLING_PRICE, product.getSellingPrice());
-        values.put(COLUMN_QUANTITY, product.getQuantity());
-        values.put(COLUMN_PROFIT, product.getProfit());
-        
-        // Insert row
-        long id = db.insert(TABLE_PRODUCTS, null, values);
-        db.close();
+        // Write and cache under one lock so a catalog load cannot come in between
+        synchronized (productCatalog) {
+            id = insertProduct(product);
+            if (id != -1) {
+                Product added = new Product(product);
+                added.setId(id);
+                productCatalog.put(added);
+            }
+        }
+        notifyWrite(TABLE_PRODUCTS);
         
         return id;
     }
     
     /**
-     * Get a product by ID
+     * Write a batch of imported products in one transaction. A product with an
+     * ID updates that product and adds its quantity to the stock; a product
+     * without one, or whose product was deleted meanwhile, is inserted and
+     * gets its new ID. A product that could not be written, e.g. because its
+     * SKU belongs to another product, gets the ID -1.
+     *
+     * Observers are not notified, so an import of many batches can call
+     * notifyWrite() once at the end.
+     * @param products Products to write
+     * @return Number of products written
+     */
+    public int importProducts(List<Product> products) {
+        SQLiteDatabase db = getDatabase();
+        SQLiteStatement update = getStatementCache().get(SQL_IMPORT_UPDATE_PRODUCT);
+        int written = 0;
+        
+        synchronized (productCatalog) {
+            db.beginTransactionNonExclusive();
+            try {
+                for (Product product : products) {
+                    int updated = product.getId() > 0 ? importUpdate(update, product) : 0;
+                    if (updated == 0) {
+                        product.setId(insertProduct(product));
+                    } else if (updated < 0) {
+                        product.setId(-1);
+                    }
+                    if (product.getId() != -1) {
+                        written++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            
+            // Reloading once is cheaper than re-indexing after every row
+            productCatalog.invalidate();
+        }
+        
+        return written;
+    }
+    
+    /**
+     * Apply an imported row to an existing product
+     * @param statement Compiled import update statement
+     * @param product Imported product, with the ID of the product to update
+     * @return Number of rows updated, or -1 if the SKU belongs to another product
+     */
+    private static int importUpdate(SQLiteStatement statement, Product product) {
+        synchronized (statement) {
+            try {
+                bindProduct(statement, product);
+                statement.bindLong(7, product.getId());
+                return statement.executeUpdateDelete();
+            } catch (SQLiteConstraintException e) {
+                return -1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+    
+    /**
+     * Insert a product through the compiled insert statement
+     * @param product Product to insert
+     * @return ID of the new row, or -1 if the SKU belongs to another product
+     */
+    private long insertProduct(Product product) {
+        SQLiteStatement statement = getStatementCache().get(SQL_INSERT_PRODUCT);
+        
+        synchronized (statement) {
+            try {
+                bindProduct(statement, product);
+                return statement.executeInsert();
+            } catch (SQLiteConstraintException e) {
+                return -1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+    
+    /**
+     * Bind the product columns in the order used by the insert and update statements
+     * @param statement Statement to bind
+     * @param product Product to bind
+     */
+    private static void bindProduct(SQLiteStatement statement, Product product) {
+        if (product.getName() != null) {
+            statement.bindString(1, product.getName());
+        } else {
+            statement.bindNull(1);
+        }
+        statement.bindLong(2, product.getPurchasePrice());
+        statement.bindLong(3, product.getSellingPrice());
+        statement.bindLong(4, product.getQuantity());
+        statement.bindLong(5, product.getProfit());
+        if (product.getSku() != null) {
+            statement.bindString(6, product.getSku());
+        } else {
+            statement.bindNull(6);
+        }
+    }
+    
+    /**
+     * Get a product by ID from the catalog
      * @param id Product ID
-     * @return Product object
+     * @return Product object, or null if there is no such product
      */
     public Product getProduct(long id) {
-        SQLiteDatabase db = this.getReadableDatabase();
+        return productCatalog.getProduct(id);
+    }
+    
+    /**
+     * Get all products from the catalog
+     * @return List of all products
+     */
+    public List<Product> getAllProducts() {
+        return productCatalog.getAllProducts();
+    }
+    
+    /**
+     * Get a product by its SKU from the catalog
+     * @param sku Scanned or typed code
+     * @return Product object, or null if no product has this SKU
+     */
+    public Product getProductBySku(String sku) {
+        return productCatalog.findBySku(sku);
+    }
+    
+    /**
+     * Search product names. Every word of the query must match the start of a
+     * word in the name, so "bis mar" finds "Marie Biscuits".
+     * @param query Text typed by the user
+     * @param limit Maximum number of results
+     * @param inStockOnly true to leave out products with no stock
+     * @return IDs of the matching products, best match first
+     */
+    public List<Long> searchProductIds(String query, int limit, boolean inStockOnly) {
+        List<Long> ids = new ArrayList<>();
+        String[] words = query.trim().split("[^\\p{L}\\p{N}]+");
         
-        Cursor cursor = db.query(
-            TABLE_PRODUCTS,
-            new String[] { COLUMN_ID, COLUMN_PRODUCT_NAME, COLUMN_PURCHASE_PRICE, 
-                          COLUMN_SELLING_PRICE, COLUMN_QUANTITY, COLUMN_PROFIT },
-            COLUMN_ID + "=?",
-            new String[] { String.valueOf(id) },
-            null, null, null, null
-        );
+        // Quote each word as a prefix term so FTS operators typed by the user stay literal
+        StringBuilder match = new StringBuilder();
+        for (String word : words) {
+            if (!word.isEmpty()) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append('"').append(word).append("\"*");
+            }
+        }
         
-        if (cursor != null)
-            cursor.moveToFirst();
+        if (match.length() == 0) {
+            return ids;
+        }
         
-        Product product = new Product();
-        product.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_ID)));
-        product.setName(cursor.getString(cursor.getColumnIndex(COLUMN_PRODUCT_NAME)));
-        product.setPurchasePrice(cursor.getDouble(cursor.getColumnIndex(COLUMN_PURCHASE_PRICE)));
-        product.setSellingPrice(cursor.getDouble(cursor.getColumnIndex(COLUMN_SELLING_PRICE)));
-        product.setQuantity(cursor.getInt(cursor.getColumnIndex(COLUMN_QUANTITY)));
+        String firstWord = words[0].isEmpty() && words.length > 1 ? words[1] : words[0];
+        String namePrefix = firstWord.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
         
+        Cursor cursor = getDatabase().rawQuery(SQL_SEARCH_PRODUCTS + limit, new String[] {
+                match.toString(), inStockOnly ? "1" : "0", namePrefix });
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getLong(0));
+        }
         cursor.close();
-        db.close();
         
-        return product;
+        return ids;
     }
     
     /**
-     * Get all products
+     * Read all products from the table, to fill the catalog
      * @return List of all products
      */
-    public List<Product> getAllProducts() {
+    private List<Product> queryAllProducts() {
         List<Product> productList = new ArrayList<>();
         
         String selectQuery = "SELECT * FROM " + TABLE_PRODUCTS;
         
-        SQLiteDatabase db = this.getReadableDatabase();
+        SQLiteDatabase db = getDatabase();
         Cursor cursor = db.rawQuery(selectQuery, null);
         
         // Loop through all rows and add to list
@@ -186,16 +581,16 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 Product product = new Product();
                 product.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_ID)));
                 product.setName(cursor.getString(cursor.getColumnIndex(COLUMN_PRODUCT_NAME)));
-                product.setPurchasePrice(cursor.getDouble(cursor.getColumnIndex(COLUMN_PURCHASE_PRICE)));
-                product.setSellingPrice(cursor.getDouble(cursor.getColumnIndex(COLUMN_SELLING_PRICE)));
+                product.setPurchasePrice(cursor.getLong(cursor.getColumnIndex(COLUMN_PURCHASE_PRICE)));
+                product.setSellingPrice(cursor.getLong(cursor.getColumnIndex(COLUMN_SELLING_PRICE)));
                 product.setQuantity(cursor.getInt(cursor.getColumnIndex(COLUMN_QUANTITY)));
+                product.setSku(cursor.getString(cursor.getColumnIndex(COLUMN_SKU)));
                 
                 productList.add(product);
             } while (cursor.moveToNext());
         }
         
         cursor.close();
-        db.close();
         
         return productList;
     }
@@ -206,24 +601,29 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @return Number of rows affected
      */
     public int updateProduct(Product product) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_PRODUCT_NAME, product.getName());
-        values.put(COLUMN_PURCHASE_PRICE, product.getPurchasePrice());
-        values.put(COLUMN_SELLING_PRICE, product.getSellingPrice());
-        values.put(COLUMN_QUANTITY, product.getQuantity());
-        values.put(COLUMN_PROFIT, product.getProfit());
+        SQLiteStatement statement = getStatementCache().get(SQL_UPDATE_PRODUCT);
+        int result;
         
         // Update row
-        int result = db.update(
-            TABLE_PRODUCTS,
-            values,
-            COLUMN_ID + " = ?",
-            new String[] { String.valueOf(product.getId()) }
-        );
+        synchronized (productCatalog) {
+            synchronized (statement) {
+                try {
+                    bindProduct(statement, product);
+                    statement.bindLong(7, product.getId());
+                    result = statement.executeUpdateDelete();
+                } catch (SQLiteConstraintException e) {
+                    // The SKU belongs to another product
+                    result = 0;
+                } finally {
+                    statement.clearBindings();
+                }
+            }
+            if (result > 0) {
+                productCatalog.put(product);
+            }
+        }
         
-        db.close();
+        notifyWrite(TABLE_PRODUCTS);
         return result;
     }
     
@@ -232,13 +632,16 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @param product Product to delete
      */
     public void deleteProduct(Product product) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(
-            TABLE_PRODUCTS,
-            COLUMN_ID + " = ?",
-            new String[] { String.valueOf(product.getId()) }
-        );
-        db.close();
+        SQLiteDatabase db = getDatabase();
+        synchronized (productCatalog) {
+            db.delete(
+                TABLE_PRODUCTS,
+                COLUMN_ID + " = ?",
+                new String[] { String.valueOf(product.getId()) }
+            );
+            productCatalog.remove(product.getId());
+        }
+        notifyWrite(TABLE_PRODUCTS);
     }
     
     /**
@@ -248,14 +651,39 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * @return true if successful, false if not enough stock
      */
     public boolean updateProductQuantity(long productId, int soldQuantity) {
-        Product product = getProduct(productId);
-        
-        if (product.getQuantity() >= soldQuantity) {
-            product.decreaseQuantity(soldQuantity);
-            updateProduct(product);
-            return true;
+        boolean reserved;
+        synchronized (productCatalog) {
+            reserved = reserveStock(productId, soldQuantity);
+            if (reserved) {
+                productCatalog.decreaseStock(Collections.singletonMap(productId, soldQuantity));
+            }
+        }
+        if (reserved) {
+            notifyWrite(TABLE_PRODUCTS);
         }
+        return reserved;
+    }
+    
+    /**
+     * Decrease stock with a single guarded UPDATE. When called inside a
+     * transaction the caller decides whether to commit or roll back, and
+     * updates the product catalog once it has committed.
+     * @param productId Product ID
+     * @param quantity Quantity to take from stock
+     * @return true if stock was decreased, false if the product is missing or short
+     */
+    public boolean reserveStock(long productId, int quantity) {
+        SQLiteStatement statement = getStatementCache().get(SQL_RESERVE_STOCK);
         
-        return false;
+        synchronized (statement) {
+            try {
+                statement.bindLong(1, quantity);
+                statement.bindLong(2, productId);
+                statement.bindLong(3, quantity);
+                return statement.executeUpdateDelete() == 1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
     }
 }
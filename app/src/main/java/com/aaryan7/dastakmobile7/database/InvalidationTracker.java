@@ -0,0 +1,125 @@
+package com.aaryan7.dastakmobile7.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records which tables each committed write touched and tells observers of
+ * those tables. Changes reported before the main thread gets round to
+ * dispatching are merged, so a burst of writes reaches each observer once.
+ */
+public class InvalidationTracker {
+
+    /**
+     * Listener for changes to the tables it was registered for
+     */
+    public interface Observer {
+        /**
+         * Called on the main thread after one or more watched tables changed
+         * @param tables Watched tables that changed since the last call
+         */
+        void onInvalidated(Set<String> tables);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable dispatch = this::dispatchPending;
+    private final Map<String, Long> tableVersions = new HashMap<>();
+    private final Set<String> pendingTables = new HashSet<>();
+    private final Map<Observer, Set<String>> observers = new LinkedHashMap<>();
+    private boolean dispatchPosted;
+
+    InvalidationTracker() {
+    }
+
+    /**
+     * Record that tables were written and schedule a dispatch to observers.
+     * Call after the write is committed, from any thread.
+     * @param tables Tables that were written
+     */
+    public synchronized void notifyTablesChanged(String... tables) {
+        for (String table : tables) {
+            Long version = tableVersions.get(table);
+            tableVersions.put(table, version == null ? 1 : version + 1);
+            pendingTables.add(table);
+        }
+
+        if (!dispatchPosted && !pendingTables.isEmpty()) {
+            dispatchPosted = true;
+            mainHandler.post(dispatch);
+        }
+    }
+
+    /**
+     * Get a version that changes whenever any of the given tables is written
+     * @param tables Tables of interest
+     * @return Combined version of the tables
+     */
+    public synchronized long getVersion(String... tables) {
+        long version = 0;
+        for (String table : tables) {
+            Long tableVersion = tableVersions.get(table);
+            if (tableVersion != null) {
+                version += tableVersion;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Start telling an observer about changes to some tables
+     * @param observer Observer to add
+     * @param tables Tables it depends on
+     */
+    public synchronized void addObserver(Observer observer, String... tables) {
+        observers.put(observer, new HashSet<>(Arrays.asList(tables)));
+    }
+
+    /**
+     * Stop telling an observer about changes
+     * @param observer Observer to remove
+     */
+    public synchronized void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    /**
+     * Hand the merged changes to every observer of a changed table. Runs on the main thread.
+     */
+    private void dispatchPending() {
+        Set<String> changed;
+        Map<Observer, Set<String>> targets = new LinkedHashMap<>();
+
+        synchronized (this) {
+            dispatchPosted = false;
+            changed = new HashSet<>(pendingTables);
+            pendingTables.clear();
+
+            for (Map.Entry<Observer, Set<String>> entry : observers.entrySet()) {
+                Set<String> watched = new HashSet<>(entry.getValue());
+                watched.retainAll(changed);
+                if (!watched.isEmpty()) {
+                    targets.put(entry.getKey(), Collections.unmodifiableSet(watched));
+                }
+            }
+        }
+
+        // Call out without the lock so observers may query versions or unregister;
+        // skip any that an earlier observer removed
+        for (Map.Entry<Observer, Set<String>> target : targets.entrySet()) {
+            synchronized (this) {
+                if (!observers.containsKey(target.getKey())) {
+                    continue;
+                }
+            }
+            target.getKey().onInvalidated(target.getValue());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.aaryan7.dastakmobile7.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One step of the schema upgrade path, from one database version to the next
+ */
+public abstract class Migration {
+    private final int startVersion;
+    private final int endVersion;
+
+    public Migration(int startVersion, int endVersion) {
+        this.startVersion = startVersion;
+        this.endVersion = endVersion;
+    }
+
+    public int getStartVersion() {
+        return startVersion;
+    }
+
+    public int getEndVersion() {
+        return endVersion;
+    }
+
+    /**
+     * Apply the schema change. Runs inside a transaction, so a failure or a
+     * killed process leaves the database at the previous version.
+     * @param db Database being upgraded
+     */
+    public abstract void migrate(SQLiteDatabase db);
+}
@@ -0,0 +1,130 @@
+package com.aaryan7.dastakmobile7.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Runs registered migrations in version order and drives chunked backfills
+ */
+public class MigrationRunner {
+    private static final String TAG = "MigrationRunner";
+
+    // Progress of chunked backfills, one row per backfill
+    static final String TABLE_BACKFILLS = "migration_backfills";
+    static final String CREATE_TABLE_BACKFILLS = "CREATE TABLE IF NOT EXISTS " + TABLE_BACKFILLS + "("
+            + "name TEXT PRIMARY KEY,"
+            + "last_id INTEGER NOT NULL DEFAULT 0,"
+            + "done INTEGER NOT NULL DEFAULT 0,"
+            + "end_id INTEGER NOT NULL DEFAULT 0"
+            + ")";
+
+    /**
+     * Upgrade the database one version at a time. Each step runs in its own
+     * transaction nested in the upgrade transaction of SQLiteOpenHelper, which
+     * only records the new version once every step has succeeded.
+     * @param db Database being upgraded
+     * @param oldVersion Current version
+     * @param newVersion Target version
+     * @param migrations Registered migrations
+     */
+    public static void migrate(SQLiteDatabase db, int oldVersion, int newVersion, List<Migration> migrations) {
+        int version = oldVersion;
+
+        while (version < newVersion) {
+            Migration step = findStep(migrations, version);
+            if (step == null) {
+                throw new IllegalStateException("No migration from database version " + version);
+            }
+
+            Log.i(TAG, "Migrating database from " + step.getStartVersion() + " to " + step.getEndVersion());
+            db.beginTransaction();
+            try {
+                step.migrate(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            version = step.getEndVersion();
+        }
+    }
+
+    /**
+     * Find the migration that starts at a version
+     * @param migrations Registered migrations
+     * @param version Start version
+     * @return Matching migration, or null if there is none
+     */
+    private static Migration findStep(List<Migration> migrations, int version) {
+        for (Migration migration : migrations) {
+            if (migration.getStartVersion() == version) {
+                return migration;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedule a backfill to run after the upgrade. Call from a migration.
+     * @param db Database being upgraded
+     * @param name Name of a registered backfill
+     * @param endId Last row ID the backfill may touch, normally the largest ID
+     *              when it is scheduled; rows written later are left alone
+     */
+    public static void enqueueBackfill(SQLiteDatabase db, String name, long endId) {
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_BACKFILLS + " (name, last_id, done, end_id) VALUES (?, 0, 0, ?)",
+                new Object[] { name, endId });
+    }
+
+    /**
+     * Run all scheduled backfills to completion, committing after every chunk
+     * @param db Open database
+     * @param backfills Registered backfills
+     * @param chunkSize Rows per transaction
+     */
+    public static void runPendingBackfills(SQLiteDatabase db, List<Backfill> backfills, int chunkSize) {
+        for (Backfill backfill : backfills) {
+            long[] position = getPendingPosition(db, backfill.getName());
+            if (position == null) {
+                continue;
+            }
+            long lastId = position[0];
+            long endId = position[1];
+
+            while (lastId >= 0) {
+                db.beginTransactionNonExclusive();
+                try {
+                    long chunkEnd = backfill.runChunk(db, lastId, endId, chunkSize);
+                    if (chunkEnd < 0) {
+                        db.execSQL("UPDATE " + TABLE_BACKFILLS + " SET done = 1 WHERE name = ?",
+                                new Object[] { backfill.getName() });
+                    } else {
+                        db.execSQL("UPDATE " + TABLE_BACKFILLS + " SET last_id = ? WHERE name = ?",
+                                new Object[] { chunkEnd, backfill.getName() });
+                    }
+                    db.setTransactionSuccessful();
+                    lastId = chunkEnd;
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the resume position of a backfill
+     * @param db Open database
+     * @param name Backfill name
+     * @return { last processed row ID, last row ID to process }, or null if the
+     *         backfill is not pending
+     */
+    private static long[] getPendingPosition(SQLiteDatabase db, String name) {
+        Cursor cursor = db.rawQuery("SELECT last_id, end_id FROM " + TABLE_BACKFILLS
+                + " WHERE name = ? AND done = 0", new String[] { name });
+        long[] position = cursor.moveToFirst() ? new long[] { cursor.getLong(0), cursor.getLong(1) } : null;
+        cursor.close();
+        return position;
+    }
+}
@@ -0,0 +1,323 @@
+package com.aaryan7.dastakmobile7.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ordered schema migrations. Each step spells out its SQL as it was at that
+ * version, so later changes to the table constants never alter old steps.
+ * To change the schema, bump DatabaseHelper.DATABASE_VERSION, update the
+ * CREATE statements there and append a migration here.
+ */
+public class Migrations {
+    private static final String TAG = "Migrations";
+
+    // Stored for legacy dates that cannot be read: the epoch keeps such rows
+    // out of every current-period report instead of counting them as today
+    static final long UNREADABLE_DATE = 0;
+
+    /**
+     * Version 2: bills and sales dates become INTEGER epoch milliseconds with indexes
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            // Keep bill_items pointing at "bills" while the table is renamed away
+            db.execSQL("PRAGMA legacy_alter_table=ON");
+            rebuildWithEpochDates(db, "bills",
+                    "CREATE TABLE bills(id INTEGER PRIMARY KEY AUTOINCREMENT,date INTEGER,"
+                            + "total REAL,discount REAL,final_amount REAL)",
+                    "total, discount, final_amount");
+            rebuildWithEpochDates(db, "sales",
+                    "CREATE TABLE sales(id INTEGER PRIMARY KEY AUTOINCREMENT,date INTEGER,"
+                            + "amount REAL,profit REAL)",
+                    "amount, profit");
+            db.execSQL("PRAGMA legacy_alter_table=OFF");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_bills_date ON bills(date)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_sales_date ON sales(date)");
+        }
+    };
+
+    /**
+     * Version 3: progress table for chunked backfills
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS migration_backfills("
+                    + "name TEXT PRIMARY KEY,"
+                    + "last_id INTEGER NOT NULL DEFAULT 0,"
+                    + "done INTEGER NOT NULL DEFAULT 0,"
+                    + "end_id INTEGER NOT NULL DEFAULT 0"
+                    + ")");
+        }
+    };
+
+    /**
+     * Version 4: item count on sales and the daily sales rollup, built from existing sales
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE sales ADD COLUMN item_count INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE TABLE daily_sales_summary("
+                    + "day_start INTEGER PRIMARY KEY,"
+                    + "amount REAL NOT NULL DEFAULT 0,"
+                    + "profit REAL NOT NULL DEFAULT 0,"
+                    + "bill_count INTEGER NOT NULL DEFAULT 0,"
+                    + "item_count INTEGER NOT NULL DEFAULT 0"
+                    + ")");
+            db.execSQL("INSERT INTO daily_sales_summary (day_start, amount, profit, bill_count, item_count)"
+                    + " SELECT CAST(strftime('%s', date / 1000, 'unixepoch', 'localtime', 'start of day', 'utc')"
+                    + " AS INTEGER) * 1000 AS day, TOTAL(amount), TOTAL(profit), COUNT(*), TOTAL(item_count)"
+                    + " FROM sales GROUP BY day");
+        }
+    };
+
+    /**
+     * Version 5: indexes on the bill_items foreign keys
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_bill_items_bill_id ON bill_items(bill_id)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_bill_items_product_id ON bill_items(product_id)");
+        }
+    };
+
+    /**
+     * Version 6: bill items keep the product name and purchase price they were
+     * sold with; existing items are filled in by BACKFILL_BILL_ITEM_SNAPSHOT
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE bill_items ADD COLUMN product_name TEXT");
+            db.execSQL("ALTER TABLE bill_items ADD COLUMN purchase_price REAL");
+            
+            // Bills saved after the upgrade record their own snapshot; the backfill stops before them
+            MigrationRunner.enqueueBackfill(db, BACKFILL_BILL_ITEM_SNAPSHOT.getName(),
+                    DatabaseUtils.longForQuery(db, "SELECT IFNULL(MAX(id), 0) FROM bill_items", null));
+        }
+    };
+
+    /**
+     * Version 7: full-text index of product names, kept in step by triggers
+     * and filled from the existing products
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE products_fts USING fts4(content=\"products\", name, tokenize=unicode61)");
+            db.execSQL("CREATE TRIGGER products_fts_before_update BEFORE UPDATE OF name ON products BEGIN"
+                    + " DELETE FROM products_fts WHERE docid = old.id; END");
+            db.execSQL("CREATE TRIGGER products_fts_before_delete BEFORE DELETE ON products BEGIN"
+                    + " DELETE FROM products_fts WHERE docid = old.id; END");
+            db.execSQL("CREATE TRIGGER products_fts_after_update AFTER UPDATE OF name ON products BEGIN"
+                    + " INSERT INTO products_fts (docid, name) VALUES (new.id, new.name); END");
+            db.execSQL("CREATE TRIGGER products_fts_after_insert AFTER INSERT ON products BEGIN"
+                    + " INSERT INTO products_fts (docid, name) VALUES (new.id, new.name); END");
+            db.execSQL("INSERT INTO products_fts (products_fts) VALUES ('rebuild')");
+        }
+    };
+
+    /**
+     * Version 8: optional SKU per product, unique when set
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE products ADD COLUMN sku TEXT");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS idx_products_sku ON products(sku)");
+        }
+    };
+
+    /**
+     * Version 9: money columns hold whole paise as INTEGER instead of rupees
+     * as REAL, so sums are exact. SQLite cannot change a column's type, so
+     * each table is rebuilt and its indexes and triggers created again.
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            // Keep the foreign keys of bill_items pointing at the new tables
+            db.execSQL("PRAGMA legacy_alter_table=ON");
+            rebuildWithPaise(db, "products",
+                    "CREATE TABLE products(id INTEGER PRIMARY KEY AUTOINCREMENT,name TEXT,"
+                            + "purchase_price INTEGER,selling_price INTEGER,quantity INTEGER,profit INTEGER,sku TEXT)",
+                    "id, name, quantity, sku",
+                    "purchase_price", "selling_price", "profit");
+            rebuildWithPaise(db, "bills",
+                    "CREATE TABLE bills(id INTEGER PRIMARY KEY AUTOINCREMENT,date INTEGER,"
+                            + "total INTEGER,discount INTEGER,final_amount INTEGER)",
+                    "id, date",
+                    "total", "discount", "final_amount");
+            rebuildWithPaise(db, "bill_items",
+                    "CREATE TABLE bill_items(id INTEGER PRIMARY KEY AUTOINCREMENT,bill_id INTEGER,"
+                            + "product_id INTEGER,quantity INTEGER,price INTEGER,subtotal INTEGER,"
+                            + "product_name TEXT,purchase_price INTEGER,"
+                            + "FOREIGN KEY(bill_id) REFERENCES bills(id),"
+                            + "FOREIGN KEY(product_id) REFERENCES products(id))",
+                    "id, bill_id, product_id, quantity, product_name",
+                    "price", "subtotal", "purchase_price");
+            rebuildWithPaise(db, "sales",
+                    "CREATE TABLE sales(id INTEGER PRIMARY KEY AUTOINCREMENT,date INTEGER,"
+                            + "amount INTEGER,profit INTEGER,item_count INTEGER NOT NULL DEFAULT 0)",
+                    "id, date, item_count",
+                    "amount", "profit");
+            db.execSQL("PRAGMA legacy_alter_table=OFF");
+            
+            // Sum the rollup again from the converted sales, so it matches them to the paisa
+            db.execSQL("DROP TABLE daily_sales_summary");
+            db.execSQL("CREATE TABLE daily_sales_summary("
+                    + "day_start INTEGER PRIMARY KEY,"
+                    + "amount INTEGER NOT NULL DEFAULT 0,"
+                    + "profit INTEGER NOT NULL DEFAULT 0,"
+                    + "bill_count INTEGER NOT NULL DEFAULT 0,"
+                    + "item_count INTEGER NOT NULL DEFAULT 0"
+                    + ")");
+            db.execSQL("INSERT INTO daily_sales_summary (day_start, amount, profit, bill_count, item_count)"
+                    + " SELECT CAST(strftime('%s', date / 1000, 'unixepoch', 'localtime', 'start of day', 'utc')"
+                    + " AS INTEGER) * 1000 AS day, IFNULL(SUM(amount), 0), IFNULL(SUM(profit), 0), COUNT(*),"
+                    + " IFNULL(SUM(item_count), 0) FROM sales GROUP BY day");
+            
+            // Indexes and triggers went with the old tables
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_bills_date ON bills(date)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_sales_date ON sales(date)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_bill_items_bill_id ON bill_items(bill_id)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_bill_items_product_id ON bill_items(product_id)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS idx_products_sku ON products(sku)");
+            db.execSQL("CREATE TRIGGER products_fts_before_update BEFORE UPDATE OF name ON products BEGIN"
+                    + " DELETE FROM products_fts WHERE docid = old.id; END");
+            db.execSQL("CREATE TRIGGER products_fts_before_delete BEFORE DELETE ON products BEGIN"
+                    + " DELETE FROM products_fts WHERE docid = old.id; END");
+            db.execSQL("CREATE TRIGGER products_fts_after_update AFTER UPDATE OF name ON products BEGIN"
+                    + " INSERT INTO products_fts (docid, name) VALUES (new.id, new.name); END");
+            db.execSQL("CREATE TRIGGER products_fts_after_insert AFTER INSERT ON products BEGIN"
+                    + " INSERT INTO products_fts (docid, name) VALUES (new.id, new.name); END");
+        }
+    };
+
+    /**
+     * Copy the current product name and purchase price into bill items saved
+     * before version 6. Items that already have a name, such as those saved
+     * after the upgrade, are left alone. Items of deleted products keep no name.
+     */
+    static final Backfill BACKFILL_BILL_ITEM_SNAPSHOT = new Backfill("bill_item_snapshot") {
+        @Override
+        public long runChunk(SQLiteDatabase db, long afterId, long endId, int chunkSize) {
+            Cursor cursor = db.rawQuery("SELECT MAX(id) FROM (SELECT id FROM bill_items"
+                    + " WHERE id > ? AND id <= ? ORDER BY id LIMIT " + chunkSize + ")",
+                    new String[] { String.valueOf(afterId), String.valueOf(endId) });
+            long lastId = cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+            cursor.close();
+            
+            if (lastId < 0) {
+                return -1;
+            }
+            
+            db.execSQL("UPDATE bill_items SET"
+                    + " product_name = (SELECT name FROM products WHERE products.id = bill_items.product_id),"
+                    + " purchase_price = (SELECT purchase_price FROM products"
+                    + " WHERE products.id = bill_items.product_id)"
+                    + " WHERE id > ? AND id <= ? AND product_name IS NULL",
+                    new Object[] { afterId, lastId });
+            return lastId;
+        }
+    };
+
+    /**
+     * All migrations in version order
+     */
+    static final List<Migration> ALL = Arrays.asList(
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9
+    );
+
+    /**
+     * Backfills that migrations may schedule, run in this order after the upgrade
+     */
+    static final List<Backfill> BACKFILLS = Collections.singletonList(BACKFILL_BILL_ITEM_SNAPSHOT);
+
+    /**
+     * Copy a table into a new one whose money columns are INTEGER paise,
+     * rounding the stored rupee amounts to the nearest paisa
+     * @param db Database being upgraded
+     * @param table Table to rebuild
+     * @param createSql CREATE TABLE statement of the new layout
+     * @param otherColumns Remaining columns, copied unchanged
+     * @param moneyColumns Columns holding rupees as REAL
+     */
+    private static void rebuildWithPaise(SQLiteDatabase db, String table, String createSql, String otherColumns,
+                                         String... moneyColumns) {
+        String oldTable = table + "_v8";
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + oldTable);
+        db.execSQL(createSql);
+
+        StringBuilder columns = new StringBuilder(otherColumns);
+        StringBuilder values = new StringBuilder(otherColumns);
+        for (String column : moneyColumns) {
+            columns.append(", ").append(column);
+            values.append(", CAST(ROUND(").append(column).append(" * 100) AS INTEGER)");
+        }
+        db.execSQL("INSERT INTO " + table + " (" + columns + ") SELECT " + values + " FROM " + oldTable);
+
+        db.execSQL("DROP TABLE " + oldTable);
+    }
+
+    /**
+     * Copy a table into a new one whose date column is INTEGER epoch millis
+     * @param db Database being upgraded
+     * @param table Table to rebuild
+     * @param createSql CREATE TABLE statement of the new layout
+     * @param otherColumns Remaining columns, copied unchanged
+     */
+    private static void rebuildWithEpochDates(SQLiteDatabase db, String table, String createSql, String otherColumns) {
+        String oldTable = table + "_v1";
+        db.execSQL("ALTER TABLE " + table + " RENAME TO " + oldTable);
+        db.execSQL(createSql);
+
+        // Dates were written as local time "yyyy-MM-dd HH:mm:ss"; SQLite can
+        // convert those whose digits are ASCII
+        db.execSQL("INSERT INTO " + table + " (id, date, " + otherColumns + ")"
+                + " SELECT id, CAST(strftime('%s', date, 'utc') AS INTEGER) * 1000, "
+                + otherColumns + " FROM " + oldTable);
+
+        // Rows written under a locale with non-ASCII digits are parsed with the
+        // same locale-dependent format that wrote them
+        SimpleDateFormat legacyFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+        Cursor cursor = db.rawQuery("SELECT id, date FROM " + oldTable
+                + " WHERE strftime('%s', date, 'utc') IS NULL", null);
+        while (cursor.moveToNext()) {
+            String text = cursor.getString(1);
+            long epochMillis;
+            try {
+                epochMillis = legacyFormat.parse(text).getTime();
+            } catch (ParseException | NullPointerException e) {
+                Log.w(TAG, "Unreadable date \"" + text + "\" in " + table + " row " + cursor.getLong(0)
+                        + ", stored as " + UNREADABLE_DATE);
+                epochMillis = UNREADABLE_DATE;
+            }
+            db.execSQL("UPDATE " + table + " SET date = ? WHERE id = ?",
+                    new Object[] { epochMillis, cursor.getLong(0) });
+        }
+        cursor.close();
+
+        db.execSQL("DROP TABLE " + oldTable);
+    }
+}
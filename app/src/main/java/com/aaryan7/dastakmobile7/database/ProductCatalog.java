@@ -0,0 +1,303 @@
+package com.aaryan7.dastakmobile7.database;
+
+import com.aaryan7.dastakmobile7.models.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process-wide in-memory copy of the products table, indexed by ID, SKU,
+ * name and selling price. It is loaded once and then kept current by the product
+ * writes of DatabaseHelper, so lookups while billing never touch the disk.
+ *
+ * Readers take the current snapshot without locking. Writers build a new
+ * snapshot under the catalog's monitor and publish it in one volatile write.
+ * Products handed out are copies, so callers may edit them freely.
+ */
+public class ProductCatalog {
+
+    /**
+     * Reads every product from the database
+     */
+    interface Loader {
+        List<Product> loadAll();
+    }
+
+    private static final Comparator<Product> BY_NAME = (a, b) ->
+            nameKey(a.getName()).compareTo(nameKey(b.getName()));
+    private static final Comparator<Product> BY_PRICE = (a, b) ->
+            Long.compare(a.getSellingPrice(), b.getSellingPrice());
+
+    /**
+     * Immutable view of the catalog
+     */
+    private static final class Snapshot {
+        // In ID order, like the products table
+        final Map<Long, Product> byId;
+        final Map<String, Product> byName;
+        final Map<String, Product> bySku;
+        final List<Product> sortedByName;
+        final List<Product> sortedByPrice;
+
+        Snapshot(Map<Long, Product> byId, List<Product> sortedByName, List<Product> sortedByPrice) {
+            this.byId = byId;
+            this.sortedByName = sortedByName;
+            this.sortedByPrice = sortedByPrice;
+
+            byName = new HashMap<>();
+            bySku = new HashMap<>();
+            for (Product product : byId.values()) {
+                byName.put(nameKey(product.getName()), product);
+                if (product.getSku() != null) {
+                    bySku.put(product.getSku(), product);
+                }
+            }
+        }
+    }
+
+    private final Loader loader;
+    private volatile Snapshot snapshot;
+
+    ProductCatalog(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Load the catalog if it has not been loaded yet. Call from a background thread.
+     */
+    public void preload() {
+        current();
+    }
+
+    /**
+     * Check whether lookups can be served without reading the database
+     * @return true if the catalog is loaded
+     */
+    public boolean isLoaded() {
+        return snapshot != null;
+    }
+
+    /**
+     * Get a product by ID
+     * @param id Product ID
+     * @return Copy of the product, or null if there is no such product
+     */
+    public Product getProduct(long id) {
+        return copyOf(current().byId.get(id));
+    }
+
+    /**
+     * Get a product by name, ignoring case
+     * @param name Product name
+     * @return Copy of the product, or null if there is no such product
+     */
+    public Product findByName(String name) {
+        return copyOf(current().byName.get(nameKey(name)));
+    }
+
+    /**
+     * Get a product by its SKU
+     * @param sku Scanned or typed code
+     * @return Copy of the product, or null if no product has this SKU
+     */
+    public Product findBySku(String sku) {
+        return copyOf(current().bySku.get(sku));
+    }
+
+    /**
+     * Get all products in ID order
+     * @return Copies of all products
+     */
+    public List<Product> getAllProducts() {
+        return copyOf(current().byId.values());
+    }
+
+    /**
+     * Get all products in alphabetical order
+     * @return Copies of all products sorted by name
+     */
+    public List<Product> getProductsByName() {
+        return copyOf(current().sortedByName);
+    }
+
+    /**
+     * Get the products whose selling price lies in a range
+     * @param minPrice Lowest price in paise, inclusive
+     * @param maxPrice Highest price in paise, inclusive
+     * @return Copies of the matching products, cheapest first
+     */
+    public List<Product> getProductsInPriceRange(long minPrice, long maxPrice) {
+        List<Product> sorted = current().sortedByPrice;
+        List<Product> result = new ArrayList<>();
+
+        for (int i = firstAtLeast(sorted, minPrice); i < sorted.size(); i++) {
+            Product product = sorted.get(i);
+            if (product.getSellingPrice() > maxPrice) {
+                break;
+            }
+            result.add(new Product(product));
+        }
+
+        return result;
+    }
+
+    /**
+     * Add or replace a product after it was written. Call while holding the
+     * catalog's monitor together with the database write, so a concurrent
+     * load cannot slip in between.
+     * @param product Product as written, with its ID set
+     */
+    synchronized void put(Product product) {
+        Snapshot old = snapshot;
+        if (old == null) {
+            return;
+        }
+
+        Map<Long, Product> byId = new LinkedHashMap<>(old.byId);
+        byId.put(product.getId(), new Product(product));
+        snapshot = build(byId);
+    }
+
+    /**
+     * Remove a product after it was deleted
+     * @param id Product ID
+     */
+    synchronized void remove(long id) {
+        Snapshot old = snapshot;
+        if (old == null || !old.byId.containsKey(id)) {
+            return;
+        }
+
+        Map<Long, Product> byId = new LinkedHashMap<>(old.byId);
+        byId.remove(id);
+        snapshot = build(byId);
+    }
+
+    /**
+     * Take sold quantities from stock. Call while holding the catalog's
+     * monitor, right after the transaction that reserved the stock commits.
+     * @param quantities Quantity sold per product ID
+     */
+    public synchronized void decreaseStock(Map<Long, Integer> quantities) {
+        Snapshot old = snapshot;
+        if (old == null) {
+            return;
+        }
+
+        // Stock changes leave the name and price order alone, so the sorted
+        // lists only need the replaced instances swapped in
+        Map<Long, Product> byId = new LinkedHashMap<>(old.byId);
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Product product = byId.get(entry.getKey());
+            if (product != null) {
+                Product updated = new Product(product);
+                updated.setQuantity(product.getQuantity() - entry.getValue());
+                byId.put(updated.getId(), updated);
+            }
+        }
+
+        snapshot = new Snapshot(Collections.unmodifiableMap(byId),
+                swapIn(old.sortedByName, byId), swapIn(old.sortedByPrice, byId));
+    }
+
+    /**
+     * Drop the catalog so the next lookup reloads it, e.g. after a bulk import
+     */
+    synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Get the current snapshot, loading it on first use
+     * @return Current snapshot
+     */
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (this) {
+            if (snapshot == null) {
+                Map<Long, Product> byId = new LinkedHashMap<>();
+                for (Product product : loader.loadAll()) {
+                    byId.put(product.getId(), product);
+                }
+                snapshot = build(byId);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Build a snapshot with freshly sorted indexes
+     * @param byId Products by ID; owned by the snapshot from now on
+     * @return New snapshot
+     */
+    private static Snapshot build(Map<Long, Product> byId) {
+        List<Product> sortedByName = new ArrayList<>(byId.values());
+        Collections.sort(sortedByName, BY_NAME);
+        List<Product> sortedByPrice = new ArrayList<>(byId.values());
+        Collections.sort(sortedByPrice, BY_PRICE);
+
+        return new Snapshot(Collections.unmodifiableMap(byId),
+                Collections.unmodifiableList(sortedByName),
+                Collections.unmodifiableList(sortedByPrice));
+    }
+
+    /**
+     * Replace the entries of a sorted list with the current instances of the same products
+     * @param sorted Sorted list of the previous snapshot
+     * @param byId Current products by ID
+     * @return New list in the same order
+     */
+    private static List<Product> swapIn(List<Product> sorted, Map<Long, Product> byId) {
+        List<Product> result = new ArrayList<>(sorted.size());
+        for (Product product : sorted) {
+            result.add(byId.get(product.getId()));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Find the first product of a price-sorted list that costs at least a price
+     * @param sorted Products sorted by selling price
+     * @param price Price to look for, in paise
+     * @return Index of the first such product, or the list size if there is none
+     */
+    private static int firstAtLeast(List<Product> sorted, long price) {
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid).getSellingPrice() < price) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String nameKey(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+
+    private static Product copyOf(Product product) {
+        return product == null ? null : new Product(product);
+    }
+
+    private static List<Product> copyOf(Iterable<Product> products) {
+        List<Product> copies = new ArrayList<>();
+        for (Product product : products) {
+            copies.add(new Product(product));
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,82 @@
+package com.aaryan7.dastakmobile7.database;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LiveData backed by a query that re-runs in the background whenever one of
+ * the tables it reads is written. While nobody observes it the query does not
+ * run; on becoming active again it re-runs only if its tables changed meanwhile.
+ * @param <T> Query result type
+ */
+public class QueryLiveData<T> extends LiveData<T> implements InvalidationTracker.Observer {
+    private static final String TAG = "QueryLiveData";
+
+    private final InvalidationTracker tracker;
+    private final Executor executor;
+    private final Callable<T> query;
+    private final String[] tables;
+    private final AtomicInteger generation = new AtomicInteger();
+    private long loadedVersion = -1;
+
+    /**
+     * @param tracker Invalidation tracker of the database
+     * @param executor Executor to run the query on
+     * @param query Query to run
+     * @param tables Tables the query reads
+     */
+    public QueryLiveData(InvalidationTracker tracker, Executor executor, Callable<T> query, String... tables) {
+        this.tracker = tracker;
+        this.executor = executor;
+        this.query = query;
+        this.tables = tables;
+    }
+
+    @Override
+    protected void onActive() {
+        tracker.addObserver(this, tables);
+        if (tracker.getVersion(tables) != loadedVersion) {
+            load();
+        }
+    }
+
+    @Override
+    protected void onInactive() {
+        tracker.removeObserver(this);
+    }
+
+    @Override
+    public void onInvalidated(Set<String> changedTables) {
+        load();
+    }
+
+    /**
+     * Run the query again. Runs on the main thread.
+     */
+    private void load() {
+        // Read the version first, so a write racing the query leaves it stale
+        loadedVersion = tracker.getVersion(tables);
+        int run = generation.incrementAndGet();
+
+        executor.execute(() -> {
+            T result;
+            try {
+                result = query.call();
+            } catch (Exception e) {
+                Log.e(TAG, "Query failed", e);
+                return;
+            }
+
+            // A newer run supersedes this one
+            if (run == generation.get()) {
+                postValue(result);
+            }
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package com.aaryan7.dastakmobile7.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of compiled statements for the hot insert and update paths.
+ * Each SQL string is parsed once and the statement is reused for the
+ * lifetime of the shared connection.
+ *
+ * A statement keeps its bindings between calls, so callers bind, execute
+ * and clear it while holding the statement's monitor.
+ */
+public class StatementCache {
+    private final SQLiteDatabase db;
+    private final Map<String, SQLiteStatement> statements = new HashMap<>();
+
+    StatementCache(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * Get the compiled statement for the given SQL, compiling it on first use
+     * @param sql SQL with ? placeholders
+     * @return Reusable statement
+     */
+    public synchronized SQLiteStatement get(String sql) {
+        SQLiteStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Release all compiled statements
+     */
+    synchronized void clear() {
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+}
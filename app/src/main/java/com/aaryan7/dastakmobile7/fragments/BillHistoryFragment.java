@@ -0,0 +1,174 @@
+package com.aaryan7.dastakmobile7.fragments;
+
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.aaryan7.dastakmobile7.R;
+import com.aaryan7.dastakmobile7.adapters.BillHistoryAdapter;
+import com.aaryan7.dastakmobile7.models.Bill;
+import com.aaryan7.dastakmobile7.repository.LedgerExporter;
+import com.aaryan7.dastakmobile7.utils.DateRangeUtils;
+import com.aaryan7.dastakmobile7.viewmodel.BillHistoryViewModel;
+import com.google.android.material.button.MaterialButton;
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+
+import java.io.File;
+import java.util.Calendar;
+
+/**
+ * Fragment for browsing saved bills page by page
+ */
+public class BillHistoryFragment extends Fragment implements BillHistoryAdapter.OnBillClickListener {
+    // Start loading the next page this many rows before either end of the window
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private BillHistoryViewModel viewModel;
+    private BillHistoryAdapter adapter;
+    private RecyclerView rvBillHistory;
+    private LinearLayoutManager layoutManager;
+    private TextView tvEmpty, tvExportStatus;
+    private MaterialButton btnExportLedger;
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_bill_history, container, false);
+        
+        // Initialize views
+        rvBillHistory = view.findViewById(R.id.rv_bill_history);
+        tvEmpty = view.findViewById(R.id.tv_empty);
+        tvExportStatus = view.findViewById(R.id.tv_export_status);
+        btnExportLedger = view.findViewById(R.id.btn_export_ledger);
+        
+        // Setup RecyclerView
+        adapter = new BillHistoryAdapter(this);
+        layoutManager = new LinearLayoutManager(getContext());
+        rvBillHistory.setLayoutManager(layoutManager);
+        rvBillHistory.setAdapter(adapter);
+        
+        return view;
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        
+        // Initialize ViewModel
+        viewModel = new ViewModelProvider(this).get(BillHistoryViewModel.class);
+        
+        // Observe the window of bills
+        viewModel.getBills().observe(getViewLifecycleOwner(), bills -> {
+            adapter.setBills(bills);
+            tvEmpty.setVisibility(bills.isEmpty() ? View.VISIBLE : View.GONE);
+        });
+        
+        // Observe expanded bills
+        viewModel.getExpandedItems().observe(getViewLifecycleOwner(), items -> {
+            adapter.setExpandedItems(items);
+        });
+        
+        // Observe export progress
+        viewModel.getExportStatus().observe(getViewLifecycleOwner(), this::showExportStatus);
+        
+        // Export, or cancel the running export
+        btnExportLedger.setOnClickListener(v -> {
+            if (viewModel.isExporting()) {
+                viewModel.cancelExport();
+            } else {
+                showExportRangeDialog();
+            }
+        });
+        
+        // Load pages as the user scrolls towards either end
+        rvBillHistory.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= adapter.getItemCount() - 1 - PREFETCH_DISTANCE) {
+                    viewModel.loadOlder();
+                } else if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                    viewModel.loadNewer();
+                }
+            }
+        });
+    }
+
+    /**
+     * Ask which period to export
+     */
+    private void showExportRangeDialog() {
+        String[] periods = { "This month", "Last month", "This year", "Everything" };
+        new MaterialAlertDialogBuilder(requireContext())
+                .setTitle("Export ledger")
+                .setItems(periods, (dialog, which) -> {
+                    Calendar calendar = Calendar.getInstance();
+                    long[] range;
+                    switch (which) {
+                        case 0:
+                            range = DateRangeUtils.getMonthRange(calendar.getTime());
+                            break;
+                        case 1:
+                            calendar.add(Calendar.MONTH, -1);
+                            range = DateRangeUtils.getMonthRange(calendar.getTime());
+                            break;
+                        case 2:
+                            range = DateRangeUtils.getYearRange(calendar.getTime());
+                            break;
+                        default:
+                            range = new long[] { 0, Long.MAX_VALUE };
+                            break;
+                    }
+                    showExportFormatDialog(range);
+                })
+                .show();
+    }
+    
+    /**
+     * Ask which format to export in, then start the export
+     * @param range { start, end } in epoch milliseconds
+     */
+    private void showExportFormatDialog(long[] range) {
+        String[] formats = { "CSV", "CSV, compressed (.gz)", "JSON", "JSON, compressed (.gz)" };
+        new MaterialAlertDialogBuilder(requireContext())
+                .setTitle("Format")
+                .setItems(formats, (dialog, which) -> viewModel.exportLedger(range,
+                        which < 2 ? LedgerExporter.FORMAT_CSV : LedgerExporter.FORMAT_JSON, which % 2 == 1))
+                .show();
+    }
+    
+    /**
+     * Show the progress or outcome of an export
+     * @param status Export status
+     */
+    private void showExportStatus(LedgerExporter.Status status) {
+        tvExportStatus.setVisibility(View.VISIBLE);
+        btnExportLedger.setText(status.isFinished() ? "Export" : "Cancel");
+        
+        if (!status.isFinished()) {
+            tvExportStatus.setText("Exporting... " + status.getRowsWritten() + " rows written");
+        } else if (status.getError() != null) {
+            tvExportStatus.setText(status.getError());
+        } else {
+            StringBuilder text = new StringBuilder("Exported ").append(status.getRowsWritten()).append(" rows to:");
+            for (File file : status.getFiles()) {
+                text.append("\n").append(file.getAbsolutePath());
+            }
+            tvExportStatus.setText(text);
+        }
+    }
+
+    @Override
+    public void onBillClick(Bill bill) {
+        viewModel.toggleExpanded(bill);
+    }
+}
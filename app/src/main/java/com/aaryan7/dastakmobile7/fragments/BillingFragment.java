@@ -2,10 +2,12 @@ package com.aaryan7.dastakmobile7.fragments;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.text.TextUtils;
+import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.view.inputmethod.EditorInfo;
 import android.widget.AutoCompleteTextView;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -19,20 +21,14 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.aaryan7.dastakmobile7.R;
 import com.aaryan7.dastakmobile7.adapters.BillItemAdapter;
+import com.aaryan7.dastakmobile7.adapters.ProductSearchAdapter;
 import com.aaryan7.dastakmobile7.models.Bill;
 import com.aaryan7.dastakmobile7.models.Product;
-import com.aaryan7.dastakmobile7.utils.PDFGenerator;
+import com.aaryan7.dastakmobile7.utils.Money;
 import com.aaryan7.dastakmobile7.viewmodel.BillViewModel;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.textfield.TextInputEditText;
 
-import java.io.File;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
-
 /**
  * Fragment for Billing
  */
@@ -41,12 +37,12 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
     private BillItemAdapter adapter;
     private RecyclerView rvBillItems;
     private AutoCompleteTextView dropdownProducts;
-    private TextInputEditText etQuantity, etDiscount;
+    private TextInputEditText etScanCode, etQuantity, etDiscount;
     private TextView tvSubtotal, tvFinalAmount;
-    private MaterialButton btnAddToBill, btnApplyDiscount, btnSaveBill, btnGeneratePdf;
+    private MaterialButton btnAddToBill, btnApplyDiscount, btnSaveBill, btnGeneratePdf, btnBillHistory;
     
-    private Map<String, Long> productMap;
-    private PDFGenerator pdfGenerator;
+    private ProductSearchAdapter productSearchAdapter;
+    private Product selectedProduct;
 
     @Nullable
     @Override
@@ -54,6 +50,7 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
         View view = inflater.inflate(R.layout.fragment_billing, container, false);
         
         // Initialize views
+        etScanCode = view.findViewById(R.id.et_scan_code);
         dropdownProducts = view.findViewById(R.id.dropdown_products);
         etQuantity = view.findViewById(R.id.et_quantity);
         etDiscount = view.findViewById(R.id.et_discount);
@@ -63,6 +60,7 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
         btnApplyDiscount = view.findViewById(R.id.btn_apply_discount);
         btnSaveBill = view.findViewById(R.id.btn_save_bill);
         btnGeneratePdf = view.findViewById(R.id.btn_generate_pdf);
+        btnBillHistory = view.findViewById(R.id.btn_bill_history);
         rvBillItems = view.findViewById(R.id.rv_bill_items);
         
         // Setup RecyclerView
@@ -70,12 +68,6 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
         rvBillItems.setLayoutManager(new LinearLayoutManager(getContext()));
         rvBillItems.setAdapter(adapter);
         
-        // Initialize product map
-        productMap = new HashMap<>();
-        
-        // Initialize PDF generator
-        pdfGenerator = new PDFGenerator(getContext());
-        
         return view;
     }
 
@@ -83,59 +75,99 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         
-        // Initialize ViewModel
-        viewModel = new ViewModelProvider(this).get(BillViewModel.class);
+        // Initialize ViewModel, shared with the activity so it survives tab switches
+        viewModel = new ViewModelProvider(requireActivity()).get(BillViewModel.class);
+        
+        // Setup product search
+        setupProductDropdown();
         
-        // Observe available products
-        viewModel.getAvailableProducts().observe(getViewLifecycleOwner(), products -> {
-            setupProductDropdown(products);
+        // Setup code entry for barcode scanners and typed codes
+        setupScanInput();
+        
+        // Report codes that could not be added
+        viewModel.getUnmatchedCodes().observe(getViewLifecycleOwner(), codes -> {
+            if (codes != null && !codes.isEmpty()) {
+                Toast.makeText(getContext(), "Not found or out of stock: " + TextUtils.join(", ", codes),
+                        Toast.LENGTH_LONG).show();
+            }
         });
         
         // Observe current bill
         viewModel.getCurrentBill().observe(getViewLifecycleOwner(), bill -> {
-            adapter.setItems(bill.getItems());
+            adapter.showBill(bill);
             updateBillSummary(bill);
         });
         
+        // Observe save results
+        viewModel.getSavedBillId().observe(getViewLifecycleOwner(), billId -> {
+            if (billId > 0) {
+                Toast.makeText(getContext(), "Bill saved successfully", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), "Failed to save bill", Toast.LENGTH_SHORT).show();
+            }
+        });
+        
+        // Observe generated PDFs
+        viewModel.getGeneratedPdf().observe(getViewLifecycleOwner(), pdfFile -> {
+            btnGeneratePdf.setEnabled(true);
+            if (pdfFile != null) {
+                Toast.makeText(getContext(), "PDF generated: " + pdfFile.getAbsolutePath(), Toast.LENGTH_LONG).show();
+            } else {
+                Toast.makeText(getContext(), "Failed to generate PDF", Toast.LENGTH_SHORT).show();
+            }
+        });
+        
         // Set click listeners
         btnAddToBill.setOnClickListener(v -> addProductToBill());
         btnApplyDiscount.setOnClickListener(v -> applyDiscount());
         btnSaveBill.setOnClickListener(v -> saveBill());
         btnGeneratePdf.setOnClickListener(v -> generatePdf());
+        btnBillHistory.setOnClickListener(v -> openBillHistory());
+    }
+    
+    /**
+     * Setup product dropdown. Suggestions come from the product search index
+     * as the user types, off the main thread.
+     */
+    private void setupProductDropdown() {
+        productSearchAdapter = new ProductSearchAdapter(requireContext(), viewModel::searchProducts);
+        dropdownProducts.setAdapter(productSearchAdapter);
+        dropdownProducts.setOnItemClickListener((parent, view, position, id) ->
+                selectedProduct = productSearchAdapter.getItem(position));
     }
     
     /**
-     * Setup product dropdown
-     * @param products List of available products
+     * Setup the code field. A keyboard-wedge scanner types the barcode as fast
+     * key events and ends it with Enter, so codes are looked up only on Enter
+     * or the Done action, never per key. Focus stays in the field for the next scan.
      */
-    private void setupProductDropdown(List<Product> products) {
-        List<String> productNames = new ArrayList<>();
-        productMap.clear();
-        
-        for (Product product : products) {
-            if (product.getQuantity() > 0) {
-                String displayName = product.getName() + " (₹" + product.getSellingPrice() + ")";
-                productNames.add(displayName);
-                productMap.put(displayName, product.getId());
+    private void setupScanInput() {
+        etScanCode.setOnEditorActionListener((v, actionId, event) -> {
+            boolean enterKey = event != null && event.getKeyCode() == KeyEvent.KEYCODE_ENTER;
+            if (actionId != EditorInfo.IME_ACTION_DONE && !enterKey) {
+                return false;
             }
-        }
-        
-        ArrayAdapter<String> adapter = new ArrayAdapter<>(
-                requireContext(),
-                android.R.layout.simple_dropdown_item_1line,
-                productNames);
-        
-        dropdownProducts.setAdapter(adapter);
+            
+            // Act on key down only; consume the matching key up
+            if (actionId == EditorInfo.IME_ACTION_DONE || event.getAction() == KeyEvent.ACTION_DOWN) {
+                String codes = etScanCode.getText().toString().trim();
+                if (!codes.isEmpty()) {
+                    viewModel.addProductsByCode(codes);
+                }
+                etScanCode.setText("");
+            }
+            return true;
+        });
     }
     
     /**
      * Add selected product to bill
      */
     private void addProductToBill() {
-        String selectedProduct = dropdownProducts.getText().toString();
+        String selectedText = dropdownProducts.getText().toString();
         String quantityStr = etQuantity.getText().toString().trim();
         
-        if (selectedProduct.isEmpty()) {
+        if (selectedText.isEmpty()) {
             Toast.makeText(getContext(), "Please select a product", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -145,7 +177,9 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
             return;
         }
         
-        if (!productMap.containsKey(selectedProduct)) {
+        // The text must still be the suggestion that was picked
+        if (selectedProduct == null
+                || !selectedText.equals(ProductSearchAdapter.getDisplayName(selectedProduct))) {
             Toast.makeText(getContext(), "Invalid product selection", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -157,10 +191,10 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
                 return;
             }
             
-            long productId = productMap.get(selectedProduct);
-            viewModel.addProductToBill(productId, quantity);
+            viewModel.addProductToBill(selectedProduct.getId(), quantity);
             
             // Clear selection
+            selectedProduct = null;
             dropdownProducts.setText("");
             etQuantity.setText("1");
         } catch (NumberFormatException e) {
@@ -180,7 +214,7 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
         }
         
         try {
-            double discount = Double.parseDouble(discountStr);
+            long discount = Money.parse(discountStr);
             if (discount < 0) {
                 Toast.makeText(getContext(), "Discount cannot be negative", Toast.LENGTH_SHORT).show();
                 return;
@@ -196,33 +230,34 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
      * Save bill
      */
     private void saveBill() {
-        long billId = viewModel.saveBill();
-        
-        if (billId > 0) {
-            Toast.makeText(getContext(), "Bill saved successfully", Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(getContext(), "Failed to save bill", Toast.LENGTH_SHORT).show();
-        }
+        // The result arrives through the saved bill ID observer
+        viewModel.saveBill();
     }
     
     /**
-     * Generate PDF bill
+     * Generate PDF bill in the background. The result arrives through the
+     * generated PDF observer.
      */
     private void generatePdf() {
-        Bill bill = viewModel.getCurrentBill().getValue();
-        
-        if (bill == null || bill.getItems().isEmpty()) {
+        if (!viewModel.generatePdf()) {
             Toast.makeText(getContext(), "No items in bill", Toast.LENGTH_SHORT).show();
             return;
         }
         
-        File pdfFile = pdfGenerator.generateBillPdf(bill);
-        
-        if (pdfFile != null) {
-            Toast.makeText(getContext(), "PDF generated: " + pdfFile.getAbsolutePath(), Toast.LENGTH_LONG).show();
-        } else {
-            Toast.makeText(getContext(), "Failed to generate PDF", Toast.LENGTH_SHORT).show();
-        }
+        btnGeneratePdf.setEnabled(false);
+    }
+    
+    /**
+     * Open the bill history on top of the billing screen. The billing tab is
+     * hidden rather than replaced, so the bill in progress is kept.
+     */
+    private void openBillHistory() {
+        getParentFragmentManager()
+                .beginTransaction()
+                .hide(this)
+                .add(R.id.fragment_container, new BillHistoryFragment())
+                .addToBackStack(null)
+                .commit();
     }
     
     /**
@@ -230,8 +265,8 @@ public class BillingFragment extends Fragment implements BillItemAdapter.OnItemR
      * @param bill Current bill
      */
     private void updateBillSummary(Bill bill) {
-        tvSubtotal.setText(String.format(Locale.getDefault(), "₹%.2f", bill.getTotal()));
-        tvFinalAmount.setText(String.format(Locale.getDefault(), "₹%.2f", bill.getFinalAmount()));
+        tvSubtotal.setText(Money.formatRupees(bill.getTotal()));
+        tvFinalAmount.setText(Money.formatRupees(bill.getFinalAmount()));
     }
 
     @Override
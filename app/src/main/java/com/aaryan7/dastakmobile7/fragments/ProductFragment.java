@@ -1,9 +1,14 @@
 package com.aaryan7.dastakmobile7.fragments;
 
+import android.app.Activity;
+import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -16,6 +21,8 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.aaryan7.dastakmobile7.R;
 import com.aaryan7.dastakmobile7.adapters.ProductAdapter;
 import com.aaryan7.dastakmobile7.models.Product;
+import com.aaryan7.dastakmobile7.repository.ProductImporter;
+import com.aaryan7.dastakmobile7.utils.Money;
 import com.aaryan7.dastakmobile7.viewmodel.ProductViewModel;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
@@ -25,11 +32,14 @@ import com.google.android.material.textfield.TextInputEditText;
  * Fragment for Product Management
  */
 public class ProductFragment extends Fragment implements ProductAdapter.OnProductClickListener {
+    private static final int RC_IMPORT = 1002;
+    
     private ProductViewModel viewModel;
     private ProductAdapter adapter;
     private RecyclerView rvProducts;
-    private TextInputEditText etProductName, etPurchasePrice, etSellingPrice, etQuantity;
-    private MaterialButton btnAddProduct;
+    private TextInputEditText etProductName, etPurchasePrice, etSellingPrice, etQuantity, etSku, etSearch;
+    private MaterialButton btnAddProduct, btnImportProducts;
+    private TextView tvImportStatus;
 
     @Nullable
     @Override
@@ -41,7 +51,11 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
         etPurchasePrice = view.findViewById(R.id.et_purchase_price);
         etSellingPrice = view.findViewById(R.id.et_selling_price);
         etQuantity = view.findViewById(R.id.et_quantity);
+        etSku = view.findViewById(R.id.et_sku);
         btnAddProduct = view.findViewById(R.id.btn_add_product);
+        btnImportProducts = view.findViewById(R.id.btn_import_products);
+        tvImportStatus = view.findViewById(R.id.tv_import_status);
+        etSearch = view.findViewById(R.id.et_search);
         rvProducts = view.findViewById(R.id.rv_products);
         
         // Setup RecyclerView
@@ -56,14 +70,30 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         
-        // Initialize ViewModel
-        viewModel = new ViewModelProvider(this).get(ProductViewModel.class);
+        // Initialize ViewModel, shared with the activity so it survives tab switches
+        viewModel = new ViewModelProvider(requireActivity()).get(ProductViewModel.class);
         
-        // Observe products
-        viewModel.getAllProducts().observe(getViewLifecycleOwner(), products -> {
+        // Observe products, filtered by the search box
+        viewModel.getProducts().observe(getViewLifecycleOwner(), products -> {
             adapter.setProducts(products);
         });
         
+        // Search as the user types
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+            
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+            
+            @Override
+            public void afterTextChanged(Editable s) {
+                viewModel.setSearchQuery(s.toString());
+            }
+        });
+        
         // Observe operation status
         viewModel.getOperationStatus().observe(getViewLifecycleOwner(), success -> {
             if (success != null) {
@@ -76,8 +106,62 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
             }
         });
         
+        // Observe import progress
+        viewModel.getImportStatus().observe(getViewLifecycleOwner(), this::showImportStatus);
+        
         // Set click listener for add button
         btnAddProduct.setOnClickListener(v -> addProduct());
+        
+        // Pick a supplier file to import
+        btnImportProducts.setOnClickListener(v -> pickImportFile());
+    }
+    
+    /**
+     * Let the user pick a CSV or TSV file to import products from
+     */
+    private void pickImportFile() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[] {
+                "text/csv", "text/comma-separated-values", "text/tab-separated-values", "text/plain" });
+        startActivityForResult(intent, RC_IMPORT);
+    }
+    
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        
+        if (requestCode == RC_IMPORT && resultCode == Activity.RESULT_OK && data != null && data.getData() != null) {
+            viewModel.importProducts(data.getData());
+        }
+    }
+    
+    /**
+     * Show the progress or outcome of an import
+     * @param status Import status
+     */
+    private void showImportStatus(ProductImporter.Status status) {
+        tvImportStatus.setVisibility(View.VISIBLE);
+        btnImportProducts.setEnabled(status.isFinished());
+        
+        StringBuilder text = new StringBuilder();
+        if (!status.isFinished()) {
+            text.append("Importing... ").append(status.getRowsRead()).append(" rows read");
+        } else if (status.getError() != null) {
+            text.append("Import stopped: ").append(status.getError());
+            if (status.getImported() > 0) {
+                text.append("\n").append(status.getImported()).append(" rows were imported before that");
+            }
+        } else {
+            text.append("Imported ").append(status.getImported()).append(" of ")
+                    .append(status.getRowsRead()).append(" rows");
+        }
+        if (status.getRejectedFile() != null) {
+            text.append("\n").append(status.getRejected()).append(" rejected rows saved to ")
+                    .append(status.getRejectedFile().getAbsolutePath());
+        }
+        tvImportStatus.setText(text);
     }
     
     /**
@@ -88,6 +172,7 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
         String purchasePriceStr = etPurchasePrice.getText().toString().trim();
         String sellingPriceStr = etSellingPrice.getText().toString().trim();
         String quantityStr = etQuantity.getText().toString().trim();
+        String sku = etSku.getText().toString().trim();
         
         // Validate inputs
         if (name.isEmpty() || purchasePriceStr.isEmpty() || sellingPriceStr.isEmpty() || quantityStr.isEmpty()) {
@@ -96,12 +181,12 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
         }
         
         try {
-            double purchasePrice = Double.parseDouble(purchasePriceStr);
-            double sellingPrice = Double.parseDouble(sellingPriceStr);
+            long purchasePrice = Money.parse(purchasePriceStr);
+            long sellingPrice = Money.parse(sellingPriceStr);
             int quantity = Integer.parseInt(quantityStr);
             
             // Add product
-            viewModel.addProduct(name, purchasePrice, sellingPrice, quantity);
+            viewModel.addProduct(name, purchasePrice, sellingPrice, quantity, sku);
         } catch (NumberFormatException e) {
             Toast.makeText(getContext(), "Invalid number format", Toast.LENGTH_SHORT).show();
         }
@@ -115,6 +200,7 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
         etPurchasePrice.setText("");
         etSellingPrice.setText("");
         etQuantity.setText("");
+        etSku.setText("");
         etProductName.requestFocus();
     }
     
@@ -129,12 +215,14 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
         TextInputEditText etEditPurchasePrice = dialogView.findViewById(R.id.et_edit_purchase_price);
         TextInputEditText etEditSellingPrice = dialogView.findViewById(R.id.et_edit_selling_price);
         TextInputEditText etEditQuantity = dialogView.findViewById(R.id.et_edit_quantity);
+        TextInputEditText etEditSku = dialogView.findViewById(R.id.et_edit_sku);
         
         // Set current values
         etEditName.setText(product.getName());
-        etEditPurchasePrice.setText(String.valueOf(product.getPurchasePrice()));
-        etEditSellingPrice.setText(String.valueOf(product.getSellingPrice()));
+        etEditPurchasePrice.setText(Money.format(product.getPurchasePrice()));
+        etEditSellingPrice.setText(Money.format(product.getSellingPrice()));
         etEditQuantity.setText(String.valueOf(product.getQuantity()));
+        etEditSku.setText(product.getSku());
         
         new MaterialAlertDialogBuilder(requireContext())
                 .setTitle("Edit Product")
@@ -145,6 +233,7 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
                     String purchasePriceStr = etEditPurchasePrice.getText().toString().trim();
                     String sellingPriceStr = etEditSellingPrice.getText().toString().trim();
                     String quantityStr = etEditQuantity.getText().toString().trim();
+                    String sku = etEditSku.getText().toString().trim();
                     
                     // Validate inputs
                     if (name.isEmpty() || purchasePriceStr.isEmpty() || sellingPriceStr.isEmpty() || quantityStr.isEmpty()) {
@@ -153,17 +242,19 @@ public class ProductFragment extends Fragment implements ProductAdapter.OnProduc
                     }
                     
                     try {
-                        double purchasePrice = Double.parseDouble(purchasePriceStr);
-                        double sellingPrice = Double.parseDouble(sellingPriceStr);
+                        long purchasePrice = Money.parse(purchasePriceStr);
+                        long sellingPrice = Money.parse(sellingPriceStr);
                         int quantity = Integer.parseInt(quantityStr);
                         
-                        // Update product
-                        product.setName(name);
-                        product.setPurchasePrice(purchasePrice);
-                        product.setSellingPrice(sellingPrice);
-                        product.setQuantity(quantity);
+                        // Update a copy; the shown product stays as it was until the list is diffed
+                        Product updated = new Product(product);
+                        updated.setName(name);
+                        updated.setPurchasePrice(purchasePrice);
+                        updated.setSellingPrice(sellingPrice);
+                        updated.setQuantity(quantity);
+                        updated.setSku(sku);
                         
-                        viewModel.updateProduct(product);
+                        viewModel.updateProduct(updated);
                     } catch (NumberFormatException e) {
                         Toast.makeText(getContext(), "Invalid number format", Toast.LENGTH_SHORT).show();
                     }
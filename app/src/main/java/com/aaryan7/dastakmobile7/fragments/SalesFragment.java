@@ -12,6 +12,7 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.aaryan7.dastakmobile7.R;
+import com.aaryan7.dastakmobile7.utils.Money;
 import com.aaryan7.dastakmobile7.viewmodel.SalesViewModel;
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.components.XAxis;
@@ -23,7 +24,6 @@ import com.google.android.material.tabs.TabLayout;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * Fragment for Sales and Profit Analysis
@@ -53,8 +53,8 @@ public class SalesFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         
-        // Initialize ViewModel
-        viewModel = new ViewModelProvider(this).get(SalesViewModel.class);
+        // Initialize ViewModel, shared with the activity so it survives tab switches
+        viewModel = new ViewModelProvider(requireActivity()).get(SalesViewModel.class);
         
         // Setup tab selection listener
         tabTimePeriod.addOnTabSelectedListener(new TabLayout.OnTabSelectedListener() {
@@ -74,14 +74,10 @@ public class SalesFragment extends Fragment {
             }
         });
         
-        // Observe total sales
-        viewModel.getTotalSales().observe(getViewLifecycleOwner(), totalSales -> {
-            tvTotalSales.setText(String.format(Locale.getDefault(), "₹%.2f", totalSales));
-        });
-        
-        // Observe total profit
-        viewModel.getTotalProfit().observe(getViewLifecycleOwner(), totalProfit -> {
-            tvTotalProfit.setText(String.format(Locale.getDefault(), "₹%.2f", totalProfit));
+        // Observe totals of the selected period
+        viewModel.getSalesSummary().observe(getViewLifecycleOwner(), summary -> {
+            tvTotalSales.setText(Money.formatRupees(summary.getTotalAmount()));
+            tvTotalProfit.setText(Money.formatRupees(summary.getTotalProfit()));
         });
         
         // Observe selected period
@@ -92,33 +88,49 @@ public class SalesFragment extends Fragment {
         // Setup charts
         setupCharts();
     }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (!isHidden()) {
+            viewModel.refreshIfStale();
+        }
+    }
+
+    @Override
+    public void onHiddenChanged(boolean hidden) {
+        super.onHiddenChanged(hidden);
+        // Tabs are shown and hidden rather than recreated; reload only if data changed meanwhile
+        if (!hidden) {
+            viewModel.refreshIfStale();
+        }
+    }
     
     /**
-     * Setup sales and profit charts
+     * Setup sales and profit charts once their data has loaded
      */
     private void setupCharts() {
-        // Get data for charts
-        double[] salesData = viewModel.getSalesDataForChart();
-        double[] profitData = viewModel.getProfitDataForChart();
-        String[] dayLabels = viewModel.getDayLabelsForChart();
-        
-        // Setup sales chart
-        setupSalesChart(salesData, dayLabels);
-        
-        // Setup profit chart
-        setupProfitChart(profitData, dayLabels);
+        viewModel.getChartSeries().observe(getViewLifecycleOwner(), series -> {
+            String[] labels = viewModel.getChartLabels(series);
+            
+            // Setup sales chart
+            setupSalesChart(series.getAmounts(), labels);
+            
+            // Setup profit chart
+            setupProfitChart(series.getProfits(), labels);
+        });
     }
     
     /**
      * Setup sales chart
-     * @param salesData Sales data array
+     * @param salesData Sales per bucket in paise
      * @param dayLabels Day labels array
      */
-    private void setupSalesChart(double[] salesData, String[] dayLabels) {
+    private void setupSalesChart(long[] salesData, String[] dayLabels) {
         List<Entry> entries = new ArrayList<>();
         
         for (int i = 0; i < salesData.length; i++) {
-            entries.add(new Entry(i, (float) salesData[i]));
+            entries.add(new Entry(i, (float) Money.toRupees(salesData[i])));
         }
         
         LineDataSet dataSet = new LineDataSet(entries, "Sales");
@@ -145,14 +157,14 @@ public class SalesFragment extends Fragment {
     
     /**
      * Setup profit chart
-     * @param profitData Profit data array
+     * @param profitData Profit per bucket in paise
      * @param dayLabels Day labels array
      */
-    private void setupProfitChart(double[] profitData, String[] dayLabels) {
+    private void setupProfitChart(long[] profitData, String[] dayLabels) {
         List<Entry> entries = new ArrayList<>();
         
         for (int i = 0; i < profitData.length; i++) {
-            entries.add(new Entry(i, (float) profitData[i]));
+            entries.add(new Entry(i, (float) Money.toRupees(profitData[i])));
         }
         
         LineDataSet dataSet = new LineDataSet(entries, "Profit");
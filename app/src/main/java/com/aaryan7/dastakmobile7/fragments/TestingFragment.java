@@ -83,7 +83,9 @@ public class TestingFragment extends Fragment {
         
         // Run tests in background thread
         new Thread(() -> {
-            final String results = TestUtils.performStressTest(requireContext(), 100);
+            final String results = TestUtils.performStressTest(requireContext(), 100)
+                    + "\n" + TestUtils.performConnectionBenchmark(requireContext(), 100)
+                    + "\n" + TestUtils.performInsertBenchmark(1000);
             
             // Update UI on main thread
             requireActivity().runOnUiThread(() -> {
@@ -1,23 +1,87 @@
 package com.aaryan7.dastakmobile7.models;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Model class for Bill
+ * Model class for Bill. Amounts are in paise.
+ *
+ * A bill holds one line per product. The total is kept up to date as lines
+ * change instead of being summed again, lines are indexed by product ID,
+ * and every line change is recorded so a list can replay it; see
+ * getChangesSince().
  */
 public class Bill {
+    // Line changes kept for replay; a reader further behind reloads all lines
+    private static final int MAX_LOGGED_CHANGES = 64;
+
+    /**
+     * One change to the lines of a bill
+     */
+    public static final class Change {
+        public static final int INSERTED = 0;
+        public static final int CHANGED = 1;
+        public static final int REMOVED = 2;
+
+        private final int revision;
+        private final int type;
+        private final int position;
+        private final BillItem item;
+
+        Change(int revision, int type, int position, BillItem item) {
+            this.revision = revision;
+            this.type = type;
+            this.position = position;
+            this.item = item;
+        }
+
+        /**
+         * Get the kind of change
+         * @return INSERTED, CHANGED, or REMOVED
+         */
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * Get the position of the line at the time of the change
+         * @return Line position
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * Get the line as it was right after the change
+         * @return Copy of the line, or null for REMOVED
+         */
+        public BillItem getItem() {
+            return item;
+        }
+    }
+
     private long id;
     private Date date;
-    private double total;
-    private double discount;
-    private double finalAmount;
+    private long total;
+    private long discount;
+    private long finalAmount;
     private List<BillItem> items;
+    private List<BillItem> readOnlyItems;
+    private final Map<Long, Integer> positions = new HashMap<>();
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    private int revision;
+    // Oldest revision that getChangesSince() can replay from
+    private int replayableRevision;
 
     public Bill() {
         this.date = new Date();
         this.items = new ArrayList<>();
+        this.readOnlyItems = Collections.unmodifiableList(items);
     }
 
     public long getId() {
@@ -36,47 +100,125 @@ public class Bill {
         this.date = date;
     }
 
-    public double getTotal() {
+    public long getTotal() {
         return total;
     }
 
-    public void setTotal(double total) {
+    public void setTotal(long total) {
         this.total = total;
     }
 
-    public double getDiscount() {
+    public long getDiscount() {
         return discount;
     }
 
-    public void setDiscount(double discount) {
+    public void setDiscount(long discount) {
         this.discount = discount;
         calculateFinalAmount();
     }
 
-    public double getFinalAmount() {
+    public long getFinalAmount() {
         return finalAmount;
     }
 
-    public void setFinalAmount(double finalAmount) {
+    public void setFinalAmount(long finalAmount) {
         this.finalAmount = finalAmount;
     }
 
+    /**
+     * Get the lines of the bill
+     * @return Read-only view of the lines; use the bill's methods to change them
+     */
     public List<BillItem> getItems() {
-        return items;
+        return readOnlyItems;
     }
 
+    /**
+     * Replace all lines and compute the total from them
+     * @param items New lines, one per product; the bill takes a copy of the list
+     */
     public void setItems(List<BillItem> items) {
-        this.items = items;
-        calculateTotal();
+        this.items = new ArrayList<>(items);
+        this.readOnlyItems = Collections.unmodifiableList(this.items);
+
+        positions.clear();
+        long total = 0;
+        for (int i = 0; i < this.items.size(); i++) {
+            BillItem item = this.items.get(i);
+            positions.put(item.getProductId(), i);
+            total += item.getSubtotal();
+        }
+        this.total = total;
+        calculateFinalAmount();
+
+        // Readers of older revisions must reload every line
+        revision++;
+        replayableRevision = revision;
+        changes.clear();
+    }
+
+    /**
+     * Get the line of a product
+     * @param productId Product ID
+     * @return Position of the line, or -1 if the product is not on the bill
+     */
+    public int indexOfProduct(long productId) {
+        Integer position = positions.get(productId);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Get a line
+     * @param position Line position
+     * @return Line at the position
+     */
+    public BillItem getItem(int position) {
+        return items.get(position);
     }
 
     /**
-     * Add an item to the bill
+     * Add an item to the bill. If the product already has a line, the
+     * quantity is added to that line instead.
      * @param item BillItem to add
+     * @return Position of the line that holds the item
      */
-    public void addItem(BillItem item) {
-        this.items.add(item);
-        calculateTotal();
+    public int addItem(BillItem item) {
+        int position = indexOfProduct(item.getProductId());
+
+        if (position >= 0) {
+            BillItem line = items.get(position);
+            long oldSubtotal = line.getSubtotal();
+            line.setQuantity(line.getQuantity() + item.getQuantity());
+            total += line.getSubtotal() - oldSubtotal;
+            record(Change.CHANGED, position, line);
+        } else {
+            position = items.size();
+            items.add(item);
+            positions.put(item.getProductId(), position);
+            total += item.getSubtotal();
+            record(Change.INSERTED, position, item);
+        }
+
+        calculateFinalAmount();
+        return position;
+    }
+
+    /**
+     * Remove a line from the bill
+     * @param position Line position
+     */
+    public void removeItem(int position) {
+        BillItem item = items.remove(position);
+        positions.remove(item.getProductId());
+
+        // Lines after it moved up by one
+        for (int i = position; i < items.size(); i++) {
+            positions.put(items.get(i).getProductId(), i);
+        }
+
+        total -= item.getSubtotal();
+        calculateFinalAmount();
+        record(Change.REMOVED, position, null);
     }
 
     /**
@@ -84,20 +226,65 @@ public class Bill {
      * @param item BillItem to remove
      */
     public void removeItem(BillItem item) {
-        this.items.remove(item);
-        calculateTotal();
+        int position = indexOfProduct(item.getProductId());
+        if (position >= 0) {
+            removeItem(position);
+        }
     }
 
     /**
-     * Calculate total amount based on items
+     * Append a line read back from the database, leaving the saved total as
+     * it is. Saved bills are not edited, so no change is recorded for replay.
+     * @param item Saved line
      */
-    private void calculateTotal() {
-        double total = 0;
-        for (BillItem item : items) {
-            total += item.getSubtotal();
+    public void addSavedItem(BillItem item) {
+        positions.put(item.getProductId(), items.size());
+        items.add(item);
+        revision++;
+        replayableRevision = revision;
+    }
+
+    /**
+     * Get the revision of the lines, which changes with every line change
+     * @return Current revision
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    /**
+     * Get the line changes made after a revision, oldest first. Applying them
+     * in order to the lines as they were at that revision gives the current lines.
+     * @param sinceRevision Revision the reader last saw
+     * @return Changes since that revision, or null if they are no longer
+     *         known and the reader must reload all lines
+     */
+    public List<Change> getChangesSince(int sinceRevision) {
+        if (sinceRevision < replayableRevision || sinceRevision > revision) {
+            return null;
+        }
+
+        List<Change> result = new ArrayList<>(revision - sinceRevision);
+        for (Change change : changes) {
+            if (change.revision > sinceRevision) {
+                result.add(change);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Record a line change for replay
+     * @param type Change type
+     * @param position Line position
+     * @param item Line after the change, or null if it was removed
+     */
+    private void record(int type, int position, BillItem item) {
+        revision++;
+        changes.addLast(new Change(revision, type, position, item == null ? null : new BillItem(item)));
+        if (changes.size() > MAX_LOGGED_CHANGES) {
+            replayableRevision = changes.removeFirst().revision;
         }
-        this.total = total;
-        calculateFinalAmount();
     }
 
     /**
@@ -1,7 +1,7 @@
 package com.aaryan7.dastakmobile7.models;
 
 /**
- * Model class for Bill Item
+ * Model class for Bill Item. Prices and the subtotal are in paise.
  */
 public class BillItem {
     private long id;
@@ -9,14 +9,15 @@ public class BillItem {
     private long productId;
     private String productName;
     private int quantity;
-    private double price;
-    private double subtotal;
+    private long price;
+    private long purchasePrice;
+    private long subtotal;
 
     public BillItem() {
         // Default constructor
     }
 
-    public BillItem(long productId, String productName, int quantity, double price) {
+    public BillItem(long productId, String productName, int quantity, long price) {
         this.productId = productId;
         this.productName = productName;
         this.quantity = quantity;
@@ -24,6 +25,21 @@ public class BillItem {
         calculateSubtotal();
     }
 
+    /**
+     * Copy another bill item
+     * @param other Item to copy
+     */
+    public BillItem(BillItem other) {
+        this.id = other.id;
+        this.billId = other.billId;
+        this.productId = other.productId;
+        this.productName = other.productName;
+        this.quantity = other.quantity;
+        this.price = other.price;
+        this.purchasePrice = other.purchasePrice;
+        this.subtotal = other.subtotal;
+    }
+
     public long getId() {
         return id;
     }
@@ -65,20 +81,28 @@ public class BillItem {
         calculateSubtotal();
     }
 
-    public double getPrice() {
+    public long getPrice() {
         return price;
     }
 
-    public void setPrice(double price) {
+    public void setPrice(long price) {
         this.price = price;
         calculateSubtotal();
     }
 
-    public double getSubtotal() {
+    public long getPurchasePrice() {
+        return purchasePrice;
+    }
+
+    public void setPurchasePrice(long purchasePrice) {
+        this.purchasePrice = purchasePrice;
+    }
+
+    public long getSubtotal() {
         return subtotal;
     }
 
-    public void setSubtotal(double subtotal) {
+    public void setSubtotal(long subtotal) {
         this.subtotal = subtotal;
     }
 
@@ -1,21 +1,22 @@
 package com.aaryan7.dastakmobile7.models;
 
 /**
- * Model class for Product
+ * Model class for Product. Prices and profit are in paise.
  */
 public class Product {
     private long id;
     private String name;
-    private double purchasePrice;
-    private double sellingPrice;
+    private long purchasePrice;
+    private long sellingPrice;
     private int quantity;
-    private double profit;
+    private long profit;
+    private String sku;
 
     public Product() {
         // Default constructor
     }
 
-    public Product(String name, double purchasePrice, double sellingPrice, int quantity) {
+    public Product(String name, long purchasePrice, long sellingPrice, int quantity) {
         this.name = name;
         this.purchasePrice = purchasePrice;
         this.sellingPrice = sellingPrice;
@@ -23,6 +24,20 @@ public class Product {
         calculateProfit();
     }
 
+    /**
+     * Copy another product
+     * @param other Product to copy
+     */
+    public Product(Product other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.purchasePrice = other.purchasePrice;
+        this.sellingPrice = other.sellingPrice;
+        this.quantity = other.quantity;
+        this.profit = other.profit;
+        this.sku = other.sku;
+    }
+
     public long getId() {
         return id;
     }
@@ -39,20 +54,20 @@ public class Product {
         this.name = name;
     }
 
-    public double getPurchasePrice() {
+    public long getPurchasePrice() {
         return purchasePrice;
     }
 
-    public void setPurchasePrice(double purchasePrice) {
+    public void setPurchasePrice(long purchasePrice) {
         this.purchasePrice = purchasePrice;
         calculateProfit();
     }
 
-    public double getSellingPrice() {
+    public long getSellingPrice() {
         return sellingPrice;
     }
 
-    public void setSellingPrice(double sellingPrice) {
+    public void setSellingPrice(long sellingPrice) {
         this.sellingPrice = sellingPrice;
         calculateProfit();
     }
@@ -65,10 +80,22 @@ public class Product {
         this.quantity = quantity;
     }
 
-    public double getProfit() {
+    public long getProfit() {
         return profit;
     }
 
+    /**
+     * Get the stock-keeping unit, usually the barcode printed on the item
+     * @return SKU, or null if the product has none
+     */
+    public String getSku() {
+        return sku;
+    }
+
+    public void setSku(String sku) {
+        this.sku = sku;
+    }
+
     /**
      * Calculate profit based on selling price and purchase price
      */
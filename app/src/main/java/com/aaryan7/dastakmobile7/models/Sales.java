@@ -3,19 +3,20 @@ package com.aaryan7.dastakmobile7.models;
 import java.util.Date;
 
 /**
- * Model class for Sales data
+ * Model class for Sales data. Amount and profit are in paise.
  */
 public class Sales {
     private long id;
     private Date date;
-    private double amount;
-    private double profit;
+    private long amount;
+    private long profit;
+    private int itemCount;
 
     public Sales() {
         // Default constructor
     }
 
-    public Sales(Date date, double amount, double profit) {
+    public Sales(Date date, long amount, long profit) {
         this.date = date;
         this.amount = amount;
         this.profit = profit;
@@ -37,19 +38,27 @@ public class Sales {
         this.date = date;
     }
 
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
-    public double getProfit() {
+    public long getProfit() {
         return profit;
     }
 
-    public void setProfit(double profit) {
+    public void setProfit(long profit) {
         this.profit = profit;
     }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
 }
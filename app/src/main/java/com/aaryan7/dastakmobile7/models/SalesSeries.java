@@ -0,0 +1,39 @@
+package com.aaryan7.dastakmobile7.models;
+
+/**
+ * Model class for sales amounts and profit grouped into consecutive time buckets.
+ * Amounts are in paise.
+ */
+public class SalesSeries {
+    private final int bucketSize;
+    private final long[] bucketStarts;
+    private final long[] amounts;
+    private final long[] profits;
+
+    public SalesSeries(int bucketSize, long[] bucketStarts, long[] amounts, long[] profits) {
+        this.bucketSize = bucketSize;
+        this.bucketStarts = bucketStarts;
+        this.amounts = amounts;
+        this.profits = profits;
+    }
+
+    /**
+     * Get the bucket size
+     * @return DateRangeUtils.HOUR, DAY, WEEK, or MONTH
+     */
+    public int getBucketSize() {
+        return bucketSize;
+    }
+
+    public long[] getBucketStarts() {
+        return bucketStarts;
+    }
+
+    public long[] getAmounts() {
+        return amounts;
+    }
+
+    public long[] getProfits() {
+        return profits;
+    }
+}
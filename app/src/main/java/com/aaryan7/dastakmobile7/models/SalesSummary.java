@@ -0,0 +1,34 @@
+package com.aaryan7.dastakmobile7.models;
+
+/**
+ * Model class for aggregated sales over a date range. Amounts are in paise.
+ */
+public class SalesSummary {
+    private final int count;
+    private final long totalAmount;
+    private final long totalProfit;
+    private final long averageAmount;
+
+    public SalesSummary(int count, long totalAmount, long totalProfit, long averageAmount) {
+        this.count = count;
+        this.totalAmount = totalAmount;
+        this.totalProfit = totalProfit;
+        this.averageAmount = averageAmount;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getTotalAmount() {
+        return totalAmount;
+    }
+
+    public long getTotalProfit() {
+        return totalProfit;
+    }
+
+    public long getAverageAmount() {
+        return averageAmount;
+    }
+}
@@ -0,0 +1,41 @@
+package com.aaryan7.dastakmobile7.repository;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Wraps a repository operation for a background executor so that its
+ * callback is always called. An exception thrown by the operation, such as
+ * SQLiteFullException, would otherwise stay in a Future nobody reads and
+ * leave the caller waiting for a result that never comes; instead it is
+ * logged and the callback receives a failure result.
+ */
+public final class BackgroundCall {
+    private static final String TAG = "BackgroundCall";
+
+    private BackgroundCall() {
+    }
+
+    /**
+     * Create a task that runs an operation and hands its result to a callback
+     * @param name What the operation does, for the log
+     * @param operation Operation to run
+     * @param failure Result to hand over if the operation throws
+     * @param callback Receives the result on the background thread
+     * @param <T> Result type
+     * @return Task to run on an executor
+     */
+    public static <T> Runnable of(String name, Callable<T> operation, T failure, RepositoryCallback<T> callback) {
+        return () -> {
+            T result;
+            try {
+                result = operation.call();
+            } catch (Exception e) {
+                Log.e(TAG, name + " failed", e);
+                result = failure;
+            }
+            callback.onComplete(result);
+        };
+    }
+}
@@ -1,27 +1,45 @@
 package com.aaryan7.dastakmobile7.repository;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
 import com.aaryan7.dastakmobile7.database.DatabaseHelper;
+import com.aaryan7.dastakmobile7.database.ProductCatalog;
 import com.aaryan7.dastakmobile7.models.Bill;
 import com.aaryan7.dastakmobile7.models.BillItem;
+import com.aaryan7.dastakmobile7.models.Sales;
+import com.aaryan7.dastakmobile7.utils.AppExecutors;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * Repository class for Bill operations
  */
 public class BillRepository {
+    /**
+     * Receives bills one at a time as they are loaded
+     */
+    public interface OnBillLoadedListener {
+        void onBillLoaded(Bill bill);
+    }
+    
+    private static final String TAG = "BillRepository";
+    // Bills loaded per query when streaming the whole history
+    private static final int STREAM_PAGE_SIZE = 200;
     private DatabaseHelper dbHelper;
-    private SimpleDateFormat dateFormat;
+    private AppExecutors executors;
+    private SalesRepository salesRepository;
     private static final String TABLE_BILLS = "bills";
     private static final String TABLE_BILL_ITEMS = "bill_items";
     private static final String COLUMN_ID = "id";
@@ -31,192 +49,444 @@ public class BillRepository {
     private static final String COLUMN_BILL_FINAL_AMOUNT = "final_amount";
     private static final String COLUMN_BILL_ID = "bill_id";
     private static final String COLUMN_PRODUCT_ID = "product_id";
-    private static final String COLUMN_PRODUCT_NAME = "name";
+    private static final String COLUMN_ITEM_PRODUCT_NAME = "product_name";
     private static final String COLUMN_ITEM_QUANTITY = "quantity";
     private static final String COLUMN_ITEM_PRICE = "price";
+    private static final String COLUMN_ITEM_PURCHASE_PRICE = "purchase_price";
     private static final String COLUMN_ITEM_SUBTOTAL = "subtotal";
+    private static final String SQL_INSERT_BILL = "INSERT INTO " + TABLE_BILLS + " ("
+            + COLUMN_BILL_DATE + ", " + COLUMN_BILL_TOTAL + ", " + COLUMN_BILL_DISCOUNT + ", "
+            + COLUMN_BILL_FINAL_AMOUNT + ") VALUES (?, ?, ?, ?)";
+    // Each line keeps the name and prices it was sold with; the purchase
+    // price is copied from the product as it stands at the time of sale
+    private static final String SQL_INSERT_BILL_ITEM = "INSERT INTO " + TABLE_BILL_ITEMS + " ("
+            + COLUMN_BILL_ID + ", " + COLUMN_PRODUCT_ID + ", " + COLUMN_ITEM_PRODUCT_NAME + ", "
+            + COLUMN_ITEM_QUANTITY + ", " + COLUMN_ITEM_PRICE + ", " + COLUMN_ITEM_PURCHASE_PRICE + ", "
+            + COLUMN_ITEM_SUBTOTAL + ") VALUES (?, ?, ?, ?, ?,"
+            + " (SELECT purchase_price FROM products WHERE id = ?), ?)";
+    // Item columns read by readBillItem, from bill_items aliased as i
+    private static final String BILL_ITEM_COLUMNS = "i." + COLUMN_ID + ", i." + COLUMN_PRODUCT_ID
+            + ", i." + COLUMN_ITEM_PRODUCT_NAME + ", i." + COLUMN_ITEM_QUANTITY + ", i." + COLUMN_ITEM_PRICE
+            + ", i." + COLUMN_ITEM_PURCHASE_PRICE + ", i." + COLUMN_ITEM_SUBTOTAL;
+    private static final String BILL_HEADER_COLUMNS = COLUMN_ID + ", " + COLUMN_BILL_DATE + ", "
+            + COLUMN_BILL_TOTAL + ", " + COLUMN_BILL_DISCOUNT + ", " + COLUMN_BILL_FINAL_AMOUNT;
+    // Purchase cost of a bill's items at the prices recorded with them
+    private static final String SQL_BILL_COST = "SELECT IFNULL(SUM(" + COLUMN_ITEM_QUANTITY + " * "
+            + COLUMN_ITEM_PURCHASE_PRICE + "), 0) FROM " + TABLE_BILL_ITEMS + " WHERE " + COLUMN_BILL_ID + " = ?";
 
     public BillRepository(Context context) {
-        dbHelper = new DatabaseHelper(context);
-        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+        dbHelper = DatabaseHelper.getInstance(context);
+        executors = AppExecutors.getInstance();
+        salesRepository = new SalesRepository(context);
     }
 
     /**
-     * Save a bill to the database
+     * Save a bill to the database and record it as a sale in the same transaction
      * @param bill Bill to save
-     * @return ID of the newly saved bill
+     * @return ID of the newly saved bill, or -1 if any item is out of stock
      */
     public long saveBill(Bill bill) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ProductCatalog catalog = dbHelper.getProductCatalog();
+        Map<Long, Integer> soldQuantities = new HashMap<>();
+        long billId;
         
-        // Begin transaction
-        db.beginTransaction();
+        // Hold the catalog from the stock reservation until it is updated, so a
+        // catalog load cannot read the new stock and have it taken off again
+        synchronized (catalog) {
+            billId = writeBill(bill, soldQuantities);
+            if (billId > 0) {
+                catalog.decreaseStock(soldQuantities);
+            }
+        }
+        
+        dbHelper.notifyWrite(TABLE_BILLS, TABLE_BILL_ITEMS, ProductRepository.TABLE_PRODUCTS,
+                SalesRepository.TABLE_SALES, SalesRepository.TABLE_DAILY_SALES_SUMMARY);
+        return billId;
+    }
+    
+    /**
+     * Write a bill, its stock reservations and its sale in one transaction
+     * @param bill Bill to save
+     * @param soldQuantities Receives the quantity taken from stock per product ID
+     * @return ID of the newly saved bill, or -1 if any item is out of stock
+     */
+    private long writeBill(Bill bill, Map<Long, Integer> soldQuantities) {
+        SQLiteDatabase db = dbHelper.getDatabase();
+        
+        // Begin transaction. Non-exclusive so that report queries on the
+        // write-ahead log keep reading while the bill is committed.
+        db.beginTransactionNonExclusive();
         
         try {
             // Insert bill
-            ContentValues billValues = new ContentValues();
-            billValues.put(COLUMN_BILL_DATE, dateFormat.format(bill.getDate()));
-            billValues.put(COLUMN_BILL_TOTAL, bill.getTotal());
-            billValues.put(COLUMN_BILL_DISCOUNT, bill.getDiscount());
-            billValues.put(COLUMN_BILL_FINAL_AMOUNT, bill.getFinalAmount());
-            
-            long billId = db.insert(TABLE_BILLS, null, billValues);
+            long billId;
+            SQLiteStatement billStatement = dbHelper.getStatementCache().get(SQL_INSERT_BILL);
+            synchronized (billStatement) {
+                billStatement.bindLong(1, bill.getDate().getTime());
+                billStatement.bindLong(2, bill.getTotal());
+                billStatement.bindLong(3, bill.getDiscount());
+                billStatement.bindLong(4, bill.getFinalAmount());
+                billId = billStatement.executeInsert();
+                billStatement.clearBindings();
+            }
             
             // Insert bill items
+            int itemCount = 0;
+            SQLiteStatement itemStatement = dbHelper.getStatementCache().get(SQL_INSERT_BILL_ITEM);
             for (BillItem item : bill.getItems()) {
-                ContentValues itemValues = new ContentValues();
-                itemValues.put(COLUMN_BILL_ID, billId);
-                itemValues.put(COLUMN_PRODUCT_ID, item.getProductId());
-                itemValues.put(COLUMN_PRODUCT_NAME, item.getProductName());
-                itemValues.put(COLUMN_ITEM_QUANTITY, item.getQuantity());
-                itemValues.put(COLUMN_ITEM_PRICE, item.getPrice());
-                itemValues.put(COLUMN_ITEM_SUBTOTAL, item.getSubtotal());
-                
-                db.insert(TABLE_BILL_ITEMS, null, itemValues);
+                itemCount += item.getQuantity();
+                synchronized (itemStatement) {
+                    itemStatement.bindLong(1, billId);
+                    itemStatement.bindLong(2, item.getProductId());
+                    if (item.getProductName() != null) {
+                        itemStatement.bindString(3, item.getProductName());
+                    } else {
+                        itemStatement.bindNull(3);
+                    }
+                    itemStatement.bindLong(4, item.getQuantity());
+                    itemStatement.bindLong(5, item.getPrice());
+                    itemStatement.bindLong(6, item.getProductId());
+                    itemStatement.bindLong(7, item.getSubtotal());
+                    itemStatement.executeInsert();
+                    itemStatement.clearBindings();
+                }
                 
-                // Update product quantity
-                dbHelper.updateProductQuantity(item.getProductId(), item.getQuantity());
+                // Take the quantity from stock; a short line rolls back the whole bill
+                if (!dbHelper.reserveStock(item.getProductId(), item.getQuantity())) {
+                    return -1;
+                }
+                Integer sold = soldQuantities.get(item.getProductId());
+                soldQuantities.put(item.getProductId(), (sold == null ? 0 : sold) + item.getQuantity());
             }
             
+            // Record the sale and update the daily rollup
+            Sales sales = new Sales(bill.getDate(), bill.getFinalAmount(),
+                    bill.getFinalAmount() - getBillCost(db, billId));
+            sales.setItemCount(itemCount);
+            salesRepository.recordSale(sales);
+            
             // Set transaction successful
             db.setTransactionSuccessful();
             
             return billId;
+        } catch (SQLException e) {
+            Log.e(TAG, "Failed to save bill", e);
+            return -1;
         } finally {
             // End transaction
             db.endTransaction();
-            db.close();
         }
     }
     
+    /**
+     * Get the purchase cost of a bill's items
+     * @param db Database
+     * @param billId Bill ID
+     * @return Total purchase cost in paise
+     */
+    private long getBillCost(SQLiteDatabase db, long billId) {
+        Cursor cursor = db.rawQuery(SQL_BILL_COST, new String[] { String.valueOf(billId) });
+        long cost = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return cost;
+    }
+    
     /**
      * Get a bill by ID
      * @param billId Bill ID
-     * @return Bill object
+     * @return Bill object, or null if there is no such bill
      */
     public Bill getBill(long billId) {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        
-        // Query bill
-        Cursor billCursor = db.query(
-            TABLE_BILLS,
-            new String[] { COLUMN_ID, COLUMN_BILL_DATE, COLUMN_BILL_TOTAL, 
-                          COLUMN_BILL_DISCOUNT, COLUMN_BILL_FINAL_AMOUNT },
-            COLUMN_ID + "=?",
-            new String[] { String.valueOf(billId) },
-            null, null, null, null
-        );
-        
-        if (billCursor == null || !billCursor.moveToFirst()) {
-            return null;
+        Bill[] result = new Bill[1];
+        streamBills("SELECT * FROM " + TABLE_BILLS + " WHERE " + COLUMN_ID + " = ?",
+                new String[] { String.valueOf(billId) },
+                bill -> result[0] = bill);
+        return result[0];
+    }
+    
+    /**
+     * Get all bills
+     * @return List of all bills, newest first
+     */
+    public List<Bill> getAllBills() {
+        List<Bill> bills = new ArrayList<>();
+        streamAllBills(bills::add);
+        return bills;
+    }
+    
+    /**
+     * Get recent bills
+     * @param limit Number of bills to retrieve
+     * @return List of recent bills, newest first
+     */
+    public List<Bill> getRecentBills(int limit) {
+        List<Bill> bills = new ArrayList<>();
+        streamRecentBills(limit, bills::add);
+        return bills;
+    }
+    
+    /**
+     * Load all bills with their items, handing each to the listener as soon
+     * as it is complete instead of building one list. Bills are read a page
+     * at a time, continuing from the last bill by (date, id) as in
+     * getBillsBefore, so no query sorts or holds the whole ledger. Stops
+     * between pages if the thread is interrupted.
+     * @param listener Receives every bill, newest first
+     */
+    public void streamAllBills(OnBillLoadedListener listener) {
+        String pageQuery = "SELECT * FROM " + TABLE_BILLS
+                + " WHERE " + COLUMN_BILL_DATE + " <= ? AND (" + COLUMN_BILL_DATE + " < ? OR " + COLUMN_ID + " < ?)"
+                + " ORDER BY " + COLUMN_BILL_DATE + " DESC, " + COLUMN_ID + " DESC LIMIT " + STREAM_PAGE_SIZE;
+        long date = Long.MAX_VALUE;
+        long id = Long.MAX_VALUE;
+        
+        while (!Thread.currentThread().isInterrupted()) {
+            Bill last = streamBills(pageQuery,
+                    new String[] { String.valueOf(date), String.valueOf(date), String.valueOf(id) }, listener);
+            if (last == null) {
+                return;
+            }
+            date = last.getDate().getTime();
+            id = last.getId();
         }
+    }
+    
+    /**
+     * Load the most recent bills with their items, handing each to the listener
+     * @param limit Number of bills to retrieve
+     * @param listener Receives every bill, newest first
+     */
+    public void streamRecentBills(int limit, OnBillLoadedListener listener) {
+        streamBills("SELECT * FROM " + TABLE_BILLS
+                        + " ORDER BY " + COLUMN_BILL_DATE + " DESC, " + COLUMN_ID + " DESC LIMIT " + limit,
+                null, listener);
+    }
+    
+    /**
+     * Get a page of bill headers older than a position in the history. Pages
+     * continue from the last bill shown rather than skipping an OFFSET, so
+     * every page costs the same however deep the history is. Items are not
+     * loaded; see getBillItems.
+     * @param date Date of the last bill already shown, or Long.MAX_VALUE for the first page
+     * @param id ID of the last bill already shown, or Long.MAX_VALUE for the first page
+     * @param pageSize Maximum number of bills
+     * @return Bills without items, newest first
+     */
+    public List<Bill> getBillsBefore(long date, long id, int pageSize) {
+        // The date index stores the row ID with each entry, so it serves
+        // both the range and the (date, id) order
+        String selectQuery = "SELECT " + BILL_HEADER_COLUMNS + " FROM " + TABLE_BILLS
+                + " WHERE " + COLUMN_BILL_DATE + " <= ? AND (" + COLUMN_BILL_DATE + " < ? OR " + COLUMN_ID + " < ?)"
+                + " ORDER BY " + COLUMN_BILL_DATE + " DESC, " + COLUMN_ID + " DESC LIMIT " + pageSize;
         
-        // Create bill object
-        Bill bill = new Bill();
-        bill.setId(billCursor.getLong(billCursor.getColumnIndex(COLUMN_ID)));
+        SQLiteDatabase db = dbHelper.getDatabase();
+        Cursor cursor = db.rawQuery(selectQuery,
+                new String[] { String.valueOf(date), String.valueOf(date), String.valueOf(id) });
         
-        try {
-            bill.setDate(dateFormat.parse(billCursor.getString(billCursor.getColumnIndex(COLUMN_BILL_DATE))));
-        } catch (ParseException e) {
-            bill.setDate(new Date());
-        }
+        return readBillHeaders(cursor);
+    }
+    
+    /**
+     * Get a page of bill headers newer than a position in the history
+     * @param date Date of the first bill already shown
+     * @param id ID of the first bill already shown
+     * @param pageSize Maximum number of bills
+     * @return Bills without items, newest first
+     */
+    public List<Bill> getBillsAfter(long date, long id, int pageSize) {
+        String selectQuery = "SELECT " + BILL_HEADER_COLUMNS + " FROM " + TABLE_BILLS
+                + " WHERE " + COLUMN_BILL_DATE + " >= ? AND (" + COLUMN_BILL_DATE + " > ? OR " + COLUMN_ID + " > ?)"
+                + " ORDER BY " + COLUMN_BILL_DATE + " ASC, " + COLUMN_ID + " ASC LIMIT " + pageSize;
         
-        bill.setTotal(billCursor.getDouble(billCursor.getColumnIndex(COLUMN_BILL_TOTAL)));
-        bill.setDiscount(billCursor.getDouble(billCursor.getColumnIndex(COLUMN_BILL_DISCOUNT)));
-        bill.setFinalAmount(billCursor.getDouble(billCursor.getColumnIndex(COLUMN_BILL_FINAL_AMOUNT)));
+        SQLiteDatabase db = dbHelper.getDatabase();
+        Cursor cursor = db.rawQuery(selectQuery,
+                new String[] { String.valueOf(date), String.valueOf(date), String.valueOf(id) });
         
-        billCursor.close();
+        // Read nearest first so the limit keeps the adjacent bills, then restore newest first
+        List<Bill> bills = readBillHeaders(cursor);
+        Collections.reverse(bills);
+        return bills;
+    }
+    
+    /**
+     * Get the items of one bill
+     * @param billId Bill ID
+     * @return Items in the order they were added
+     */
+    public List<BillItem> getBillItems(long billId) {
+        String selectQuery = "SELECT " + BILL_ITEM_COLUMNS + " FROM " + TABLE_BILL_ITEMS + " i"
+                + " WHERE i." + COLUMN_BILL_ID + " = ?"
+                + " ORDER BY i." + COLUMN_ID;
         
-        // Query bill items
-        Cursor itemsCursor = db.query(
-            TABLE_BILL_ITEMS,
-            new String[] { COLUMN_ID, COLUMN_PRODUCT_ID, COLUMN_PRODUCT_NAME, 
-                          COLUMN_ITEM_QUANTITY, COLUMN_ITEM_PRICE, COLUMN_ITEM_SUBTOTAL },
-            COLUMN_BILL_ID + "=?",
-            new String[] { String.valueOf(billId) },
-            null, null, null, null
-        );
+        SQLiteDatabase db = dbHelper.getDatabase();
+        Cursor cursor = db.rawQuery(selectQuery, new String[] { String.valueOf(billId) });
         
         List<BillItem> items = new ArrayList<>();
-        
-        if (itemsCursor.moveToFirst()) {
-            do {
-                BillItem item = new BillItem();
-                item.setId(itemsCursor.getLong(itemsCursor.getColumnIndex(COLUMN_ID)));
-                item.setBillId(billId);
-                item.setProductId(itemsCursor.getLong(itemsCursor.getColumnIndex(COLUMN_PRODUCT_ID)));
-                item.setProductName(itemsCursor.getString(itemsCursor.getColumnIndex(COLUMN_PRODUCT_NAME)));
-                item.setQuantity(itemsCursor.getInt(itemsCursor.getColumnIndex(COLUMN_ITEM_QUANTITY)));
-                item.setPrice(itemsCursor.getDouble(itemsCursor.getColumnIndex(COLUMN_ITEM_PRICE)));
-                item.setSubtotal(itemsCursor.getDouble(itemsCursor.getColumnIndex(COLUMN_ITEM_SUBTOTAL)));
-                
-                items.add(item);
-            } while (itemsCursor.moveToNext());
+        while (cursor.moveToNext()) {
+            items.add(readBillItem(cursor, 0, billId));
         }
         
-        itemsCursor.close();
-        db.close();
-        
-        bill.setItems(items);
+        cursor.close();
         
-        return bill;
+        return items;
     }
     
     /**
-     * Get all bills
-     * @return List of all bills
+     * Read the item at the cursor's current row, selected with BILL_ITEM_COLUMNS
+     * @param cursor Cursor positioned on an item row
+     * @param offset Index of the first item column
+     * @param billId ID of the bill the item belongs to
+     * @return Bill item
      */
-    public List<Bill> getAllBills() {
+    private static BillItem readBillItem(Cursor cursor, int offset, long billId) {
+        BillItem item = new BillItem();
+        item.setId(cursor.getLong(offset));
+        item.setBillId(billId);
+        item.setProductId(cursor.getLong(offset + 1));
+        item.setProductName(cursor.getString(offset + 2));
+        item.setQuantity(cursor.getInt(offset + 3));
+        item.setPrice(cursor.getLong(offset + 4));
+        item.setPurchasePrice(cursor.getLong(offset + 5));
+        item.setSubtotal(cursor.getLong(offset + 6));
+        return item;
+    }
+    
+    /**
+     * Read bill header rows selected with BILL_HEADER_COLUMNS and close the cursor
+     * @param cursor Cursor over bill headers
+     * @return Bills without items
+     */
+    private List<Bill> readBillHeaders(Cursor cursor) {
         List<Bill> bills = new ArrayList<>();
         
-        String selectQuery = "SELECT * FROM " + TABLE_BILLS + " ORDER BY " + COLUMN_BILL_DATE + " DESC";
-        
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-        
-        if (cursor.moveToFirst()) {
-            do {
-                long billId = cursor.getLong(cursor.getColumnIndex(COLUMN_ID));
-                Bill bill = getBill(billId);
-                if (bill != null) {
-                    bills.add(bill);
-                }
-            } while (cursor.moveToNext());
+        while (cursor.moveToNext()) {
+            Bill bill = new Bill();
+            bill.setId(cursor.getLong(0));
+            bill.setDate(new Date(cursor.getLong(1)));
+            bill.setTotal(cursor.getLong(2));
+            bill.setDiscount(cursor.getLong(3));
+            bill.setFinalAmount(cursor.getLong(4));
+            bills.add(bill);
         }
         
         cursor.close();
-        db.close();
         
         return bills;
     }
     
     /**
-     * Get recent bills
-     * @param limit Number of bills to retrieve
-     * @return List of recent bills
+     * Load bills and their items with one ordered join and stitch them in a
+     * single pass over the cursor. Rows of one bill are adjacent, so a bill is
+     * complete when the bill ID changes.
+     * @param billsQuery Query selecting the bill rows to load
+     * @param args Arguments of the bills query
+     * @param listener Receives every bill, newest first
+     * @return The last bill loaded, or null if the query selected none
      */
-    public List<Bill> getRecentBills(int limit) {
-        List<Bill> bills = new ArrayList<>();
-        
-        String selectQuery = "SELECT * FROM " + TABLE_BILLS + 
-                            " ORDER BY " + COLUMN_BILL_DATE + " DESC LIMIT " + limit;
+    private Bill streamBills(String billsQuery, String[] args, OnBillLoadedListener listener) {
+        String selectQuery = "SELECT b." + COLUMN_ID + ", b." + COLUMN_BILL_DATE + ", b." + COLUMN_BILL_TOTAL
+                + ", b." + COLUMN_BILL_DISCOUNT + ", b." + COLUMN_BILL_FINAL_AMOUNT + ", " + BILL_ITEM_COLUMNS
+                + " FROM (" + billsQuery + ") b"
+                + " LEFT JOIN " + TABLE_BILL_ITEMS + " i ON i." + COLUMN_BILL_ID + " = b." + COLUMN_ID
+                + " ORDER BY b." + COLUMN_BILL_DATE + " DESC, b." + COLUMN_ID + " DESC, i." + COLUMN_ID;
         
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
+        SQLiteDatabase db = dbHelper.getDatabase();
+        Cursor cursor = db.rawQuery(selectQuery, args);
         
-        if (cursor.moveToFirst()) {
-            do {
-                long billId = cursor.getLong(cursor.getColumnIndex(COLUMN_ID));
-                Bill bill = getBill(billId);
+        Bill bill = null;
+        while (cursor.moveToNext()) {
+            long billId = cursor.getLong(0);
+            
+            if (bill == null || bill.getId() != billId) {
                 if (bill != null) {
-                    bills.add(bill);
+                    listener.onBillLoaded(bill);
                 }
-            } while (cursor.moveToNext());
+                
+                bill = new Bill();
+                bill.setId(billId);
+                bill.setDate(new Date(cursor.getLong(1)));
+                bill.setTotal(cursor.getLong(2));
+                bill.setDiscount(cursor.getLong(3));
+                bill.setFinalAmount(cursor.getLong(4));
+            }
+            
+            // A bill without items has one row with NULL item columns
+            if (!cursor.isNull(5)) {
+                // Added as saved so the stored totals are kept
+                bill.addSavedItem(readBillItem(cursor, 5, billId));
+            }
         }
         
         cursor.close();
-        db.close();
         
-        return bills;
+        if (bill != null) {
+            listener.onBillLoaded(bill);
+        }
+        return bill;
+    }
+    
+    /**
+     * Save a bill on the writer thread
+     * @param bill Bill to save; must not be modified until the callback runs
+     * @param callback Receives the ID of the saved bill, or -1 if any item is out of stock or the write failed
+     */
+    public void saveBillAsync(Bill bill, RepositoryCallback<Long> callback) {
+        executors.diskWrite().execute(BackgroundCall.of("Save bill", () -> saveBill(bill), -1L, callback));
+    }
+    
+    /**
+     * Export the bills, bill items and sales of a date range on a job
+     * thread, one file per table; see LedgerExporter
+     * @param range { start, end } in epoch milliseconds, start inclusive and end exclusive
+     * @param format LedgerExporter.FORMAT_CSV or LedgerExporter.FORMAT_JSON
+     * @param gzip true to compress the files
+     * @param dir Directory to write the files to
+     * @param progress Receives the status after every page of rows
+     * @param callback Receives the final status
+     * @return Future that can cancel the export
+     */
+    public Future<?> exportLedgerAsync(long[] range, int format, boolean gzip, File dir,
+                                       RepositoryCallback<LedgerExporter.Status> progress,
+                                       RepositoryCallback<LedgerExporter.Status> callback) {
+        return executors.jobs().submit(BackgroundCall.of("Export ledger",
+                () -> new LedgerExporter(dbHelper).export(range, format, gzip, dir, progress),
+                new LedgerExporter.Status(0, new ArrayList<>(), "Export failed", true), callback));
+    }
+    
+    /**
+     * Get a page of older bill headers on a reader thread
+     * @param date Date of the last bill already shown, or Long.MAX_VALUE for the first page
+     * @param id ID of the last bill already shown, or Long.MAX_VALUE for the first page
+     * @param pageSize Maximum number of bills
+     * @param callback Receives the bills without items, newest first, or null if they could not be read
+     * @return Future that can cancel the operation
+     */
+    public Future<?> getBillsBeforeAsync(long date, long id, int pageSize, RepositoryCallback<List<Bill>> callback) {
+        return executors.diskRead().submit(BackgroundCall.of("Load older bills",
+                () -> getBillsBefore(date, id, pageSize), null, callback));
+    }
+    
+    /**
+     * Get a page of newer bill headers on a reader thread
+     * @param date Date of the first bill already shown
+     * @param id ID of the first bill already shown
+     * @param pageSize Maximum number of bills
+     * @param callback Receives the bills without items, newest first, or null if they could not be read
+     * @return Future that can cancel the operation
+     */
+    public Future<?> getBillsAfterAsync(long date, long id, int pageSize, RepositoryCallback<List<Bill>> callback) {
+        return executors.diskRead().submit(BackgroundCall.of("Load newer bills",
+                () -> getBillsAfter(date, id, pageSize), null, callback));
+    }
+    
+    /**
+     * Get the items of one bill on a reader thread
+     * @param billId Bill ID
+     * @param callback Receives the items, or null if they could not be read
+     * @return Future that can cancel the operation
+     */
+    public Future<?> getBillItemsAsync(long billId, RepositoryCallback<List<BillItem>> callback) {
+        return executors.diskRead().submit(BackgroundCall.of("Load bill items",
+                () -> getBillItems(billId), null, callback));
     }
 }
@@ -0,0 +1,418 @@
+package com.aaryan7.dastakmobile7.repository;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.JsonWriter;
+
+import com.aaryan7.dastakmobile7.database.DatabaseHelper;
+import com.aaryan7.dastakmobile7.utils.CsvWriter;
+import com.aaryan7.dastakmobile7.utils.Money;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the bills, bill items and sales of a date range for the accountant,
+ * one file per table, as CSV or JSON and optionally gzipped.
+ *
+ * Rows go from the cursor straight to a buffered writer. Each table is read
+ * in pages that continue from the last row written, like the bill history,
+ * so every page is a short indexed query that fits in one cursor window and
+ * memory stays flat however long the range is.
+ */
+public class LedgerExporter {
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_JSON = 1;
+
+    private static final int PAGE_SIZE = 1000;
+
+    // How each column is written
+    private static final int TEXT = 0;
+    private static final int NUMBER = 1;
+    private static final int MONEY = 2;
+    private static final int DATE = 3;
+
+    /**
+     * One exported table. The query takes the range start, or the date of
+     * the last row written if later, the range end, and then the key of the
+     * last row written; see bindPage().
+     */
+    private static final class Table {
+        final String name;
+        final String sql;
+        final String[] columns;
+        final int[] types;
+        // Select indexes of the key columns, in sort order; the first is the date
+        final int[] keys;
+
+        Table(String name, String sql, String[] columns, int[] types, int[] keys) {
+            this.name = name;
+            this.sql = sql;
+            this.columns = columns;
+            this.types = types;
+            this.keys = keys;
+        }
+    }
+
+    private static final Table[] TABLES = {
+            new Table("bills",
+                    "SELECT id, date, total, discount, final_amount FROM bills"
+                            + " WHERE date >= ? AND date < ? AND (date > ? OR (date = ? AND id > ?))"
+                            + " ORDER BY date, id LIMIT " + PAGE_SIZE,
+                    new String[] { "id", "date", "total", "discount", "final_amount" },
+                    new int[] { NUMBER, DATE, MONEY, MONEY, MONEY },
+                    new int[] { 1, 0 }),
+            // Items follow their bill's date, through the bill date index and the item bill index
+            new Table("bill_items",
+                    "SELECT i.id, b.id, b.date, i.product_id, i.product_name, i.quantity, i.price,"
+                            + " i.purchase_price, i.subtotal"
+                            + " FROM bills b JOIN bill_items i ON i.bill_id = b.id"
+                            + " WHERE b.date >= ? AND b.date < ?"
+                            + " AND (b.date > ? OR (b.date = ? AND (b.id > ? OR (b.id = ? AND i.id > ?))))"
+                            + " ORDER BY b.date, b.id, i.id LIMIT " + PAGE_SIZE,
+                    new String[] { "id", "bill_id", "date", "product_id", "product_name", "quantity",
+                            "price", "purchase_price", "subtotal" },
+                    new int[] { NUMBER, NUMBER, DATE, NUMBER, TEXT, NUMBER, MONEY, MONEY, MONEY },
+                    new int[] { 2, 1, 0 }),
+            new Table("sales",
+                    "SELECT id, date, amount, profit, item_count FROM sales"
+                            + " WHERE date >= ? AND date < ? AND (date > ? OR (date = ? AND id > ?))"
+                            + " ORDER BY date, id LIMIT " + PAGE_SIZE,
+                    new String[] { "id", "date", "amount", "profit", "item_count" },
+                    new int[] { NUMBER, DATE, MONEY, MONEY, NUMBER },
+                    new int[] { 1, 0 })
+    };
+
+    /**
+     * Progress or outcome of an export
+     */
+    public static final class Status {
+        private final int rowsWritten;
+        private final List<File> files;
+        private final String error;
+        private final boolean finished;
+
+        public Status(int rowsWritten, List<File> files, String error, boolean finished) {
+            this.rowsWritten = rowsWritten;
+            this.files = files;
+            this.error = error;
+            this.finished = finished;
+        }
+
+        /**
+         * Get the number of rows written so far, over all tables
+         * @return Rows written
+         */
+        public int getRowsWritten() {
+            return rowsWritten;
+        }
+
+        /**
+         * Get the exported files
+         * @return One file per table, empty if the export did not complete
+         */
+        public List<File> getFiles() {
+            return files;
+        }
+
+        /**
+         * Get the reason the export stopped
+         * @return Error message, or null if every table was exported
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Check whether the export has ended
+         * @return true for the final status
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
+    /**
+     * Receives the rows of one table in one format
+     */
+    private interface RowSink {
+        void text(String value) throws IOException;
+        void number(long value) throws IOException;
+        void money(long paise) throws IOException;
+        void date(long millis) throws IOException;
+        void endRow() throws IOException;
+        void close() throws IOException;
+    }
+
+    private final DatabaseHelper dbHelper;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+    private int rowsWritten;
+
+    LedgerExporter(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Export every table. Call from a background thread; interrupting it
+     * stops the export after the current page and deletes the files written so far.
+     * @param range { start, end } in epoch milliseconds, start inclusive and end exclusive
+     * @param format FORMAT_CSV or FORMAT_JSON
+     * @param gzip true to compress the files
+     * @param dir Directory to write the files to
+     * @param progress Receives the status after every page
+     * @return Final status
+     */
+    Status export(long[] range, int format, boolean gzip, File dir, RepositoryCallback<Status> progress) {
+        // Named after the first and last day covered, e.g. bills_20260901_20260930.csv
+        SimpleDateFormat stamp = new SimpleDateFormat("yyyyMMdd", Locale.US);
+        String from = range[0] <= 0 ? "start" : stamp.format(new Date(range[0]));
+        String to = stamp.format(new Date(Math.min(range[1] - 1, System.currentTimeMillis())));
+        String suffix = "_" + from + "_" + to + (format == FORMAT_JSON ? ".json" : ".csv") + (gzip ? ".gz" : "");
+        List<File> files = new ArrayList<>();
+        String error = null;
+
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+
+        try {
+            for (Table table : TABLES) {
+                File file = new File(dir, table.name + suffix);
+                files.add(file);
+                exportTable(table, range, open(file, gzip), format, files, progress);
+            }
+        } catch (IOException e) {
+            error = "Could not write the export: " + e.getMessage();
+        } catch (SQLException e) {
+            error = "Could not read the ledger: " + e.getMessage();
+        } catch (InterruptedException e) {
+            error = "Export cancelled";
+            Thread.currentThread().interrupt();
+        }
+
+        if (error != null) {
+            for (File file : files) {
+                file.delete();
+            }
+            files.clear();
+        }
+        return new Status(rowsWritten, files, error, true);
+    }
+
+    /**
+     * Stream one table into a file
+     * @param table Table to export
+     * @param range { start, end } in epoch milliseconds
+     * @param out Stream to write to; closed when done
+     * @param format FORMAT_CSV or FORMAT_JSON
+     * @param files Files written so far, for progress
+     * @param progress Receives the status after every page
+     * @throws IOException if the file cannot be written
+     * @throws InterruptedException if the export was cancelled
+     */
+    private void exportTable(Table table, long[] range, OutputStream out, int format, List<File> files,
+                             RepositoryCallback<Status> progress) throws IOException, InterruptedException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        SQLiteDatabase db = dbHelper.getDatabase();
+        long[] lastKey = new long[table.keys.length];
+        Arrays.fill(lastKey, Long.MIN_VALUE);
+        boolean complete = false;
+
+        try {
+            RowSink sink = format == FORMAT_JSON ? jsonSink(writer, table.columns) : csvSink(writer, table.columns);
+            int count;
+            do {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                Cursor cursor = db.rawQuery(table.sql, bindPage(range, lastKey));
+                count = 0;
+                try {
+                    while (cursor.moveToNext()) {
+                        writeRow(table, cursor, sink);
+                        count++;
+                    }
+                    if (count > 0) {
+                        cursor.moveToLast();
+                        for (int i = 0; i < table.keys.length; i++) {
+                            lastKey[i] = cursor.getLong(table.keys[i]);
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                rowsWritten += count;
+                progress.onComplete(new Status(rowsWritten, new ArrayList<>(files), null, false));
+            } while (count == PAGE_SIZE);
+
+            sink.close();
+            complete = true;
+        } finally {
+            if (!complete) {
+                // The file is deleted; just release it
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Build the arguments of a page query
+     * @param range { start, end } in epoch milliseconds
+     * @param lastKey Key of the last row written, all Long.MIN_VALUE before the first page
+     * @return Range start or last date, range end, then each key column twice except the last once
+     */
+    private static String[] bindPage(long[] range, long[] lastKey) {
+        String[] args = new String[lastKey.length * 2 + 1];
+        // Starting the index range at the last date keeps each page from rescanning earlier rows
+        args[0] = String.valueOf(Math.max(range[0], lastKey[0]));
+        args[1] = String.valueOf(range[1]);
+        int arg = 2;
+        for (int i = 0; i < lastKey.length; i++) {
+            args[arg++] = String.valueOf(lastKey[i]);
+            if (i < lastKey.length - 1) {
+                args[arg++] = String.valueOf(lastKey[i]);
+            }
+        }
+        return args;
+    }
+
+    private void writeRow(Table table, Cursor cursor, RowSink sink) throws IOException {
+        for (int i = 0; i < table.types.length; i++) {
+            switch (table.types[i]) {
+                case NUMBER:
+                    sink.number(cursor.getLong(i));
+                    break;
+                case MONEY:
+                    sink.money(cursor.getLong(i));
+                    break;
+                case DATE:
+                    sink.date(cursor.getLong(i));
+                    break;
+                case TEXT:
+                default:
+                    sink.text(cursor.getString(i));
+                    break;
+            }
+        }
+        sink.endRow();
+    }
+
+    private static OutputStream open(File file, boolean gzip) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        return gzip ? new GZIPOutputStream(out, 8192) : out;
+    }
+
+    /**
+     * Write rows as CSV with a header row. Money is in rupees with two decimals.
+     */
+    private RowSink csvSink(Writer writer, String[] columns) throws IOException {
+        CsvWriter csv = new CsvWriter(writer);
+        csv.writeRow(columns);
+        StringBuilder amount = new StringBuilder(16);
+
+        return new RowSink() {
+            @Override
+            public void text(String value) throws IOException {
+                csv.writeField(value);
+            }
+
+            @Override
+            public void number(long value) throws IOException {
+                csv.writeField(value);
+            }
+
+            @Override
+            public void money(long paise) throws IOException {
+                amount.setLength(0);
+                csv.writeField(Money.appendTo(amount, paise).toString());
+            }
+
+            @Override
+            public void date(long millis) throws IOException {
+                csv.writeField(dateFormat.format(new Date(millis)));
+            }
+
+            @Override
+            public void endRow() throws IOException {
+                csv.endRow();
+            }
+
+            @Override
+            public void close() throws IOException {
+                csv.close();
+            }
+        };
+    }
+
+    /**
+     * Write rows as a JSON array of objects keyed by column name. Money is a
+     * number of rupees with two decimals, exact as written.
+     */
+    private RowSink jsonSink(Writer writer, String[] columns) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginArray();
+
+        return new RowSink() {
+            private int column;
+
+            private JsonWriter next() throws IOException {
+                if (column == 0) {
+                    json.beginObject();
+                }
+                return json.name(columns[column++]);
+            }
+
+            @Override
+            public void text(String value) throws IOException {
+                next().value(value);
+            }
+
+            @Override
+            public void number(long value) throws IOException {
+                next().value(value);
+            }
+
+            @Override
+            public void money(long paise) throws IOException {
+                next().value(BigDecimal.valueOf(paise, 2));
+            }
+
+            @Override
+            public void date(long millis) throws IOException {
+                next().value(dateFormat.format(new Date(millis)));
+            }
+
+            @Override
+            public void endRow() throws IOException {
+                json.endObject();
+                column = 0;
+            }
+
+            @Override
+            public void close() throws IOException {
+                json.endArray();
+                json.close();
+            }
+        };
+    }
+}
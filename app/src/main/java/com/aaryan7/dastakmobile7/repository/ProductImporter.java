@@ -0,0 +1,426 @@
+package com.aaryan7.dastakmobile7.repository;
+
+import com.aaryan7.dastakmobile7.database.DatabaseHelper;
+import com.aaryan7.dastakmobile7.models.Product;
+import com.aaryan7.dastakmobile7.utils.CsvReader;
+import com.aaryan7.dastakmobile7.utils.CsvWriter;
+import com.aaryan7.dastakmobile7.utils.Money;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Imports products from a supplier's CSV or TSV file. The file needs a header
+ * row naming its columns: name, purchase_price, selling_price and quantity,
+ * and optionally sku. Prices are in rupees.
+ *
+ * Rows are matched to existing products by SKU, then by name ignoring case.
+ * A matched product takes the row's name and prices and the row's quantity
+ * is added to its stock, as for a delivery; other rows become new products.
+ *
+ * The file is streamed: rows are validated as they are read and written in
+ * batches, each batch in one transaction on the writer thread, so bills can
+ * still be saved between batches. Rows that fail validation or cannot be
+ * written are copied to a rejected-rows file with the reason.
+ */
+public class ProductImporter {
+    static final int BATCH_SIZE = 2000;
+
+    /**
+     * Progress or outcome of an import
+     */
+    public static final class Status {
+        private final int rowsRead;
+        private final int imported;
+        private final int rejected;
+        private final File rejectedFile;
+        private final String error;
+        private final boolean finished;
+
+        public Status(int rowsRead, int imported, int rejected, File rejectedFile, String error, boolean finished) {
+            this.rowsRead = rowsRead;
+            this.imported = imported;
+            this.rejected = rejected;
+            this.rejectedFile = rejectedFile;
+            this.error = error;
+            this.finished = finished;
+        }
+
+        /**
+         * Get the number of data rows read so far
+         * @return Rows read
+         */
+        public int getRowsRead() {
+            return rowsRead;
+        }
+
+        /**
+         * Get the number of rows written to the products table
+         * @return Rows imported
+         */
+        public int getImported() {
+            return imported;
+        }
+
+        /**
+         * Get the number of rows copied to the rejected-rows file
+         * @return Rows rejected
+         */
+        public int getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Get the file the rejected rows were written to
+         * @return Rejected-rows file, or null if no row was rejected
+         */
+        public File getRejectedFile() {
+            return rejectedFile;
+        }
+
+        /**
+         * Get the reason the import stopped early
+         * @return Error message, or null if the whole file was read
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * Check whether the import has ended
+         * @return true for the final status
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
+    /**
+     * A data row waiting for its batch to be written
+     */
+    private static final class PendingRow {
+        final String[] record;
+        final int line;
+        final Product product;
+
+        PendingRow(String[] record, int line, Product product) {
+            this.record = record;
+            this.line = line;
+            this.product = product;
+        }
+    }
+
+    // Accepted header names of each column, after lower-casing and turning spaces into underscores
+    private static final String[][] COLUMN_NAMES = {
+            { "name", "product", "product_name" },
+            { "purchase_price", "cost", "cost_price" },
+            { "selling_price", "price", "mrp" },
+            { "quantity", "qty", "stock" },
+            { "sku", "barcode", "code" }
+    };
+    private static final int NAME = 0;
+    private static final int PURCHASE_PRICE = 1;
+    private static final int SELLING_PRICE = 2;
+    private static final int QUANTITY = 3;
+    private static final int SKU = 4;
+
+    private final DatabaseHelper dbHelper;
+    private final ExecutorService writer;
+
+    // Products already in the table, and the new products of the current batch
+    private final Map<String, Long> idsBySku = new HashMap<>();
+    private final Map<String, Long> idsByName = new HashMap<>();
+    private final Map<String, Product> pendingBySku = new HashMap<>();
+    private final Map<String, Product> pendingByName = new HashMap<>();
+
+    private final List<Product> batch = new ArrayList<>(BATCH_SIZE);
+    private final List<PendingRow> batchRows = new ArrayList<>(BATCH_SIZE);
+    private String[] header;
+    private File rejectedFile;
+    private CsvWriter rejects;
+    private int rowsRead;
+    private int imported;
+    private int rejected;
+
+    ProductImporter(DatabaseHelper dbHelper, ExecutorService writer) {
+        this.dbHelper = dbHelper;
+        this.writer = writer;
+    }
+
+    /**
+     * Import a file. Call from a background thread other than the writer
+     * thread; interrupting it stops the import after the current batch.
+     * @param in File contents, closed when done
+     * @param rejectedFile Where to write rejected rows; only created if a row is rejected
+     * @param progress Receives the status after every batch
+     * @return Final status
+     */
+    Status importFrom(InputStream in, File rejectedFile, RepositoryCallback<Status> progress) {
+        this.rejectedFile = rejectedFile;
+        String error = null;
+
+        try (CsvReader reader = new CsvReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            header = reader.readRecord();
+            int[] columns = header == null ? null : findColumns(header);
+            if (header == null) {
+                error = "The file is empty";
+            } else if (columns[NAME] < 0 || columns[PURCHASE_PRICE] < 0
+                    || columns[SELLING_PRICE] < 0 || columns[QUANTITY] < 0) {
+                error = "The header must name the columns name, purchase_price, selling_price and quantity";
+            } else {
+                loadKeys();
+
+                String[] record;
+                while ((record = reader.readRecord()) != null) {
+                    if (record.length == 1 && record[0].trim().isEmpty()) {
+                        continue;
+                    }
+                    rowsRead++;
+                    addRow(record, reader.getLineNumber(), columns);
+
+                    if (batch.size() == BATCH_SIZE) {
+                        writeBatch();
+                        progress.onComplete(status(null, false));
+                    }
+                }
+                writeBatch();
+            }
+        } catch (IOException e) {
+            error = "Could not read the file: " + e.getMessage();
+        } catch (InterruptedException e) {
+            error = "Import cancelled";
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            error = "Could not save products: " + e.getCause().getMessage();
+        } finally {
+            if (rejects != null) {
+                try {
+                    rejects.close();
+                } catch (IOException e) {
+                    error = "Could not write the rejected rows: " + e.getMessage();
+                }
+            }
+            if (imported > 0) {
+                dbHelper.notifyWrite(ProductRepository.TABLE_PRODUCTS);
+            }
+        }
+
+        return status(error, true);
+    }
+
+    /**
+     * Validate a data row and queue it for the current batch
+     * @param record Fields of the row
+     * @param line Line the row starts on
+     * @param columns Field index of each column, -1 if absent
+     * @throws IOException if the rejected-rows file cannot be written
+     */
+    private void addRow(String[] record, int line, int[] columns) throws IOException {
+        String name = field(record, columns[NAME]);
+        String sku = ProductRepository.normalizeSku(field(record, columns[SKU]));
+        long purchasePrice;
+        long sellingPrice;
+        int quantity;
+
+        if (name.isEmpty()) {
+            reject(record, line, "Missing name");
+            return;
+        }
+        try {
+            purchasePrice = parsePrice(field(record, columns[PURCHASE_PRICE]));
+        } catch (NumberFormatException e) {
+            reject(record, line, "Invalid purchase price");
+            return;
+        }
+        try {
+            sellingPrice = parsePrice(field(record, columns[SELLING_PRICE]));
+        } catch (NumberFormatException e) {
+            reject(record, line, "Invalid selling price");
+            return;
+        }
+        try {
+            quantity = Integer.parseInt(field(record, columns[QUANTITY]));
+        } catch (NumberFormatException e) {
+            quantity = -1;
+        }
+        if (quantity < 0) {
+            reject(record, line, "Invalid quantity");
+            return;
+        }
+
+        // A product new in this batch that appears again takes the later row
+        // and both quantities, as the table will only see it once
+        Product pending = sku != null ? pendingBySku.get(sku) : null;
+        Long id = sku != null && pending == null ? idsBySku.get(sku) : null;
+        if (pending == null && id == null) {
+            pending = pendingByName.get(nameKey(name));
+            id = pending == null ? idsByName.get(nameKey(name)) : null;
+        }
+
+        if (pending != null) {
+            pending.setName(name);
+            pending.setPurchasePrice(purchasePrice);
+            pending.setSellingPrice(sellingPrice);
+            pending.increaseQuantity(quantity);
+            if (sku != null && pending.getSku() == null) {
+                pending.setSku(sku);
+                pendingBySku.put(sku, pending);
+            }
+            pendingByName.put(nameKey(name), pending);
+            batchRows.add(new PendingRow(record, line, pending));
+            return;
+        }
+
+        Product product = new Product(name, purchasePrice, sellingPrice, quantity);
+        product.setSku(sku);
+        if (id != null) {
+            product.setId(id);
+        } else {
+            pendingByName.put(nameKey(name), product);
+            if (sku != null) {
+                pendingBySku.put(sku, product);
+            }
+        }
+        batch.add(product);
+        batchRows.add(new PendingRow(record, line, product));
+    }
+
+    /**
+     * Write the queued rows on the writer thread and wait for the commit
+     * @throws IOException if the rejected-rows file cannot be written
+     * @throws InterruptedException if the import was cancelled
+     * @throws ExecutionException if the write failed
+     */
+    private void writeBatch() throws IOException, InterruptedException, ExecutionException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final List<Product> products = new ArrayList<>(batch);
+        writer.submit(() -> dbHelper.importProducts(products)).get();
+
+        for (Product product : products) {
+            if (product.getId() != -1) {
+                idsByName.put(nameKey(product.getName()), product.getId());
+                if (product.getSku() != null) {
+                    idsBySku.put(product.getSku(), product.getId());
+                }
+            }
+        }
+        for (PendingRow row : batchRows) {
+            if (row.product.getId() == -1) {
+                reject(row.record, row.line, "SKU belongs to another product");
+            } else {
+                imported++;
+            }
+        }
+
+        batch.clear();
+        batchRows.clear();
+        pendingBySku.clear();
+        pendingByName.clear();
+    }
+
+    /**
+     * Index the products already in the table by SKU and name
+     */
+    private void loadKeys() {
+        for (Product product : dbHelper.getAllProducts()) {
+            idsByName.put(nameKey(product.getName()), product.getId());
+            if (product.getSku() != null) {
+                idsBySku.put(product.getSku(), product.getId());
+            }
+        }
+    }
+
+    /**
+     * Copy a row to the rejected-rows file, opening it on first use
+     * @param record Fields of the row
+     * @param line Line the row starts on
+     * @param reason Why the row was rejected
+     * @throws IOException if the file cannot be written
+     */
+    private void reject(String[] record, int line, String reason) throws IOException {
+        if (rejects == null) {
+            File dir = rejectedFile.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            rejects = new CsvWriter(new OutputStreamWriter(new FileOutputStream(rejectedFile), StandardCharsets.UTF_8));
+            rejects.writeField("line");
+            for (String column : header) {
+                rejects.writeField(column);
+            }
+            rejects.writeField("error").endRow();
+        }
+
+        rejects.writeField(line);
+        for (String field : record) {
+            rejects.writeField(field);
+        }
+        rejects.writeField(reason).endRow();
+        rejected++;
+    }
+
+    private Status status(String error, boolean finished) {
+        return new Status(rowsRead, imported, rejected, rejects != null ? rejectedFile : null, error, finished);
+    }
+
+    /**
+     * Find the field index of each known column in the header
+     * @param header Header fields
+     * @return Index per column, -1 for a column the file does not have
+     */
+    private static int[] findColumns(String[] header) {
+        int[] columns = { -1, -1, -1, -1, -1 };
+        for (int i = 0; i < header.length; i++) {
+            String name = header[i].trim().toLowerCase(Locale.ROOT).replace(' ', '_');
+            for (int column = 0; column < COLUMN_NAMES.length; column++) {
+                for (String accepted : COLUMN_NAMES[column]) {
+                    if (columns[column] < 0 && accepted.equals(name)) {
+                        columns[column] = i;
+                    }
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Parse a price in rupees, allowing a leading rupee sign
+     * @param text Field text
+     * @return Price in paise
+     * @throws NumberFormatException if it is not a price or is negative
+     */
+    private static long parsePrice(String text) {
+        String value = text.startsWith("₹") ? text.substring(1) : text;
+        long price = Money.parse(value);
+        if (price < 0) {
+            throw new NumberFormatException("Negative price: " + text);
+        }
+        return price;
+    }
+
+    private static String field(String[] record, int index) {
+        return index >= 0 && index < record.length ? record[index].trim() : "";
+    }
+
+    private static String nameKey(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -2,34 +2,82 @@ package com.aaryan7.dastakmobile7.repository;
 
 import android.content.Context;
 
+import androidx.lifecycle.LiveData;
+
 import com.aaryan7.dastakmobile7.database.DatabaseHelper;
+import com.aaryan7.dastakmobile7.database.QueryLiveData;
 import com.aaryan7.dastakmobile7.models.Product;
+import com.aaryan7.dastakmobile7.utils.AppExecutors;
 
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Repository class for Product operations
  */
 public class ProductRepository {
+    static final String TABLE_PRODUCTS = "products";
     private DatabaseHelper dbHelper;
+    private AppExecutors executors;
 
     public ProductRepository(Context context) {
-        dbHelper = new DatabaseHelper(context);
+        dbHelper = DatabaseHelper.getInstance(context);
+        executors = AppExecutors.getInstance();
+    }
+
+    /**
+     * Observe all products. The list is re-queried in the background
+     * whenever products are written, including stock taken by a saved bill.
+     * @return LiveData of the product list
+     */
+    public LiveData<List<Product>> observeAllProducts() {
+        return new QueryLiveData<>(dbHelper.getInvalidationTracker(), executors.diskRead(),
+                this::getAllProducts, TABLE_PRODUCTS);
     }
 
+
     /**
      * Add a new product
      * @param name Product name
-     * @param purchasePrice Purchase price
-     * @param sellingPrice Selling price
+     * @param purchasePrice Purchase price in paise
+     * @param sellingPrice Selling price in paise
      * @param quantity Initial quantity
-     * @return ID of the newly added product
+     * @param sku SKU or barcode, or null or empty for none
+     * @return ID of the newly added product, or -1 if the SKU is taken
      */
-    public long addProduct(String name, double purchasePrice, double sellingPrice, int quantity) {
+    public long addProduct(String name, long purchasePrice, long sellingPrice, int quantity, String sku) {
         Product product = new Product(name, purchasePrice, sellingPrice, quantity);
+        product.setSku(normalizeSku(sku));
         return dbHelper.addProduct(product);
     }
 
+    /**
+     * Look up the product with a SKU, as scanned at the counter
+     * @param sku Scanned or typed code
+     * @return Product object, or null if no product has this SKU
+     */
+    public Product lookupBySku(String sku) {
+        String normalized = normalizeSku(sku);
+        return normalized == null ? null : dbHelper.getProductBySku(normalized);
+    }
+
+    /**
+     * Bring a SKU into the form it is stored in
+     * @param sku Scanned or typed code
+     * @return Trimmed SKU, or null if it is empty
+     */
+    public static String normalizeSku(String sku) {
+        if (sku == null) {
+            return null;
+        }
+        String trimmed = sku.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
     /**
      * Get all products
      * @return List of all products
@@ -41,18 +89,89 @@ public class ProductRepository {
     /**
      * Get product by ID
      * @param id Product ID
-     * @return Product object
+     * @return Product object, or null if there is no such product
      */
     public Product getProductById(long id) {
         return dbHelper.getProduct(id);
     }
 
+    /**
+     * Check whether product lookups are served from memory yet. Until the
+     * catalog has loaded, a lookup reads the database and must not run on
+     * the main thread.
+     * @return true if the product catalog is loaded
+     */
+    public boolean isCatalogLoaded() {
+        return dbHelper.getProductCatalog().isLoaded();
+    }
+
+    /**
+     * Get all products in alphabetical order
+     * @return List of all products sorted by name
+     */
+    public List<Product> getProductsByName() {
+        return dbHelper.getProductCatalog().getProductsByName();
+    }
+
+    /**
+     * Get a product by name, ignoring case
+     * @param name Product name
+     * @return Product object, or null if there is no such product
+     */
+    public Product findProductByName(String name) {
+        return dbHelper.getProductCatalog().findByName(name);
+    }
+
+    /**
+     * Search products by name through the full-text index. An empty query
+     * lists products alphabetically.
+     * @param query Text typed by the user
+     * @param limit Maximum number of results
+     * @param inStockOnly true to leave out products with no stock
+     * @return Matching products, best match first
+     */
+    public List<Product> searchProducts(String query, int limit, boolean inStockOnly) {
+        List<Product> results = new ArrayList<>();
+        
+        if (query.trim().isEmpty()) {
+            for (Product product : getProductsByName()) {
+                if (results.size() == limit) {
+                    break;
+                }
+                if (!inStockOnly || product.getQuantity() > 0) {
+                    results.add(product);
+                }
+            }
+            return results;
+        }
+        
+        // The index ranks the IDs; the products themselves come from the catalog
+        for (long id : dbHelper.searchProductIds(query, limit, inStockOnly)) {
+            Product product = dbHelper.getProduct(id);
+            if (product != null) {
+                results.add(product);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Get the products whose selling price lies in a range
+     * @param minPrice Lowest price in paise, inclusive
+     * @param maxPrice Highest price in paise, inclusive
+     * @return Matching products, cheapest first
+     */
+    public List<Product> getProductsInPriceRange(long minPrice, long maxPrice) {
+        return dbHelper.getProductCatalog().getProductsInPriceRange(minPrice, maxPrice);
+    }
+
     /**
      * Update product details
      * @param product Product to update
-     * @return Number of rows affected
+     * @return Number of rows affected, 0 if the SKU belongs to another product
      */
     public int updateProduct(Product product) {
+        product.setSku(normalizeSku(product.getSku()));
         return dbHelper.updateProduct(product);
     }
 
@@ -73,4 +192,106 @@ public class ProductRepository {
     public boolean updateProductQuantity(long productId, int soldQuantity) {
         return dbHelper.updateProductQuantity(productId, soldQuantity);
     }
+
+    /**
+     * Add a new product on the writer thread
+     * @param name Product name
+     * @param purchasePrice Purchase price in paise
+     * @param sellingPrice Selling price in paise
+     * @param quantity Initial quantity
+     * @param sku SKU or barcode, or null or empty for none
+     * @param callback Receives the ID of the newly added product, or -1 if the SKU is taken or the write failed
+     */
+    public void addProductAsync(String name, long purchasePrice, long sellingPrice, int quantity,
+                                String sku, RepositoryCallback<Long> callback) {
+        executors.diskWrite().execute(BackgroundCall.of("Add product",
+                () -> addProduct(name, purchasePrice, sellingPrice, quantity, sku), -1L, callback));
+    }
+
+    /**
+     * Import products from a CSV or TSV file. The file is parsed on a job
+     * thread and written in batches on the writer thread; see ProductImporter.
+     * @param in File contents, closed when done
+     * @param rejectedFile Where to write rows that could not be imported
+     * @param progress Receives the status after every batch
+     * @param callback Receives the final status
+     * @return Future that can cancel the import between batches
+     */
+    public Future<?> importProductsAsync(InputStream in, File rejectedFile,
+                                         RepositoryCallback<ProductImporter.Status> progress,
+                                         RepositoryCallback<ProductImporter.Status> callback) {
+        ProductImporter importer = new ProductImporter(dbHelper, executors.diskWrite());
+        return executors.jobs().submit(BackgroundCall.of("Import products",
+                () -> importer.importFrom(in, rejectedFile, progress),
+                new ProductImporter.Status(0, 0, 0, null, "Import failed", true), callback));
+    }
+
+    /**
+     * Load the product catalog on a reader thread if it is not loaded yet
+     * @param callback Receives true once lookups are served from memory, or false if the catalog could not be read
+     * @return Future that can cancel the operation
+     */
+    public Future<?> loadCatalogAsync(RepositoryCallback<Boolean> callback) {
+        return executors.diskRead().submit(BackgroundCall.of("Load catalog", () -> {
+            dbHelper.getProductCatalog().preload();
+            return true;
+        }, false, callback));
+    }
+
+    /**
+     * Get product by ID on a reader thread
+     * @param id Product ID
+     * @param callback Receives the product, or null if there is no such product or it could not be read
+     * @return Future that can cancel the operation
+     */
+    public Future<?> getProductByIdAsync(long id, RepositoryCallback<Product> callback) {
+        return executors.diskRead().submit(BackgroundCall.of("Load product", () -> getProductById(id), null, callback));
+    }
+
+    /**
+     * Search products by name on a reader thread
+     * @param query Text typed by the user
+     * @param limit Maximum number of results
+     * @param inStockOnly true to leave out products with no stock
+     * @param callback Receives the matching products, best match first, or none if the search failed
+     * @return Future that can cancel the operation
+     */
+    public Future<?> searchProductsAsync(String query, int limit, boolean inStockOnly,
+                                         RepositoryCallback<List<Product>> callback) {
+        return executors.diskRead().submit(BackgroundCall.of("Search products",
+                () -> searchProducts(query, limit, inStockOnly), Collections.<Product>emptyList(), callback));
+    }
+
+    /**
+     * Update product details on the writer thread
+     * @param product Product to update
+     * @param callback Receives the number of rows affected, 0 if the write failed
+     */
+    public void updateProductAsync(Product product, RepositoryCallback<Integer> callback) {
+        executors.diskWrite().execute(BackgroundCall.of("Update product", () -> updateProduct(product), 0, callback));
+    }
+
+    /**
+     * Delete a product on the writer thread
+     * @param product Product to delete
+     * @param callback Receives true once the product is deleted, or false if the write failed
+     */
+    public void deleteProductAsync(Product product, RepositoryCallback<Boolean> callback) {
+        executors.diskWrite().execute(BackgroundCall.of("Delete product", () -> {
+            deleteProduct(product);
+            return true;
+        }, false, callback));
+    }
+
+    /**
+     * Update product quantity after sale on the writer thread
+     * @param productId Product ID
+     * @param soldQuantity Quantity sold
+     * @param callback Receives true if successful, false if not enough stock or the write failed
+     */
+    public void updateProductQuantityAsync(long productId, int soldQuantity,
+                                           RepositoryCallback<Boolean> callback) {
+        executors.diskWrite().execute(BackgroundCall.of("Update stock",
+                () -> updateProductQuantity(productId, soldQuantity), false, callback));
+    }
 }
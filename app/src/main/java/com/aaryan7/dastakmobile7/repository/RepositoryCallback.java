@@ -0,0 +1,11 @@
+package com.aaryan7.dastakmobile7.repository;
+
+/**
+ * Receives the result of an asynchronous repository operation. Called on
+ * the background thread that ran the operation, so LiveData must be
+ * updated with postValue.
+ * @param <T> Result type
+ */
+public interface RepositoryCallback<T> {
+    void onComplete(T result);
+}
@@ -1,91 +1,189 @@
 package com.aaryan7.dastakmobile7.repository;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.aaryan7.dastakmobile7.database.DatabaseHelper;
+import com.aaryan7.dastakmobile7.database.InvalidationTracker;
 import com.aaryan7.dastakmobile7.models.Sales;
+import com.aaryan7.dastakmobile7.models.SalesSeries;
+import com.aaryan7.dastakmobile7.models.SalesSummary;
+
+import com.aaryan7.dastakmobile7.utils.AppExecutors;
+import com.aaryan7.dastakmobile7.utils.DateRangeUtils;
+import com.aaryan7.dastakmobile7.utils.Money;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.Future;
 
 /**
  * Repository class for Sales operations
  */
 public class SalesRepository {
     private DatabaseHelper dbHelper;
-    private SimpleDateFormat dateFormat;
-    private static final String TABLE_SALES = "sales";
+    private AppExecutors executors;
+    static final String TABLE_SALES = "sales";
     private static final String COLUMN_ID = "id";
     private static final String COLUMN_SALE_DATE = "date";
     private static final String COLUMN_SALE_AMOUNT = "amount";
     private static final String COLUMN_SALE_PROFIT = "profit";
+    private static final String COLUMN_SALE_ITEM_COUNT = "item_count";
+    static final String TABLE_DAILY_SALES_SUMMARY = "daily_sales_summary";
+    private static final String COLUMN_DAY_START = "day_start";
+    private static final String COLUMN_DAY_AMOUNT = "amount";
+    private static final String COLUMN_DAY_PROFIT = "profit";
+    private static final String COLUMN_DAY_BILL_COUNT = "bill_count";
+    private static final String COLUMN_DAY_ITEM_COUNT = "item_count";
+    private static final String SQL_INSERT_SALES = "INSERT INTO " + TABLE_SALES + " ("
+            + COLUMN_SALE_DATE + ", " + COLUMN_SALE_AMOUNT + ", " + COLUMN_SALE_PROFIT + ", "
+            + COLUMN_SALE_ITEM_COUNT + ") VALUES (?, ?, ?, ?)";
+    
+    // Daily rollup: make sure the day's row exists, then add the sale to it
+    private static final String SQL_INSERT_DAY = "INSERT OR IGNORE INTO " + TABLE_DAILY_SALES_SUMMARY
+            + " (" + COLUMN_DAY_START + ") VALUES (?)";
+    private static final String SQL_ADD_TO_DAY = "UPDATE " + TABLE_DAILY_SALES_SUMMARY + " SET "
+            + COLUMN_DAY_AMOUNT + " = " + COLUMN_DAY_AMOUNT + " + ?, "
+            + COLUMN_DAY_PROFIT + " = " + COLUMN_DAY_PROFIT + " + ?, "
+            + COLUMN_DAY_BILL_COUNT + " = " + COLUMN_DAY_BILL_COUNT + " + 1, "
+            + COLUMN_DAY_ITEM_COUNT + " = " + COLUMN_DAY_ITEM_COUNT + " + ?"
+            + " WHERE " + COLUMN_DAY_START + " = ?";
+    private static final String SQL_DAILY_SUMMARY = "SELECT IFNULL(SUM(" + COLUMN_DAY_BILL_COUNT + "), 0), IFNULL(SUM("
+            + COLUMN_DAY_AMOUNT + "), 0), IFNULL(SUM(" + COLUMN_DAY_PROFIT + "), 0) FROM " + TABLE_DAILY_SALES_SUMMARY
+            + " WHERE " + COLUMN_DAY_START + " >= ? AND " + COLUMN_DAY_START + " < ?";
+    private static final String SQL_REBUILD_DAILY_SUMMARY = "INSERT INTO " + TABLE_DAILY_SALES_SUMMARY + " ("
+            + COLUMN_DAY_START + ", " + COLUMN_DAY_AMOUNT + ", " + COLUMN_DAY_PROFIT + ", "
+            + COLUMN_DAY_BILL_COUNT + ", " + COLUMN_DAY_ITEM_COUNT + ")"
+            + " SELECT CAST(strftime('%s', " + COLUMN_SALE_DATE + " / 1000, 'unixepoch', 'localtime',"
+            + " 'start of day', 'utc') AS INTEGER) * 1000 AS day, IFNULL(SUM(" + COLUMN_SALE_AMOUNT + "), 0),"
+            + " IFNULL(SUM(" + COLUMN_SALE_PROFIT + "), 0), COUNT(*), IFNULL(SUM(" + COLUMN_SALE_ITEM_COUNT + "), 0)"
+            + " FROM " + TABLE_SALES + " GROUP BY day";
 
     public SalesRepository(Context context) {
-        dbHelper = new DatabaseHelper(context);
-        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
+        dbHelper = DatabaseHelper.getInstance(context);
+        executors = AppExecutors.getInstance();
     }
 
     /**
-     * Add sales data
+     * Get the current version of the sales tables
+     * @return Counter that changes whenever sales are written
+     */
+    public long getDataVersion() {
+        return dbHelper.getInvalidationTracker().getVersion(TABLE_SALES, TABLE_DAILY_SALES_SUMMARY);
+    }
+    
+    /**
+     * Start telling an observer, on the main thread, when sales are written
+     * @param observer Observer to add
+     */
+    public void addSalesObserver(InvalidationTracker.Observer observer) {
+        dbHelper.getInvalidationTracker().addObserver(observer, TABLE_SALES, TABLE_DAILY_SALES_SUMMARY);
+    }
+    
+    /**
+     * Stop telling an observer when sales are written
+     * @param observer Observer to remove
+     */
+    public void removeSalesObserver(InvalidationTracker.Observer observer) {
+        dbHelper.getInvalidationTracker().removeObserver(observer);
+    }
+
+    /**
+     * Add sales data and count it in the daily rollup in one transaction
      * @param sales Sales data to add
      * @return ID of the newly added sales data
      */
     public long addSales(Sales sales) {
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteDatabase db = dbHelper.getDatabase();
+        long id;
+        
+        db.beginTransactionNonExclusive();
+        try {
+            id = recordSale(sales);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHelper.notifyWrite(TABLE_SALES, TABLE_DAILY_SALES_SUMMARY);
+        
+        return id;
+    }
+    
+    /**
+     * Insert a sale and add it to its day in the rollup. Must run inside the
+     * caller's transaction so the two can never disagree.
+     * @param sales Sales data to add
+     * @return ID of the newly added sales data
+     */
+    long recordSale(Sales sales) {
+        long date = sales.getDate().getTime();
+        long id;
+        
+        SQLiteStatement statement = dbHelper.getStatementCache().get(SQL_INSERT_SALES);
+        synchronized (statement) {
+            statement.bindLong(1, date);
+            statement.bindLong(2, sales.getAmount());
+            statement.bindLong(3, sales.getProfit());
+            statement.bindLong(4, sales.getItemCount());
+            id = statement.executeInsert();
+            statement.clearBindings();
+        }
         
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_SALE_DATE, dateFormat.format(sales.getDate()));
-        values.put(COLUMN_SALE_AMOUNT, sales.getAmount());
-        values.put(COLUMN_SALE_PROFIT, sales.getProfit());
+        long dayStart = DateRangeUtils.startOfDay(sales.getDate()).getTimeInMillis();
         
-        long id = db.insert(TABLE_SALES, null, values);
-        db.close();
+        SQLiteStatement insertDay = dbHelper.getStatementCache().get(SQL_INSERT_DAY);
+        synchronized (insertDay) {
+            insertDay.bindLong(1, dayStart);
+            insertDay.executeInsert();
+            insertDay.clearBindings();
+        }
+        
+        SQLiteStatement addToDay = dbHelper.getStatementCache().get(SQL_ADD_TO_DAY);
+        synchronized (addToDay) {
+            addToDay.bindLong(1, sales.getAmount());
+            addToDay.bindLong(2, sales.getProfit());
+            addToDay.bindLong(3, sales.getItemCount());
+            addToDay.bindLong(4, dayStart);
+            addToDay.executeUpdateDelete();
+            addToDay.clearBindings();
+        }
         
         return id;
     }
     
+    /**
+     * Recompute the daily rollup from the sales table, e.g. after the time
+     * zone changed or the rollup is suspected to be out of step
+     */
+    public void rebuildDailySummary() {
+        SQLiteDatabase db = dbHelper.getDatabase();
+        
+        db.beginTransactionNonExclusive();
+        try {
+            db.delete(TABLE_DAILY_SALES_SUMMARY, null, null);
+            db.execSQL(SQL_REBUILD_DAILY_SUMMARY);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        dbHelper.notifyWrite(TABLE_DAILY_SALES_SUMMARY);
+    }
+    
     /**
      * Get all sales data
      * @return List of all sales data
      */
     public List<Sales> getAllSales() {
-        List<Sales> salesList = new ArrayList<>();
-        
         String selectQuery = "SELECT * FROM " + TABLE_SALES + " ORDER BY " + COLUMN_SALE_DATE + " DESC";
         
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        SQLiteDatabase db = dbHelper.getDatabase();
         Cursor cursor = db.rawQuery(selectQuery, null);
         
-        if (cursor.moveToFirst()) {
-            do {
-                Sales sales = new Sales();
-                sales.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_ID)));
-                
-                try {
-                    sales.setDate(dateFormat.parse(cursor.getString(cursor.getColumnIndex(COLUMN_SALE_DATE))));
-                } catch (ParseException e) {
-                    sales.setDate(new Date());
-                }
-                
-                sales.setAmount(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_AMOUNT)));
-                sales.setProfit(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_PROFIT)));
-                
-                salesList.add(sales);
-            } while (cursor.moveToNext());
-        }
-        
-        cursor.close();
-        db.close();
-        
-        return salesList;
+        return readSales(cursor);
     }
     
     /**
@@ -94,52 +192,7 @@ public class SalesRepository {
      * @return List of sales data for the specified day
      */
     public List<Sales> getSalesForDay(Date date) {
-        List<Sales> salesList = new ArrayList<>();
-        
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        Date startDate = calendar.getTime();
-        
-        calendar.set(Calendar.HOUR_OF_DAY, 23);
-        calendar.set(Calendar.MINUTE, 59);
-        calendar.set(Calendar.SECOND, 59);
-        Date endDate = calendar.getTime();
-        
-        String startDateStr = dateFormat.format(startDate);
-        String endDateStr = dateFormat.format(endDate);
-        
-        String selectQuery = "SELECT * FROM " + TABLE_SALES + 
-                            " WHERE " + COLUMN_SALE_DATE + " BETWEEN ? AND ?" +
-                            " ORDER BY " + COLUMN_SALE_DATE + " DESC";
-        
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[] { startDateStr, endDateStr });
-        
-        if (cursor.moveToFirst()) {
-            do {
-                Sales sales = new Sales();
-                sales.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_ID)));
-                
-                try {
-                    sales.setDate(dateFormat.parse(cursor.getString(cursor.getColumnIndex(COLUMN_SALE_DATE))));
-                } catch (ParseException e) {
-                    sales.setDate(new Date());
-                }
-                
-                sales.setAmount(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_AMOUNT)));
-                sales.setProfit(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_PROFIT)));
-                
-                salesList.add(sales);
-            } while (cursor.moveToNext());
-        }
-        
-        cursor.close();
-        db.close();
-        
-        return salesList;
+        return getSalesBetween(DateRangeUtils.getDayRange(date));
     }
     
     /**
@@ -148,54 +201,7 @@ public class SalesRepository {
      * @return List of sales data for the specified week
      */
     public List<Sales> getSalesForWeek(Date date) {
-        List<Sales> salesList = new ArrayList<>();
-        
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        Date startDate = calendar.getTime();
-        
-        calendar.add(Calendar.DAY_OF_WEEK, 6);
-        calendar.set(Calendar.HOUR_OF_DAY, 23);
-        calendar.set(Calendar.MINUTE, 59);
-        calendar.set(Calendar.SECOND, 59);
-        Date endDate = calendar.getTime();
-        
-        String startDateStr = dateFormat.format(startDate);
-        String endDateStr = dateFormat.format(endDate);
-        
-        String selectQuery = "SELECT * FROM " + TABLE_SALES + 
-                            " WHERE " + COLUMN_SALE_DATE + " BETWEEN ? AND ?" +
-                            " ORDER BY " + COLUMN_SALE_DATE + " DESC";
-        
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[] { startDateStr, endDateStr });
-        
-        if (cursor.moveToFirst()) {
-            do {
-                Sales sales = new Sales();
-                sales.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_ID)));
-                
-                try {
-                    sales.setDate(dateFormat.parse(cursor.getString(cursor.getColumnIndex(COLUMN_SALE_DATE))));
-                } catch (ParseException e) {
-                    sales.setDate(new Date());
-                }
-                
-                sales.setAmount(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_AMOUNT)));
-                sales.setProfit(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_PROFIT)));
-                
-                salesList.add(sales);
-            } while (cursor.moveToNext());
-        }
-        
-        cursor.close();
-        db.close();
-        
-        return salesList;
+        return getSalesBetween(DateRangeUtils.getWeekRange(date));
     }
     
     /**
@@ -204,108 +210,139 @@ public class SalesRepository {
      * @return List of sales data for the specified month
      */
     public List<Sales> getSalesForMonth(Date date) {
-        List<Sales> salesList = new ArrayList<>();
-        
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        calendar.set(Calendar.DAY_OF_MONTH, 1);
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        Date startDate = calendar.getTime();
-        
-        calendar.set(Calendar.DAY_OF_MONTH, calendar.getActualMaximum(Calendar.DAY_OF_MONTH));
-        calendar.set(Calendar.HOUR_OF_DAY, 23);
-        calendar.set(Calendar.MINUTE, 59);
-        calendar.set(Calendar.SECOND, 59);
-        Date endDate = calendar.getTime();
-        
-        String startDateStr = dateFormat.format(startDate);
-        String endDateStr = dateFormat.format(endDate);
-        
+        return getSalesBetween(DateRangeUtils.getMonthRange(date));
+    }
+    
+    /**
+     * Get sales data for a specific year
+     * @param date Date within the year to get sales for
+     * @return List of sales data for the specified year
+     */
+    public List<Sales> getSalesForYear(Date date) {
+        return getSalesBetween(DateRangeUtils.getYearRange(date));
+    }
+    
+    /**
+     * Get sales data within a date range using the date index
+     * @param range { start, end } in epoch milliseconds, end exclusive
+     * @return List of sales data in the range, newest first
+     */
+    public List<Sales> getSalesBetween(long[] range) {
         String selectQuery = "SELECT * FROM " + TABLE_SALES + 
-                            " WHERE " + COLUMN_SALE_DATE + " BETWEEN ? AND ?" +
+                            " WHERE " + COLUMN_SALE_DATE + " >= ? AND " + COLUMN_SALE_DATE + " < ?" +
                             " ORDER BY " + COLUMN_SALE_DATE + " DESC";
         
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[] { startDateStr, endDateStr });
+        SQLiteDatabase db = dbHelper.getDatabase();
+        Cursor cursor = db.rawQuery(selectQuery,
+                new String[] { String.valueOf(range[0]), String.valueOf(range[1]) });
+        
+        return readSales(cursor);
+    }
+    
+    /**
+     * Get count, totals and average of sales for whole days from the daily
+     * rollup, reading one row per day instead of every sale
+     * @param range { start, end } in epoch milliseconds; both must be local midnights
+     * @return Summary of the range; all zero if there are no sales
+     */
+    public SalesSummary getDailySalesSummary(long[] range) {
+        SQLiteDatabase db = dbHelper.getDatabase();
+        Cursor cursor = db.rawQuery(SQL_DAILY_SUMMARY,
+                new String[] { String.valueOf(range[0]), String.valueOf(range[1]) });
         
+        SalesSummary summary;
         if (cursor.moveToFirst()) {
-            do {
-                Sales sales = new Sales();
-                sales.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_ID)));
-                
-                try {
-                    sales.setDate(dateFormat.parse(cursor.getString(cursor.getColumnIndex(COLUMN_SALE_DATE))));
-                } catch (ParseException e) {
-                    sales.setDate(new Date());
-                }
-                
-                sales.setAmount(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_AMOUNT)));
-                sales.setProfit(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_PROFIT)));
-                
-                salesList.add(sales);
-            } while (cursor.moveToNext());
+            int count = (int) cursor.getLong(0);
+            long amount = cursor.getLong(1);
+            summary = new SalesSummary(count, amount, cursor.getLong(2),
+                    count > 0 ? Money.divide(amount, count) : 0);
+        } else {
+            summary = new SalesSummary(0, 0, 0, 0);
         }
         
         cursor.close();
-        db.close();
         
-        return salesList;
+        return summary;
     }
     
     /**
-     * Get sales data for a specific year
-     * @param date Date within the year to get sales for
-     * @return List of sales data for the specified year
+     * Get sales amount and profit per bucket for consecutive buckets ending
+     * with the one that contains a date. The rows are bucketed and summed in
+     * one grouped query, so the cost does not grow with the number of buckets.
+     * Day, week and month buckets read the daily rollup; hour buckets read
+     * the sales table.
+     * @param bucketSize Bucket size (DateRangeUtils.HOUR, DAY, WEEK, or MONTH)
+     * @param date Date within the last bucket
+     * @param count Number of buckets
+     * @return Series with one entry per bucket, oldest first; empty buckets are zero
      */
-    public List<Sales> getSalesForYear(Date date) {
-        List<Sales> salesList = new ArrayList<>();
-        
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        calendar.set(Calendar.DAY_OF_YEAR, 1);
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        Date startDate = calendar.getTime();
-        
-        calendar.set(Calendar.DAY_OF_YEAR, calendar.getActualMaximum(Calendar.DAY_OF_YEAR));
-        calendar.set(Calendar.HOUR_OF_DAY, 23);
-        calendar.set(Calendar.MINUTE, 59);
-        calendar.set(Calendar.SECOND, 59);
-        Date endDate = calendar.getTime();
-        
-        String startDateStr = dateFormat.format(startDate);
-        String endDateStr = dateFormat.format(endDate);
+    public SalesSeries getSalesSeries(int bucketSize, Date date, int count) {
+        long[] boundaries = DateRangeUtils.getBucketBoundaries(bucketSize, date, count);
+        
+        // Buckets of a day or more start at local midnight, so whole rollup days fall into them
+        String table = bucketSize == DateRangeUtils.HOUR ? TABLE_SALES : TABLE_DAILY_SALES_SUMMARY;
+        String dateColumn = bucketSize == DateRangeUtils.HOUR ? COLUMN_SALE_DATE : COLUMN_DAY_START;
+        
+        // Map each row to its bucket by comparing against the boundaries. They
+        // are computed here, not user input, so they are inlined as literals.
+        StringBuilder bucket = new StringBuilder("CASE");
+        for (int i = 1; i < count; i++) {
+            bucket.append(" WHEN ").append(dateColumn).append(" < ").append(boundaries[i])
+                    .append(" THEN ").append(i - 1);
+        }
+        bucket.append(" ELSE ").append(count - 1).append(" END");
+        
+        // The rollup uses the same amount and profit column names as the sales table
+        String selectQuery = "SELECT " + bucket + " AS bucket, SUM(" + COLUMN_SALE_AMOUNT + "), SUM("
+                + COLUMN_SALE_PROFIT + ") FROM " + table
+                + " WHERE " + dateColumn + " >= ? AND " + dateColumn + " < ?"
+                + " GROUP BY bucket";
+        
+        SQLiteDatabase db = dbHelper.getDatabase();
+        Cursor cursor = db.rawQuery(selectQuery,
+                new String[] { String.valueOf(boundaries[0]), String.valueOf(boundaries[count]) });
+        
+        long[] amounts = new long[count];
+        long[] profits = new long[count];
+        while (cursor.moveToNext()) {
+            int index = cursor.getInt(0);
+            amounts[index] = cursor.getLong(1);
+            profits[index] = cursor.getLong(2);
+        }
         
-        String selectQuery = "SELECT * FROM " + TABLE_SALES + 
-                            " WHERE " + COLUMN_SALE_DATE + " BETWEEN ? AND ?" +
-                            " ORDER BY " + COLUMN_SALE_DATE + " DESC";
+        cursor.close();
         
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[] { startDateStr, endDateStr });
+        return new SalesSeries(bucketSize, Arrays.copyOf(boundaries, count), amounts, profits);
+    }
+    
+    /**
+     * Read all rows of a sales cursor and close it
+     * @param cursor Cursor over the sales table
+     * @return List of sales data
+     */
+    private List<Sales> readSales(Cursor cursor) {
+        List<Sales> salesList = new ArrayList<>();
         
         if (cursor.moveToFirst()) {
+            int idIndex = cursor.getColumnIndex(COLUMN_ID);
+            int dateIndex = cursor.getColumnIndex(COLUMN_SALE_DATE);
+            int amountIndex = cursor.getColumnIndex(COLUMN_SALE_AMOUNT);
+            int profitIndex = cursor.getColumnIndex(COLUMN_SALE_PROFIT);
+            int itemCountIndex = cursor.getColumnIndex(COLUMN_SALE_ITEM_COUNT);
+            
             do {
                 Sales sales = new Sales();
-                sales.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_ID)));
-                
-                try {
-                    sales.setDate(dateFormat.parse(cursor.getString(cursor.getColumnIndex(COLUMN_SALE_DATE))));
-                } catch (ParseException e) {
-                    sales.setDate(new Date());
-                }
-                
-                sales.setAmount(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_AMOUNT)));
-                sales.setProfit(cursor.getDouble(cursor.getColumnIndex(COLUMN_SALE_PROFIT)));
+                sales.setId(cursor.getLong(idIndex));
+                sales.setDate(new Date(cursor.getLong(dateIndex)));
+                sales.setAmount(cursor.getLong(amountIndex));
+                sales.setProfit(cursor.getLong(profitIndex));
+                sales.setItemCount(cursor.getInt(itemCountIndex));
                 
                 salesList.add(sales);
             } while (cursor.moveToNext());
         }
         
         cursor.close();
-        db.close();
         
         return salesList;
     }
@@ -313,10 +350,10 @@ public class SalesRepository {
     /**
      * Get total sales amount for a specific period
      * @param salesList List of sales data
-     * @return Total sales amount
+     * @return Total sales amount in paise
      */
-    public double getTotalSalesAmount(List<Sales> salesList) {
-        double total = 0;
+    public long getTotalSalesAmount(List<Sales> salesList) {
+        long total = 0;
         
         for (Sales sales : salesList) {
             total += sales.getAmount();
@@ -328,10 +365,10 @@ public class SalesRepository {
     /**
      * Get total profit for a specific period
      * @param salesList List of sales data
-     * @return Total profit
+     * @return Total profit in paise
      */
-    public double getTotalProfit(List<Sales> salesList) {
-        double total = 0;
+    public long getTotalProfit(List<Sales> salesList) {
+        long total = 0;
         
         for (Sales sales : salesList) {
             total += sales.getProfit();
@@ -339,4 +376,29 @@ public class SalesRepository {
         
         return total;
     }
+    
+    /**
+     * Get a bucketed sales series on a reader thread
+     * @param bucketSize Bucket size (DateRangeUtils.HOUR, DAY, WEEK, or MONTH)
+     * @param date Date within the last bucket
+     * @param count Number of buckets
+     * @param callback Receives the series, oldest bucket first, or null if it could not be read
+     * @return Future that can cancel the operation
+     */
+    public Future<?> getSalesSeriesAsync(int bucketSize, Date date, int count,
+                                         RepositoryCallback<SalesSeries> callback) {
+        return executors.diskRead().submit(BackgroundCall.of("Load sales series",
+                () -> getSalesSeries(bucketSize, date, count), null, callback));
+    }
+    
+    /**
+     * Get the daily rollup summary of a range on a reader thread
+     * @param range { start, end } in epoch milliseconds; both must be local midnights
+     * @param callback Receives the summary of the range, or null if it could not be read
+     * @return Future that can cancel the operation
+     */
+    public Future<?> getDailySalesSummaryAsync(long[] range, RepositoryCallback<SalesSummary> callback) {
+        return executors.diskRead().submit(BackgroundCall.of("Load sales summary",
+                () -> getDailySalesSummary(range), null, callback));
+    }
 }
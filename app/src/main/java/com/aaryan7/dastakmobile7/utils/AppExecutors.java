@@ -0,0 +1,119 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide executors for database work. Writes go through a single
+ * thread so they commit in submission order; reads share a small pool that
+ * matches the read-only connections available with write-ahead logging.
+ * Documents are drawn on a renderer thread of their own, and long jobs such
+ * as ledger exports and product imports run on their own threads, so
+ * neither ever holds up the reads behind lists, charts and search.
+ */
+public class AppExecutors {
+    private static final int READER_THREADS = 3;
+    private static final long READER_KEEP_ALIVE_SECONDS = 30;
+    private static final int JOB_THREADS = 2;
+
+    private static AppExecutors instance;
+
+    private final ExecutorService diskWrite;
+    private final ExecutorService diskRead;
+    private final ExecutorService render;
+    private final ExecutorService jobs;
+    private final Executor mainThread;
+
+    /**
+     * Get the shared executors
+     * @return AppExecutors instance
+     */
+    public static synchronized AppExecutors getInstance() {
+        if (instance == null) {
+            instance = new AppExecutors();
+        }
+        return instance;
+    }
+
+    private AppExecutors() {
+        diskWrite = Executors.newSingleThreadExecutor(namedThreads("db-writer"));
+
+        ThreadPoolExecutor readers = new ThreadPoolExecutor(READER_THREADS, READER_THREADS,
+                READER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("db-reader"));
+        readers.allowCoreThreadTimeOut(true);
+        diskRead = readers;
+
+        render = Executors.newSingleThreadExecutor(namedThreads("renderer"));
+
+        ThreadPoolExecutor jobRunners = new ThreadPoolExecutor(JOB_THREADS, JOB_THREADS,
+                READER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), namedThreads("db-job"));
+        jobRunners.allowCoreThreadTimeOut(true);
+        jobs = jobRunners;
+
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        mainThread = mainHandler::post;
+    }
+
+    /**
+     * Get the single-threaded executor for database writes
+     * @return Writer executor
+     */
+    public ExecutorService diskWrite() {
+        return diskWrite;
+    }
+
+    /**
+     * Get the bounded pool for database reads
+     * @return Reader executor
+     */
+    public ExecutorService diskRead() {
+        return diskRead;
+    }
+
+    /**
+     * Get the single-threaded executor for rendering documents such as PDF bills
+     * @return Renderer executor
+     */
+    public ExecutorService render() {
+        return render;
+    }
+
+    /**
+     * Get the pool for long jobs that read or write the whole database, such
+     * as exports and imports. They may run for minutes, so they are kept off
+     * the reader pool.
+     * @return Job executor
+     */
+    public ExecutorService jobs() {
+        return jobs;
+    }
+
+    /**
+     * Get an executor that runs tasks on the main thread
+     * @return Main thread executor
+     */
+    public Executor mainThread() {
+        return mainThread;
+    }
+
+    /**
+     * Create a thread factory that names its threads for easier profiling
+     * @param prefix Thread name prefix
+     * @return Thread factory
+     */
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + "-" + count.incrementAndGet());
+    }
+}
@@ -0,0 +1,166 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for CSV and TSV files, as saved by spreadsheet apps.
+ * Records are read one at a time, so a file of any size is read in constant
+ * memory. Fields may be quoted with double quotes; quoted fields may contain
+ * delimiters, line breaks and doubled quotes.
+ *
+ * The delimiter is taken from the first line: tab, semicolon or comma,
+ * whichever occurs most often.
+ */
+public class CsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private char delimiter;
+    private boolean started;
+
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+    private int recordLine;
+    private int nextLine = 1;
+
+    public CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next record
+     * @return Fields of the record, or null at the end of the file. A blank
+     *         line gives a single empty field.
+     * @throws IOException if the file cannot be read
+     */
+    public String[] readRecord() throws IOException {
+        if (!started) {
+            start();
+        }
+
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+
+        fields.clear();
+        field.setLength(0);
+        recordLine = nextLine;
+        boolean quoted = false;
+
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    // Unterminated quote; keep what was read
+                    break;
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        quoted = false;
+                        continue;
+                    }
+                } else if (c == '\n') {
+                    nextLine++;
+                }
+                field.append((char) c);
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                if (c == '\n') {
+                    nextLine++;
+                }
+                break;
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = read();
+        }
+
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Get the line the last record started on, for error messages
+     * @return Line number, counting from 1
+     */
+    public int getLineNumber() {
+        return recordLine;
+    }
+
+    /**
+     * Get the delimiter found on the first line
+     * @return Tab, semicolon or comma
+     */
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Skip a byte order mark and pick the delimiter from the first buffered line
+     * @throws IOException if the file cannot be read
+     */
+    private void start() throws IOException {
+        started = true;
+        fill();
+        if (position < limit && buffer[position] == '\uFEFF') {
+            position++;
+        }
+
+        int tabs = 0;
+        int semicolons = 0;
+        int commas = 0;
+        for (int i = position; i < limit && buffer[i] != '\n'; i++) {
+            if (buffer[i] == '\t') {
+                tabs++;
+            } else if (buffer[i] == ';') {
+                semicolons++;
+            } else if (buffer[i] == ',') {
+                commas++;
+            }
+        }
+
+        if (tabs > 0 && tabs >= semicolons && tabs >= commas) {
+            delimiter = '\t';
+        } else if (semicolons > commas) {
+            delimiter = ';';
+        } else {
+            delimiter = ',';
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Refill the buffer
+     * @return false at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private boolean fill() throws IOException {
+        int count = in.read(buffer, 0, buffer.length);
+        position = 0;
+        limit = Math.max(count, 0);
+        return count > 0;
+    }
+}
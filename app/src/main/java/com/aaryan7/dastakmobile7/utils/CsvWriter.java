@@ -0,0 +1,95 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes CSV records that spreadsheet apps and CsvReader read back as
+ * written. Fields containing a comma, quote or line break are quoted.
+ */
+public class CsvWriter implements Closeable {
+    private final Writer out;
+    private boolean rowStarted;
+
+    public CsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Write a whole record
+     * @param fields Fields of the record; null is written as an empty field
+     * @throws IOException if the file cannot be written
+     */
+    public void writeRow(String... fields) throws IOException {
+        for (String field : fields) {
+            writeField(field);
+        }
+        endRow();
+    }
+
+    /**
+     * Write the next field of the current record
+     * @param value Field value; null is written as an empty field
+     * @return This writer
+     * @throws IOException if the file cannot be written
+     */
+    public CsvWriter writeField(String value) throws IOException {
+        startField();
+        if (value == null) {
+            return this;
+        }
+
+        if (needsQuotes(value)) {
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        } else {
+            out.write(value);
+        }
+        return this;
+    }
+
+    /**
+     * Write the next field of the current record
+     * @param value Field value
+     * @return This writer
+     * @throws IOException if the file cannot be written
+     */
+    public CsvWriter writeField(long value) throws IOException {
+        startField();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * End the current record
+     * @throws IOException if the file cannot be written
+     */
+    public void endRow() throws IOException {
+        out.write("\r\n");
+        rowStarted = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void startField() throws IOException {
+        if (rowStarted) {
+            out.write(',');
+        }
+        rowStarted = true;
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,156 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Utility class for report date ranges. Ranges are returned as
+ * { start, end } in epoch milliseconds, start inclusive and end exclusive.
+ */
+public class DateRangeUtils {
+
+    // Report periods
+    public static final int DAY = 0;
+    public static final int WEEK = 1;
+    public static final int MONTH = 2;
+    public static final int YEAR = 3;
+    
+    // Chart bucket size finer than a day; DAY, WEEK and MONTH are also valid bucket sizes
+    public static final int HOUR = 4;
+
+    /**
+     * Get the range of the period containing a date
+     * @param period Period (DAY, WEEK, MONTH, or YEAR)
+     * @param date Date within the period
+     * @return { start, end } in epoch milliseconds
+     */
+    public static long[] getRange(int period, Date date) {
+        switch (period) {
+            case WEEK:
+                return getWeekRange(date);
+            case MONTH:
+                return getMonthRange(date);
+            case YEAR:
+                return getYearRange(date);
+            case DAY:
+            default:
+                return getDayRange(date);
+        }
+    }
+
+    /**
+     * Get the range of the day containing a date
+     * @param date Date within the day
+     * @return { start, end } in epoch milliseconds
+     */
+    public static long[] getDayRange(Date date) {
+        Calendar calendar = startOfDay(date);
+        long start = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return new long[] { start, calendar.getTimeInMillis() };
+    }
+
+    /**
+     * Get the range of the week containing a date
+     * @param date Date within the week
+     * @return { start, end } in epoch milliseconds
+     */
+    public static long[] getWeekRange(Date date) {
+        Calendar calendar = startOfDay(date);
+        calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+        long start = calendar.getTimeInMillis();
+        calendar.add(Calendar.WEEK_OF_YEAR, 1);
+        return new long[] { start, calendar.getTimeInMillis() };
+    }
+
+    /**
+     * Get the range of the month containing a date
+     * @param date Date within the month
+     * @return { start, end } in epoch milliseconds
+     */
+    public static long[] getMonthRange(Date date) {
+        Calendar calendar = startOfDay(date);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        long start = calendar.getTimeInMillis();
+        calendar.add(Calendar.MONTH, 1);
+        return new long[] { start, calendar.getTimeInMillis() };
+    }
+
+    /**
+     * Get the range of the year containing a date
+     * @param date Date within the year
+     * @return { start, end } in epoch milliseconds
+     */
+    public static long[] getYearRange(Date date) {
+        Calendar calendar = startOfDay(date);
+        calendar.set(Calendar.DAY_OF_YEAR, 1);
+        long start = calendar.getTimeInMillis();
+        calendar.add(Calendar.YEAR, 1);
+        return new long[] { start, calendar.getTimeInMillis() };
+    }
+
+    /**
+     * Get the boundaries of consecutive buckets ending with the one that
+     * contains a date. Buckets follow the local calendar, so a day bucket
+     * spanning a daylight saving change is 23 or 25 hours long.
+     * @param bucketSize Bucket size (HOUR, DAY, WEEK, or MONTH)
+     * @param date Date within the last bucket
+     * @param count Number of buckets
+     * @return count + 1 ascending boundaries in epoch milliseconds; bucket i
+     *         is [boundaries[i], boundaries[i + 1])
+     */
+    public static long[] getBucketBoundaries(int bucketSize, Date date, int count) {
+        Calendar calendar;
+        int field;
+        
+        switch (bucketSize) {
+            case HOUR:
+                calendar = Calendar.getInstance();
+                calendar.setTime(date);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                field = Calendar.HOUR_OF_DAY;
+                break;
+            case WEEK:
+                calendar = startOfDay(date);
+                calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+                field = Calendar.WEEK_OF_YEAR;
+                break;
+            case MONTH:
+                calendar = startOfDay(date);
+                calendar.set(Calendar.DAY_OF_MONTH, 1);
+                field = Calendar.MONTH;
+                break;
+            case DAY:
+            default:
+                calendar = startOfDay(date);
+                field = Calendar.DAY_OF_MONTH;
+                break;
+        }
+        
+        long[] boundaries = new long[count + 1];
+        calendar.add(field, -(count - 1));
+        for (int i = 0; i <= count; i++) {
+            boundaries[i] = calendar.getTimeInMillis();
+            calendar.add(field, 1);
+        }
+        
+        return boundaries;
+    }
+
+    /**
+     * Get a calendar set to local midnight of a date
+     * @param date Date
+     * @return Calendar at the start of that day
+     */
+    public static Calendar startOfDay(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar;
+    }
+}
@@ -0,0 +1,107 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money amounts as whole paise in a long. Models, the database and every
+ * total use paise, so sums are exact; rupees only appear when parsing input
+ * and formatting text. The helpers work on primitives and allocate nothing
+ * beyond the returned strings.
+ */
+public final class Money {
+    public static final long PAISE_PER_RUPEE = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Parse an amount typed in rupees, e.g. "12", "12.5" or "12.50". More than
+     * two decimals are rounded half up to the nearest paisa.
+     * @param text Amount in rupees
+     * @return Amount in paise
+     * @throws NumberFormatException if the text is not a number or is out of range
+     */
+    public static long parse(String text) {
+        try {
+            return new BigDecimal(text.trim()).movePointRight(2)
+                    .setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+
+    /**
+     * Convert an amount in rupees held as a double, rounding to the nearest paisa
+     * @param rupees Amount in rupees
+     * @return Amount in paise
+     */
+    public static long fromRupees(double rupees) {
+        return Math.round(rupees * PAISE_PER_RUPEE);
+    }
+
+    /**
+     * Convert to rupees for display scales that need a floating point value, such as charts
+     * @param paise Amount in paise
+     * @return Amount in rupees
+     */
+    public static double toRupees(long paise) {
+        return paise / (double) PAISE_PER_RUPEE;
+    }
+
+    /**
+     * Format an amount with two decimals, e.g. 1250 as "12.50". The text can
+     * be parsed back with parse().
+     * @param paise Amount in paise
+     * @return Amount in rupees
+     */
+    public static String format(long paise) {
+        return appendTo(new StringBuilder(12), paise).toString();
+    }
+
+    /**
+     * Format an amount with the rupee sign, e.g. 1250 as "₹12.50"
+     * @param paise Amount in paise
+     * @return Amount in rupees with the rupee sign
+     */
+    public static String formatRupees(long paise) {
+        return appendTo(new StringBuilder(13).append('₹'), paise).toString();
+    }
+
+    /**
+     * Append an amount with two decimals
+     * @param builder Builder to append to
+     * @param paise Amount in paise
+     * @return The builder
+     */
+    public static StringBuilder appendTo(StringBuilder builder, long paise) {
+        // Work on the negative value, which also covers Long.MIN_VALUE
+        long negative = paise > 0 ? -paise : paise;
+        if (paise < 0) {
+            builder.append('-');
+        }
+
+        long rupees = -(negative / PAISE_PER_RUPEE);
+        int fraction = (int) -(negative % PAISE_PER_RUPEE);
+        builder.append(rupees).append('.');
+        if (fraction < 10) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+
+    /**
+     * Divide an amount, rounding half away from zero, e.g. for averages
+     * @param paise Amount in paise
+     * @param divisor Positive divisor
+     * @return Rounded quotient in paise
+     */
+    public static long divide(long paise, long divisor) {
+        long quotient = paise / divisor;
+        long remainder = paise % divisor;
+        if (Math.abs(remainder) * 2 >= divisor) {
+            quotient += paise < 0 ? -1 : 1;
+        }
+        return quotient;
+    }
+}
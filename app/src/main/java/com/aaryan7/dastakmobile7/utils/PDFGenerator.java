@@ -9,106 +9,310 @@ import android.os.Environment;
 
 import com.aaryan7.dastakmobile7.models.Bill;
 import com.aaryan7.dastakmobile7.models.BillItem;
+import com.aaryan7.dastakmobile7.repository.BackgroundCall;
+import com.aaryan7.dastakmobile7.repository.RepositoryCallback;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
- * Utility class for generating PDF bills
+ * Utility class for generating PDF bills. Bills are laid out over as many A4
+ * pages as they need; each page repeats the column headings and carries a
+ * page number, and the totals are never left on a page without any lines.
+ *
+ * Paints and measured item names are kept between bills, so a generator is
+ * meant to be reused. Rendering is confined to one thread at a time; use
+ * {@link #generateBillPdfAsync} from the main thread.
  */
 public class PDFGenerator {
     private Context context;
     private static final int PAGE_WIDTH = 595; // A4 width in points
     private static final int PAGE_HEIGHT = 842; // A4 height in points
     private static final int MARGIN = 50;
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss", Locale.getDefault());
-    private static final SimpleDateFormat FILE_DATE_FORMAT = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
+    private static final int CONTENT_BOTTOM = PAGE_HEIGHT - MARGIN;
+    private static final int ROW_HEIGHT = 20;
+    // Baseline of the first line on the first page, below the shop name, title and date
+    private static final int FIRST_PAGE_TABLE_TOP = MARGIN + 140;
+    // Baseline of the first line on later pages, below a one-line running header
+    private static final int NEXT_PAGE_TABLE_TOP = MARGIN + 70;
+    // Space the totals and footer take below the position of the next row
+    private static final int SUMMARY_HEIGHT = 160;
+    // Rows the totals take from a page, counting the row they start on
+    private static final int SUMMARY_ROWS = (SUMMARY_HEIGHT + ROW_HEIGHT - 1) / ROW_HEIGHT + 1;
 
-    public PDFGenerator(Context context) {
-        this.context = context;
-    }
+    // Column positions; amounts are right-aligned to these edges
+    private static final int NAME_X = MARGIN;
+    private static final int NAME_WIDTH = 190;
+    private static final int QUANTITY_RIGHT = MARGIN + 230;
+    private static final int PRICE_RIGHT = MARGIN + 330;
+    private static final int SUBTOTAL_RIGHT = PAGE_WIDTH - MARGIN;
 
-    /**
-     * Generate PDF bill
-     * @param bill Bill to generate PDF for
-     * @return Generated PDF file
-     */
-    public File generateBillPdf(Bill bill) {
-        PdfDocument document = new PdfDocument();
-        PdfDocument.PageInfo pageInfo = new PdfDocument.PageInfo.Builder(PAGE_WIDTH, PAGE_HEIGHT, 1).create();
-        PdfDocument.Page page = document.startPage(pageInfo);
-        Canvas canvas = page.getCanvas();
+    private static final int MAX_FITTED_NAMES = 512;
+    private static final String ELLIPSIS = "…";
 
-        // Create paints
-        Paint titlePaint = new Paint();
+    private final Paint titlePaint;
+    private final Paint headerPaint;
+    private final Paint headerRightPaint;
+    private final Paint textPaint;
+    private final Paint textRightPaint;
+    private final Paint linePaint;
+
+    // Item names cut to the name column, keyed by the full name
+    private final Map<String, String> fittedNames =
+            new LinkedHashMap<String, String>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_FITTED_NAMES;
+                }
+            };
+    private final StringBuilder amount = new StringBuilder();
+
+    // SimpleDateFormat is not thread-safe; these are only used while rendering
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss", Locale.getDefault());
+    private final SimpleDateFormat fileDateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
+
+    public PDFGenerator(Context context) {
+        this.context = context.getApplicationContext();
+
+        titlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         titlePaint.setColor(Color.BLACK);
         titlePaint.setTextSize(18);
         titlePaint.setFakeBoldText(true);
 
-        Paint headerPaint = new Paint();
+        headerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         headerPaint.setColor(Color.BLACK);
         headerPaint.setTextSize(14);
         headerPaint.setFakeBoldText(true);
 
-        Paint textPaint = new Paint();
+        headerRightPaint = new Paint(headerPaint);
+        headerRightPaint.setTextAlign(Paint.Align.RIGHT);
+
+        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         textPaint.setColor(Color.BLACK);
         textPaint.setTextSize(12);
 
-        Paint linePaint = new Paint();
+        textRightPaint = new Paint(textPaint);
+        textRightPaint.setTextAlign(Paint.Align.RIGHT);
+
+        linePaint = new Paint();
         linePaint.setColor(Color.GRAY);
         linePaint.setStrokeWidth(1);
+    }
+
+    /**
+     * Generate a PDF bill on the shared renderer thread. The bill is copied
+     * first, so it may be edited as soon as this returns.
+     * @param bill Bill to generate PDF for; read on the calling thread
+     * @param callback Receives the generated file, or null if it could not be written
+     * @return Future that can cancel the operation
+     */
+    public Future<?> generateBillPdfAsync(Bill bill, RepositoryCallback<File> callback) {
+        Bill snapshot = copyOf(bill);
+        return AppExecutors.getInstance().render().submit(BackgroundCall.of("Generate PDF",
+                () -> generateBillPdf(snapshot), null, callback));
+    }
 
-        // Draw header
+    /**
+     * Generate PDF bill. Blocks; call from a background thread.
+     * @param bill Bill to generate PDF for
+     * @return Generated PDF file, or null if it could not be written or the thread was interrupted
+     */
+    public synchronized File generateBillPdf(Bill bill) {
+        List<BillItem> items = bill.getItems();
+        int[] pageStarts = paginate(items.size(), rowsFrom(FIRST_PAGE_TABLE_TOP), rowsFrom(NEXT_PAGE_TABLE_TOP),
+                SUMMARY_ROWS);
+        int pageCount = pageStarts.length - 1;
+        String date = dateFormat.format(bill.getDate());
+
+        File pdfFile = createPdfFile();
+        PdfDocument document = new PdfDocument();
+        boolean written = false;
+        try {
+            for (int page = 0; page < pageCount; page++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+
+                PdfDocument.PageInfo pageInfo =
+                        new PdfDocument.PageInfo.Builder(PAGE_WIDTH, PAGE_HEIGHT, page + 1).create();
+                PdfDocument.Page pdfPage = document.startPage(pageInfo);
+                Canvas canvas = pdfPage.getCanvas();
+
+                int y = page == 0 ? drawFirstPageHeader(canvas, date) : drawNextPageHeader(canvas, date);
+                y = drawTableHeader(canvas, y);
+                for (int i = pageStarts[page]; i < pageStarts[page + 1]; i++) {
+                    drawItem(canvas, items.get(i), y);
+                    y += ROW_HEIGHT;
+                }
+                if (page == pageCount - 1) {
+                    drawSummary(canvas, bill, y);
+                }
+                canvas.drawText("Page " + (page + 1) + " of " + pageCount,
+                        SUBTOTAL_RIGHT, PAGE_HEIGHT - MARGIN / 2, textRightPaint);
+
+                document.finishPage(pdfPage);
+            }
+
+            // Pages are kept as compact drawing commands until written here
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(pdfFile))) {
+                document.writeTo(out);
+            }
+            written = true;
+            return pdfFile;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            document.close();
+            if (!written) {
+                pdfFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Split the lines of a bill over pages. Each page takes as many lines as
+     * fit; the page with the totals takes fewer so the totals fit below its
+     * lines. When the totals would not fit after the last lines, the last line
+     * moves to the next page with them.
+     * @param itemCount Number of lines on the bill
+     * @param firstPageRows Rows that fit on the first page
+     * @param pageRows Rows that fit on later pages
+     * @param summaryRows Rows taken by the totals and footer
+     * @return Index of the first line on each page, followed by the line count
+     */
+    public static int[] paginate(int itemCount, int firstPageRows, int pageRows, int summaryRows) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+
+        int position = 0;
+        int rows = firstPageRows;
+        while (itemCount - position + summaryRows > rows) {
+            int remaining = itemCount - position;
+            if (remaining > rows) {
+                position += rows;
+            } else {
+                position += remaining > 1 ? remaining - 1 : remaining;
+            }
+            starts.add(position);
+            rows = pageRows;
+        }
+        starts.add(itemCount);
+
+        int[] result = new int[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Count the rows whose baselines fit between a table top and the bottom margin
+     * @param tableTop Baseline of the first row
+     * @return Number of rows
+     */
+    private static int rowsFrom(int tableTop) {
+        return (CONTENT_BOTTOM - tableTop) / ROW_HEIGHT + 1;
+    }
+
+    /**
+     * Draw the shop name, title and date at the top of the first page
+     * @param canvas Page canvas
+     * @param date Formatted bill date
+     * @return Position of the table below
+     */
+    private int drawFirstPageHeader(Canvas canvas, String date) {
         int y = MARGIN;
         canvas.drawText("Dastak Mobile 7", MARGIN, y, titlePaint);
         y += 30;
         canvas.drawText("BILL", MARGIN, y, titlePaint);
         y += 30;
+        canvas.drawText("Date: " + date, MARGIN, y, textPaint);
+        return y + 30;
+    }
 
-        // Draw date and time
-        String dateTime = "Date: " + DATE_FORMAT.format(bill.getDate());
-        canvas.drawText(dateTime, MARGIN, y, textPaint);
-        y += 30;
+    /**
+     * Draw the running header at the top of a later page
+     * @param canvas Page canvas
+     * @param date Formatted bill date
+     * @return Position of the table below
+     */
+    private int drawNextPageHeader(Canvas canvas, String date) {
+        int y = MARGIN;
+        canvas.drawText("Dastak Mobile 7 - Bill of " + date + " (continued)", MARGIN, y, textPaint);
+        return y + 20;
+    }
 
-        // Draw table header
+    /**
+     * Draw the column headings between two rules
+     * @param canvas Page canvas
+     * @param y Position of the upper rule
+     * @return Baseline of the first row
+     */
+    private int drawTableHeader(Canvas canvas, int y) {
         canvas.drawLine(MARGIN, y, PAGE_WIDTH - MARGIN, y, linePaint);
         y += 15;
-        canvas.drawText("Item", MARGIN, y, headerPaint);
-        canvas.drawText("Qty", MARGIN + 200, y, headerPaint);
-        canvas.drawText("Price (₹)", MARGIN + 250, y, headerPaint);
-        canvas.drawText("Subtotal (₹)", MARGIN + 350, y, headerPaint);
+        canvas.drawText("Item", NAME_X, y, headerPaint);
+        canvas.drawText("Qty", QUANTITY_RIGHT, y, headerRightPaint);
+        canvas.drawText("Price (₹)", PRICE_RIGHT, y, headerRightPaint);
+        canvas.drawText("Subtotal (₹)", SUBTOTAL_RIGHT, y, headerRightPaint);
         y += 15;
         canvas.drawLine(MARGIN, y, PAGE_WIDTH - MARGIN, y, linePaint);
-        y += 20;
+        return y + 20;
+    }
 
-        // Draw items
-        for (BillItem item : bill.getItems()) {
-            canvas.drawText(item.getProductName(), MARGIN, y, textPaint);
-            canvas.drawText(String.valueOf(item.getQuantity()), MARGIN + 200, y, textPaint);
-            canvas.drawText(String.format(Locale.getDefault(), "%.2f", item.getPrice()), MARGIN + 250, y, textPaint);
-            canvas.drawText(String.format(Locale.getDefault(), "%.2f", item.getSubtotal()), MARGIN + 350, y, textPaint);
-            y += 20;
-        }
+    /**
+     * Draw one line of the bill
+     * @param canvas Page canvas
+     * @param item Line to draw
+     * @param y Baseline of the row
+     */
+    private void drawItem(Canvas canvas, BillItem item, int y) {
+        canvas.drawText(fitName(item.getProductName()), NAME_X, y, textPaint);
+        drawRight(canvas, amount.append(item.getQuantity()), QUANTITY_RIGHT, y);
+        drawRight(canvas, Money.appendTo(amount, item.getPrice()), PRICE_RIGHT, y);
+        drawRight(canvas, Money.appendTo(amount, item.getSubtotal()), SUBTOTAL_RIGHT, y);
+    }
+
+    /**
+     * Draw the contents of the shared amount builder right-aligned, then clear it
+     */
+    private void drawRight(Canvas canvas, StringBuilder text, int right, int y) {
+        canvas.drawText(text, 0, text.length(), right, y, textRightPaint);
+        text.setLength(0);
+    }
 
-        // Draw summary
+    /**
+     * Draw the totals and footer
+     * @param canvas Page canvas
+     * @param bill Bill being drawn
+     * @param y Baseline a row below the last line
+     */
+    private void drawSummary(Canvas canvas, Bill bill, int y) {
         y += 10;
         canvas.drawLine(MARGIN, y, PAGE_WIDTH - MARGIN, y, linePaint);
         y += 20;
         canvas.drawText("Subtotal:", MARGIN + 250, y, headerPaint);
-        canvas.drawText(String.format(Locale.getDefault(), "₹%.2f", bill.getTotal()), MARGIN + 350, y, headerPaint);
+        canvas.drawText(Money.formatRupees(bill.getTotal()), SUBTOTAL_RIGHT, y, headerRightPaint);
         y += 20;
         canvas.drawText("Discount:", MARGIN + 250, y, headerPaint);
-        canvas.drawText(String.format(Locale.getDefault(), "₹%.2f", bill.getDiscount()), MARGIN + 350, y, headerPaint);
+        canvas.drawText(Money.formatRupees(bill.getDiscount()), SUBTOTAL_RIGHT, y, headerRightPaint);
         y += 20;
         canvas.drawText("Final Amount:", MARGIN + 250, y, headerPaint);
-        canvas.drawText(String.format(Locale.getDefault(), "₹%.2f", bill.getFinalAmount()), MARGIN + 350, y, headerPaint);
+        canvas.drawText(Money.formatRupees(bill.getFinalAmount()), SUBTOTAL_RIGHT, y, headerRightPaint);
         y += 30;
 
-        // Draw footer
         canvas.drawLine(MARGIN, y, PAGE_WIDTH - MARGIN, y, linePaint);
         y += 20;
         canvas.drawText("Thank you for shopping with us!", MARGIN, y, textPaint);
@@ -116,20 +320,51 @@ public class PDFGenerator {
         canvas.drawText("Contact: Aaryan Parmar (owner)", MARGIN, y, textPaint);
         y += 20;
         canvas.drawText("Email: myuse077@gmail.com", MARGIN, y, textPaint);
+    }
 
-        document.finishPage(page);
+    /**
+     * Cut an item name to the width of the name column, measuring each name once
+     * @param name Full item name
+     * @return Name as drawn, ending in an ellipsis if it was cut
+     */
+    private String fitName(String name) {
+        if (name == null) {
+            return "";
+        }
 
-        // Save the document
-        File pdfFile = createPdfFile();
-        try {
-            document.writeTo(new FileOutputStream(pdfFile));
-            return pdfFile;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            document.close();
+        String fitted = fittedNames.get(name);
+        if (fitted == null) {
+            int count = textPaint.breakText(name, true, NAME_WIDTH, null);
+            if (count == name.length()) {
+                fitted = name;
+            } else {
+                float room = NAME_WIDTH - textPaint.measureText(ELLIPSIS);
+                fitted = name.substring(0, textPaint.breakText(name, true, room, null)).trim() + ELLIPSIS;
+            }
+            fittedNames.put(name, fitted);
         }
+        return fitted;
+    }
+
+    /**
+     * Copy the parts of a bill that are printed, so it can be rendered while the original is edited
+     * @param bill Bill to copy
+     * @return Detached copy
+     */
+    private static Bill copyOf(Bill bill) {
+        List<BillItem> items = new ArrayList<>(bill.getItems().size());
+        for (BillItem item : bill.getItems()) {
+            items.add(new BillItem(item));
+        }
+
+        Bill copy = new Bill();
+        copy.setId(bill.getId());
+        copy.setDate(bill.getDate());
+        copy.setItems(items);
+        copy.setDiscount(bill.getDiscount());
+        copy.setTotal(bill.getTotal());
+        copy.setFinalAmount(bill.getFinalAmount());
+        return copy;
     }
 
     /**
@@ -137,12 +372,16 @@ public class PDFGenerator {
      * @return PDF file
      */
     private File createPdfFile() {
-        File dir = new File(context.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS), "DastakMobile7");
+        File dir = context.getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        dir = new File(dir, "DastakMobile7");
         if (!dir.exists()) {
             dir.mkdirs();
         }
 
-        String fileName = "Bill_" + FILE_DATE_FORMAT.format(new Date()) + ".pdf";
+        String fileName = "Bill_" + fileDateFormat.format(new Date()) + ".pdf";
         return new File(dir, fileName);
     }
 }
@@ -0,0 +1,40 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps track of background tasks started by a ViewModel so they can be
+ * cancelled together when the ViewModel is cleared. Only reads and long
+ * jobs such as imports, exports and rendering belong here; writes must run
+ * to completion once submitted, so they are never tracked.
+ */
+public class TaskTracker {
+    private final List<Future<?>> tasks = new ArrayList<>();
+
+    /**
+     * Track a submitted task, dropping tasks that have already finished
+     * @param task Submitted task
+     */
+    public synchronized void add(Future<?> task) {
+        Iterator<Future<?>> iterator = tasks.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isDone()) {
+                iterator.remove();
+            }
+        }
+        tasks.add(task);
+    }
+
+    /**
+     * Cancel all tracked tasks that have not finished yet
+     */
+    public synchronized void cancelAll() {
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+        tasks.clear();
+    }
+}
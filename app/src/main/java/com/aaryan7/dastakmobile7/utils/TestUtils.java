@@ -1,8 +1,14 @@
 package com.aaryan7.dastakmobile7.utils;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
+import com.aaryan7.dastakmobile7.database.DatabaseHelper;
+
 /**
  * Utility class for testing and debugging
  */
@@ -21,8 +27,7 @@ public class TestUtils {
         results.append("Database Test: ");
         try {
             // Test database creation
-            DatabaseHelper dbHelper = new DatabaseHelper(context);
-            dbHelper.getWritableDatabase().close();
+            DatabaseHelper.getInstance(context).getDatabase();
             results.append("PASSED\n");
         } catch (Exception e) {
             results.append("FAILED - ").append(e.getMessage()).append("\n");
@@ -87,11 +92,13 @@ public class TestUtils {
         long startTime = System.currentTimeMillis();
         
         try {
-            DatabaseHelper dbHelper = new DatabaseHelper(context);
+            // Make sure the database file exists before opening it directly
+            DatabaseHelper.getInstance(context).getDatabase();
             
             for (int i = 0; i < iterations; i++) {
-                // Open and close database repeatedly
-                dbHelper.getWritableDatabase().close();
+                // Open and close a private connection repeatedly, leaving the
+                // shared connection untouched
+                openPrivateConnection(context).close();
             }
             
             long endTime = System.currentTimeMillis();
@@ -109,6 +116,145 @@ public class TestUtils {
         return results.toString();
     }
     
+    /**
+     * Compare per-operation latency of opening a connection for every lookup
+     * against borrowing the shared long-lived connection
+     * @param context Application context
+     * @param iterations Number of lookups per variant
+     * @return Benchmark results
+     */
+    public static String performConnectionBenchmark(Context context, int iterations) {
+        StringBuilder results = new StringBuilder();
+        String lookupQuery = "SELECT COUNT(*) FROM products";
+        
+        try {
+            SQLiteDatabase sharedDb = DatabaseHelper.getInstance(context).getDatabase();
+            
+            // Warm up both paths so one-time costs are not measured
+            DatabaseUtils.longForQuery(sharedDb, lookupQuery, null);
+            SQLiteDatabase warmUpDb = openPrivateConnection(context);
+            DatabaseUtils.longForQuery(warmUpDb, lookupQuery, null);
+            warmUpDb.close();
+            
+            // Before: open, query and close for every operation
+            long startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                SQLiteDatabase db = openPrivateConnection(context);
+                DatabaseUtils.longForQuery(db, lookupQuery, null);
+                db.close();
+            }
+            long perOpenNanos = (System.nanoTime() - startTime) / iterations;
+            
+            // After: borrow the shared connection
+            startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                DatabaseUtils.longForQuery(sharedDb, lookupQuery, null);
+            }
+            long sharedNanos = (System.nanoTime() - startTime) / iterations;
+            
+            results.append("Connection Benchmark: PASSED\n");
+            results.append("Iterations: ").append(iterations).append("\n");
+            results.append("Open/close per operation: ").append(perOpenNanos / 1000).append("µs\n");
+            results.append("Shared connection: ").append(sharedNanos / 1000).append("µs\n");
+            if (sharedNanos > 0) {
+                results.append("Speedup: ").append(perOpenNanos / sharedNanos).append("x\n");
+            }
+        } catch (Exception e) {
+            results.append("Connection Benchmark: FAILED - ").append(e.getMessage()).append("\n");
+            Log.e(TAG, "Connection benchmark failed", e);
+        }
+        
+        return results.toString();
+    }
+    
+    /**
+     * Compare ContentValues inserts against a compiled statement. Both run on
+     * a scratch in-memory database with the products columns, so the shop
+     * database and its shared statements are never touched.
+     * @param rows Number of product rows to insert per variant
+     * @return Benchmark results
+     */
+    public static String performInsertBenchmark(int rows) {
+        StringBuilder results = new StringBuilder();
+        String insertSql = "INSERT INTO products (name, purchase_price, selling_price, quantity, profit)"
+                + " VALUES (?, ?, ?, ?, ?)";
+        
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE products(id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT,"
+                    + " purchase_price INTEGER, selling_price INTEGER, quantity INTEGER, profit INTEGER, sku TEXT)");
+            
+            // Before: a fresh ContentValues and SQL parse per row
+            long startTime = System.nanoTime();
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < rows; i++) {
+                    ContentValues values = new ContentValues();
+                    values.put("name", "Benchmark " + i);
+                    values.put("purchase_price", 1000L);
+                    values.put("selling_price", 1250L);
+                    values.put("quantity", i);
+                    values.put("profit", 250L);
+                    db.insert("products", null, values);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            long contentValuesNanos = System.nanoTime() - startTime;
+            
+            db.delete("products", null, null);
+            
+            // After: one compiled statement with primitives bound directly
+            SQLiteStatement statement = db.compileStatement(insertSql);
+            long compiledNanos;
+            try {
+                startTime = System.nanoTime();
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < rows; i++) {
+                        statement.bindString(1, "Benchmark " + i);
+                        statement.bindLong(2, 1000);
+                        statement.bindLong(3, 1250);
+                        statement.bindLong(4, i);
+                        statement.bindLong(5, 250);
+                        statement.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                compiledNanos = System.nanoTime() - startTime;
+            } finally {
+                statement.close();
+            }
+            
+            results.append("Insert Benchmark: PASSED\n");
+            results.append("Rows: ").append(rows).append("\n");
+            results.append("ContentValues insert: ").append(contentValuesNanos / rows / 1000).append("µs/row\n");
+            results.append("Compiled statement: ").append(compiledNanos / rows / 1000).append("µs/row\n");
+        } catch (Exception e) {
+            results.append("Insert Benchmark: FAILED - ").append(e.getMessage()).append("\n");
+            Log.e(TAG, "Insert benchmark failed", e);
+        } finally {
+            db.close();
+        }
+        
+        return results.toString();
+    }
+    
+    /**
+     * Open a connection to the app database that is independent of the
+     * shared one, so it can be closed without affecting other callers
+     * @param context Application context
+     * @return Newly opened database
+     */
+    private static SQLiteDatabase openPrivateConnection(Context context) {
+        String name = DatabaseHelper.getInstance(context).getDatabaseName();
+        return SQLiteDatabase.openDatabase(context.getDatabasePath(name).getPath(),
+                null, SQLiteDatabase.OPEN_READWRITE);
+    }
+    
     /**
      * Check memory usage
      * @return Memory usage information
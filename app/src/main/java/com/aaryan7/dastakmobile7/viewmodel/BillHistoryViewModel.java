@@ -0,0 +1,227 @@
+package com.aaryan7.dastakmobile7.viewmodel;
+
+import android.app.Application;
+import android.os.Environment;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.aaryan7.dastakmobile7.models.Bill;
+import com.aaryan7.dastakmobile7.models.BillItem;
+import com.aaryan7.dastakmobile7.repository.BillRepository;
+import com.aaryan7.dastakmobile7.repository.LedgerExporter;
+import com.aaryan7.dastakmobile7.utils.AppExecutors;
+import com.aaryan7.dastakmobile7.utils.TaskTracker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * ViewModel for browsing saved bills. Only a window of a few pages is kept
+ * in memory; pages are loaded at one end and dropped at the other as the
+ * user scrolls, so memory stays flat however long the history is.
+ */
+public class BillHistoryViewModel extends AndroidViewModel {
+    public static final int PAGE_SIZE = 50;
+    private static final int MAX_BILLS = PAGE_SIZE * 3;
+
+    private BillRepository repository;
+    private MutableLiveData<List<Bill>> bills;
+    private MutableLiveData<Map<Long, List<BillItem>>> expandedItems;
+    private final TaskTracker tasks = new TaskTracker();
+    private final MutableLiveData<LedgerExporter.Status> exportStatus = new MutableLiveData<>();
+    private Future<?> export;
+
+    // Window state; only touched on the main thread
+    private final List<Bill> window = new ArrayList<>();
+    private final Map<Long, List<BillItem>> itemsByBill = new HashMap<>();
+    private boolean hasOlder = true;
+    private boolean hasNewer = false;
+    private boolean loading = false;
+
+    public BillHistoryViewModel(@NonNull Application application) {
+        super(application);
+        repository = new BillRepository(application);
+        bills = new MutableLiveData<>();
+        expandedItems = new MutableLiveData<>(new HashMap<>());
+        loadOlder();
+    }
+
+    /**
+     * Get the bills in the current window as LiveData
+     * @return LiveData of bills without items, newest first
+     */
+    public LiveData<List<Bill>> getBills() {
+        return bills;
+    }
+
+    /**
+     * Get the items of expanded bills as LiveData
+     * @return LiveData of items keyed by bill ID
+     */
+    public LiveData<Map<Long, List<BillItem>>> getExpandedItems() {
+        return expandedItems;
+    }
+
+    /**
+     * Load the next page of older bills, dropping the newest page if the window is full
+     */
+    public void loadOlder() {
+        if (loading || !hasOlder) {
+            return;
+        }
+        loading = true;
+        
+        Bill last = window.isEmpty() ? null : window.get(window.size() - 1);
+        long date = last == null ? Long.MAX_VALUE : last.getDate().getTime();
+        long id = last == null ? Long.MAX_VALUE : last.getId();
+        
+        tasks.add(repository.getBillsBeforeAsync(date, id, PAGE_SIZE, page ->
+                AppExecutors.getInstance().mainThread().execute(() -> {
+                    loading = false;
+                    if (page == null) {
+                        return;
+                    }
+                    hasOlder = page.size() == PAGE_SIZE;
+                    window.addAll(page);
+                    
+                    int excess = window.size() - MAX_BILLS;
+                    if (excess > 0) {
+                        drop(0, excess);
+                        hasNewer = true;
+                    }
+                    publish();
+                })));
+    }
+
+    /**
+     * Load the previous page of newer bills, dropping the oldest page if the window is full
+     */
+    public void loadNewer() {
+        if (loading || !hasNewer || window.isEmpty()) {
+            return;
+        }
+        loading = true;
+        
+        Bill first = window.get(0);
+        
+        tasks.add(repository.getBillsAfterAsync(first.getDate().getTime(), first.getId(), PAGE_SIZE, page ->
+                AppExecutors.getInstance().mainThread().execute(() -> {
+                    loading = false;
+                    if (page == null) {
+                        return;
+                    }
+                    hasNewer = page.size() == PAGE_SIZE;
+                    window.addAll(0, page);
+                    
+                    int excess = window.size() - MAX_BILLS;
+                    if (excess > 0) {
+                        drop(window.size() - excess, window.size());
+                        hasOlder = true;
+                    }
+                    publish();
+                })));
+    }
+
+    /**
+     * Expand a bill to show its items, loading them on first expansion, or collapse it
+     * @param bill Bill to toggle
+     */
+    public void toggleExpanded(Bill bill) {
+        if (itemsByBill.remove(bill.getId()) != null) {
+            expandedItems.setValue(new HashMap<>(itemsByBill));
+            return;
+        }
+        
+        tasks.add(repository.getBillItemsAsync(bill.getId(), items ->
+                AppExecutors.getInstance().mainThread().execute(() -> {
+                    // The bill may have scrolled out of the window meanwhile
+                    if (items != null && window.contains(bill)) {
+                        itemsByBill.put(bill.getId(), items);
+                        expandedItems.setValue(new HashMap<>(itemsByBill));
+                    }
+                })));
+    }
+
+    /**
+     * Get the progress of the running export, and then its outcome
+     * @return LiveData of the export status
+     */
+    public LiveData<LedgerExporter.Status> getExportStatus() {
+        return exportStatus;
+    }
+
+    /**
+     * Export the ledger of a date range for the accountant. The files are
+     * saved next to the generated bills.
+     * @param range { start, end } in epoch milliseconds
+     * @param format LedgerExporter.FORMAT_CSV or LedgerExporter.FORMAT_JSON
+     * @param gzip true to compress the files
+     */
+    public void exportLedger(long[] range, int format, boolean gzip) {
+        if (isExporting()) {
+            return;
+        }
+        
+        File dir = getApplication().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
+        if (dir == null) {
+            dir = getApplication().getFilesDir();
+        }
+        
+        exportStatus.setValue(new LedgerExporter.Status(0, new ArrayList<>(), null, false));
+        export = repository.exportLedgerAsync(range, format, gzip, new File(dir, "DastakMobile7"),
+                exportStatus::postValue, exportStatus::postValue);
+        tasks.add(export);
+    }
+
+    /**
+     * Check whether an export is running
+     * @return true until the last export has finished
+     */
+    public boolean isExporting() {
+        return export != null && !export.isDone();
+    }
+
+    /**
+     * Stop the running export; its partial files are deleted
+     */
+    public void cancelExport() {
+        // An export that had not started yet never reports, so report for it
+        if (export != null && export.cancel(true)) {
+            exportStatus.setValue(new LedgerExporter.Status(0, new ArrayList<>(), "Export cancelled", true));
+        }
+    }
+
+    /**
+     * Remove a range of bills from the window along with their loaded items
+     * @param from First index to remove
+     * @param to Index after the last one to remove
+     */
+    private void drop(int from, int to) {
+        List<Bill> dropped = window.subList(from, to);
+        for (Bill bill : dropped) {
+            itemsByBill.remove(bill.getId());
+        }
+        dropped.clear();
+    }
+
+    /**
+     * Publish a snapshot of the window
+     */
+    private void publish() {
+        bills.setValue(new ArrayList<>(window));
+        expandedItems.setValue(new HashMap<>(itemsByBill));
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        tasks.cancelAll();
+    }
+}
@@ -12,44 +12,51 @@ import com.aaryan7.dastakmobile7.models.BillItem;
 import com.aaryan7.dastakmobile7.models.Product;
 import com.aaryan7.dastakmobile7.repository.BillRepository;
 import com.aaryan7.dastakmobile7.repository.ProductRepository;
+import com.aaryan7.dastakmobile7.utils.AppExecutors;
+import com.aaryan7.dastakmobile7.utils.PDFGenerator;
+import com.aaryan7.dastakmobile7.utils.TaskTracker;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * ViewModel for Bill operations
  */
 public class BillViewModel extends AndroidViewModel {
+    private static final int SUGGESTION_LIMIT = 20;
+    
     private BillRepository billRepository;
     private ProductRepository productRepository;
-    private MutableLiveData<List<Product>> availableProducts;
     private MutableLiveData<Bill> currentBill;
     private MutableLiveData<Boolean> operationStatus;
+    private MutableLiveData<Long> savedBillId;
+    private MutableLiveData<List<String>> unmatchedCodes;
+    private MutableLiveData<File> generatedPdf;
+    private PDFGenerator pdfGenerator;
+    private final TaskTracker tasks = new TaskTracker();
 
     public BillViewModel(@NonNull Application application) {
         super(application);
         billRepository = new BillRepository(application);
         productRepository = new ProductRepository(application);
-        availableProducts = new MutableLiveData<>();
         currentBill = new MutableLiveData<>(new Bill());
         operationStatus = new MutableLiveData<>();
-        loadProducts();
+        savedBillId = new MutableLiveData<>();
+        unmatchedCodes = new MutableLiveData<>();
+        generatedPdf = new MutableLiveData<>();
+        pdfGenerator = new PDFGenerator(application);
     }
 
     /**
-     * Load all available products
+     * Search products in stock for the product picker. Blocks; call from a
+     * background thread such as the picker's filter thread.
+     * @param query Text typed by the user
+     * @return Best matches first, or products in name order for an empty query
      */
-    private void loadProducts() {
-        List<Product> products = productRepository.getAllProducts();
-        availableProducts.setValue(products);
-    }
-
-    /**
-     * Get all available products as LiveData
-     * @return LiveData of product list
-     */
-    public LiveData<List<Product>> getAvailableProducts() {
-        return availableProducts;
+    public List<Product> searchProducts(String query) {
+        return productRepository.searchProducts(query, SUGGESTION_LIMIT, true);
     }
 
     /**
@@ -69,37 +76,128 @@ public class BillViewModel extends AndroidViewModel {
     }
 
     /**
-     * Add a product to the current bill
-     * @param productId Product ID
-     * @param quantity Quantity to add
+     * Get the result of the last save as LiveData
+     * @return LiveData of the saved bill ID, or -1 if the save failed
      */
-    public void addProductToBill(long productId, int quantity) {
-        Product product = productRepository.getProductById(productId);
+    public LiveData<Long> getSavedBillId() {
+        return savedBillId;
+    }
+
+    /**
+     * Get the codes of the last add by code that matched no product or were short of stock
+     * @return LiveData of the rejected entries, empty if all were added
+     */
+    public LiveData<List<String>> getUnmatchedCodes() {
+        return unmatchedCodes;
+    }
+
+    /**
+     * Get the result of the last PDF generation as LiveData
+     * @return LiveData of the generated file, or null if it could not be written
+     */
+    public LiveData<File> getGeneratedPdf() {
+        return generatedPdf;
+    }
+
+    /**
+     * Add products by SKU, as typed or sent by a barcode scanner. Several
+     * entries may be given at once, separated by spaces, commas or semicolons;
+     * "code*3" adds three of an item.
+     * @param input Codes to add
+     */
+    public void addProductsByCode(String input) {
+        // Each code is a hash lookup in the in-memory catalog
+        if (productRepository.isCatalogLoaded()) {
+            addCodesToBill(input);
+            return;
+        }
         
-        if (product != null && product.getQuantity() >= quantity) {
-            Bill bill = currentBill.getValue();
-            
-            if (bill == null) {
-                bill = new Bill();
+        tasks.add(productRepository.loadCatalogAsync(loaded ->
+                AppExecutors.getInstance().mainThread().execute(() -> {
+                    if (loaded) {
+                        addCodesToBill(input);
+                    } else {
+                        // Products could not be read, so none of the codes can be added
+                        unmatchedCodes.setValue(Collections.singletonList(input.trim()));
+                    }
+                })));
+    }
+
+    /**
+     * Add products by SKU to the current bill and publish it once. Runs on the main thread.
+     * @param input Codes to add
+     */
+    private void addCodesToBill(String input) {
+        Bill bill = currentBill.getValue();
+        if (bill == null) {
+            bill = new Bill();
+        }
+        
+        List<String> rejected = new ArrayList<>();
+        boolean added = false;
+        
+        for (String entry : input.trim().split("[\\s,;]+")) {
+            if (entry.isEmpty()) {
+                continue;
             }
             
-            // Check if product already exists in bill
-            boolean productExists = false;
-            for (BillItem item : bill.getItems()) {
-                if (item.getProductId() == productId) {
-                    // Update quantity
-                    item.setQuantity(item.getQuantity() + quantity);
-                    productExists = true;
-                    break;
+            String code = entry;
+            int quantity = 1;
+            int star = entry.lastIndexOf('*');
+            if (star > 0) {
+                try {
+                    quantity = Integer.parseInt(entry.substring(star + 1));
+                    code = entry.substring(0, star);
+                } catch (NumberFormatException e) {
+                    // Not a quantity; the whole entry is the code
                 }
             }
             
-            // Add new item if product doesn't exist in bill
-            if (!productExists) {
-                BillItem item = new BillItem(productId, product.getName(), quantity, product.getSellingPrice());
-                bill.addItem(item);
+            Product product = productRepository.lookupBySku(code);
+            if (quantity > 0 && product != null && addToBill(bill, product, quantity)) {
+                added = true;
+            } else {
+                rejected.add(entry);
             }
-            
+        }
+        
+        if (added) {
+            currentBill.setValue(bill);
+        }
+        unmatchedCodes.setValue(rejected);
+    }
+
+    /**
+     * Add a product to the current bill
+     * @param productId Product ID
+     * @param quantity Quantity to add
+     */
+    public void addProductToBill(long productId, int quantity) {
+        // Stock is looked up in the in-memory catalog once it has loaded
+        if (productRepository.isCatalogLoaded()) {
+            addProductToBill(productRepository.getProductById(productId), quantity);
+            return;
+        }
+        
+        // Otherwise look it up off the main thread, then edit the bill on it
+        tasks.add(productRepository.getProductByIdAsync(productId, product ->
+                AppExecutors.getInstance().mainThread().execute(() ->
+                        addProductToBill(product, quantity))));
+    }
+
+    /**
+     * Add a looked-up product to the current bill. Runs on the main thread.
+     * @param product Product, or null if it no longer exists
+     * @param quantity Quantity to add
+     */
+    private void addProductToBill(Product product, int quantity) {
+        Bill bill = currentBill.getValue();
+        
+        if (bill == null) {
+            bill = new Bill();
+        }
+        
+        if (product != null && addToBill(bill, product, quantity)) {
             currentBill.setValue(bill);
             operationStatus.setValue(true);
         } else {
@@ -107,6 +205,26 @@ public class BillViewModel extends AndroidViewModel {
         }
     }
 
+    /**
+     * Add a quantity of a product to a bill without publishing it
+     * @param bill Bill to change
+     * @param product Product with its current stock
+     * @param quantity Quantity to add
+     * @return true if added, false if there is not enough stock
+     */
+    private boolean addToBill(Bill bill, Product product, int quantity) {
+        // Stock must cover what is already on the bill as well
+        int line = bill.indexOfProduct(product.getId());
+        int onBill = line >= 0 ? bill.getItem(line).getQuantity() : 0;
+        if (product.getQuantity() < onBill + quantity) {
+            return false;
+        }
+        
+        // Merged into the product's line if it has one
+        bill.addItem(new BillItem(product.getId(), product.getName(), quantity, product.getSellingPrice()));
+        return true;
+    }
+
     /**
      * Remove an item from the current bill
      * @param position Position of item in the list
@@ -115,18 +233,16 @@ public class BillViewModel extends AndroidViewModel {
         Bill bill = currentBill.getValue();
         
         if (bill != null && position >= 0 && position < bill.getItems().size()) {
-            List<BillItem> items = new ArrayList<>(bill.getItems());
-            items.remove(position);
-            bill.setItems(items);
+            bill.removeItem(position);
             currentBill.setValue(bill);
         }
     }
 
     /**
      * Apply discount to the current bill
-     * @param discount Discount amount
+     * @param discount Discount amount in paise
      */
-    public void applyDiscount(double discount) {
+    public void applyDiscount(long discount) {
         Bill bill = currentBill.getValue();
         
         if (bill != null) {
@@ -136,42 +252,73 @@ public class BillViewModel extends AndroidViewModel {
     }
 
     /**
-     * Save the current bill
-     * @return ID of the saved bill, or -1 if failed
+     * Save the current bill in the background. The result is published
+     * through getSavedBillId().
      */
-    public long saveBill() {
+    public void saveBill() {
         Bill bill = currentBill.getValue();
         
-        if (bill != null && !bill.getItems().isEmpty()) {
-            long billId = billRepository.saveBill(bill);
-            
-            if (billId > 0) {
-                // Reset current bill
-                currentBill.setValue(new Bill());
-                // Reload products to update quantities
-                loadProducts();
-                return billId;
-            }
+        if (bill == null || bill.getItems().isEmpty()) {
+            savedBillId.setValue(-1L);
+            return;
         }
         
-        return -1;
+        // Start a new bill right away so the one being saved is not edited
+        // while the writer thread reads it
+        Bill next = new Bill();
+        currentBill.setValue(next);
+        
+        // Not tracked: the bill is off the screen already, so the save must
+        // finish even if the ViewModel is cleared before it runs
+        billRepository.saveBillAsync(bill, billId ->
+                AppExecutors.getInstance().mainThread().execute(() -> {
+                    if (billId <= 0) {
+                        restoreUnsavedBill(bill, next);
+                    }
+                    savedBillId.setValue(billId);
+                }));
     }
 
     /**
-     * Get a bill by ID
-     * @param billId Bill ID
-     * @return Bill object
+     * Give a bill that failed to save back so it can be corrected and
+     * retried, without losing lines added since. Runs on the main thread.
+     * @param unsaved Bill that failed to save
+     * @param next Empty bill that replaced it when the save started
      */
-    public Bill getBill(long billId) {
-        return billRepository.getBill(billId);
+    private void restoreUnsavedBill(Bill unsaved, Bill next) {
+        Bill bill = currentBill.getValue();
+        
+        if (bill == null || (bill == next && bill.getItems().isEmpty())) {
+            currentBill.setValue(unsaved);
+            return;
+        }
+        
+        // Lines were added while the save ran; merge the unsaved lines into them
+        for (BillItem item : unsaved.getItems()) {
+            bill.addItem(new BillItem(item));
+        }
+        currentBill.setValue(bill);
     }
 
     /**
-     * Get recent bills
-     * @param limit Number of bills to retrieve
-     * @return List of recent bills
+     * Render the current bill as a PDF on the renderer thread. The result is
+     * published through getGeneratedPdf().
+     * @return false if the bill has no items, so nothing was started
      */
-    public List<Bill> getRecentBills(int limit) {
-        return billRepository.getRecentBills(limit);
+    public boolean generatePdf() {
+        Bill bill = currentBill.getValue();
+        
+        if (bill == null || bill.getItems().isEmpty()) {
+            return false;
+        }
+        
+        tasks.add(pdfGenerator.generateBillPdfAsync(bill, generatedPdf::postValue));
+        return true;
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        tasks.cancelAll();
     }
 }
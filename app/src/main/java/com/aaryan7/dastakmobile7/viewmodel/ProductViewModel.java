@@ -1,47 +1,120 @@
 package com.aaryan7.dastakmobile7.viewmodel;
 
 import android.app.Application;
+import android.net.Uri;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.aaryan7.dastakmobile7.models.Product;
+import com.aaryan7.dastakmobile7.repository.ProductImporter;
 import com.aaryan7.dastakmobile7.repository.ProductRepository;
+import com.aaryan7.dastakmobile7.utils.TaskTracker;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ViewModel for Product operations
  */
 public class ProductViewModel extends AndroidViewModel {
+    // Wait for a pause in typing before searching
+    private static final long SEARCH_DELAY_MILLIS = 150;
+    private static final int SEARCH_LIMIT = 200;
+    
     private ProductRepository repository;
-    private MutableLiveData<List<Product>> allProducts;
+    private LiveData<List<Product>> allProducts;
+    private MediatorLiveData<List<Product>> products;
     private MutableLiveData<Boolean> operationStatus;
+    private final MutableLiveData<ProductImporter.Status> importStatus = new MutableLiveData<>();
+    private final TaskTracker tasks = new TaskTracker();
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::search;
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+    private String searchQuery = "";
 
     public ProductViewModel(@NonNull Application application) {
         super(application);
         repository = new ProductRepository(application);
-        allProducts = new MutableLiveData<>();
+        // Re-queried whenever products are written, from this screen or any other
+        allProducts = repository.observeAllProducts();
         operationStatus = new MutableLiveData<>();
-        loadProducts();
+        
+        // Show all products, or search again when products change under a search
+        products = new MediatorLiveData<>();
+        products.addSource(allProducts, all -> {
+            if (searchQuery.isEmpty()) {
+                products.setValue(all);
+            } else {
+                search();
+            }
+        });
     }
 
     /**
-     * Load all products from repository
+     * Get all products as LiveData
+     * @return LiveData of product list
      */
-    private void loadProducts() {
-        List<Product> products = repository.getAllProducts();
-        allProducts.setValue(products);
+    public LiveData<List<Product>> getAllProducts() {
+        return allProducts;
     }
 
     /**
-     * Get all products as LiveData
+     * Get the products to list: all of them, or the matches of the search query
      * @return LiveData of product list
      */
-    public LiveData<List<Product>> getAllProducts() {
-        return allProducts;
+    public LiveData<List<Product>> getProducts() {
+        return products;
+    }
+
+    /**
+     * Filter the product list by name. The search runs in the background
+     * once typing pauses; an empty query shows all products again.
+     * @param query Text typed by the user
+     */
+    public void setSearchQuery(String query) {
+        String trimmed = query.trim();
+        if (trimmed.equals(searchQuery)) {
+            return;
+        }
+        
+        searchQuery = trimmed;
+        searchHandler.removeCallbacks(searchRunnable);
+        
+        if (trimmed.isEmpty()) {
+            // Drop any search still running
+            searchGeneration.incrementAndGet();
+            List<Product> all = allProducts.getValue();
+            if (all != null) {
+                products.setValue(all);
+            }
+        } else {
+            searchHandler.postDelayed(searchRunnable, SEARCH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Run the current search query. Only the latest search may publish.
+     */
+    private void search() {
+        int generation = searchGeneration.incrementAndGet();
+        tasks.add(repository.searchProductsAsync(searchQuery, SEARCH_LIMIT, false, results -> {
+            if (generation == searchGeneration.get()) {
+                products.postValue(results);
+            }
+        }));
     }
 
     /**
@@ -55,14 +128,14 @@ public class ProductViewModel extends AndroidViewModel {
     /**
      * Add a new product
      * @param name Product name
-     * @param purchasePrice Purchase price
-     * @param sellingPrice Selling price
+     * @param purchasePrice Purchase price in paise
+     * @param sellingPrice Selling price in paise
      * @param quantity Initial quantity
+     * @param sku SKU or barcode, or empty for none
      */
-    public void addProduct(String name, double purchasePrice, double sellingPrice, int quantity) {
-        long id = repository.addProduct(name, purchasePrice, sellingPrice, quantity);
-        operationStatus.setValue(id > 0);
-        loadProducts(); // Refresh product list
+    public void addProduct(String name, long purchasePrice, long sellingPrice, int quantity, String sku) {
+        repository.addProductAsync(name, purchasePrice, sellingPrice, quantity, sku,
+                id -> operationStatus.postValue(id > 0));
     }
 
     /**
@@ -70,9 +143,7 @@ public class ProductViewModel extends AndroidViewModel {
      * @param product Product to update
      */
     public void updateProduct(Product product) {
-        int result = repository.updateProduct(product);
-        operationStatus.setValue(result > 0);
-        loadProducts(); // Refresh product list
+        repository.updateProductAsync(product, result -> operationStatus.postValue(result > 0));
     }
 
     /**
@@ -80,19 +151,63 @@ public class ProductViewModel extends AndroidViewModel {
      * @param product Product to delete
      */
     public void deleteProduct(Product product) {
-        repository.deleteProduct(product);
-        loadProducts(); // Refresh product list
+        repository.deleteProductAsync(product, deleted -> {
+            if (!deleted) {
+                operationStatus.postValue(false);
+            }
+        });
     }
 
     /**
-     * Update product quantity after sale
+     * Update product quantity after sale. The operation status is false
+     * if there is not enough stock.
      * @param productId Product ID
      * @param soldQuantity Quantity sold
-     * @return true if successful, false if not enough stock
      */
-    public boolean updateProductQuantity(long productId, int soldQuantity) {
-        boolean result = repository.updateProductQuantity(productId, soldQuantity);
-        loadProducts(); // Refresh product list
-        return result;
+    public void updateProductQuantity(long productId, int soldQuantity) {
+        repository.updateProductQuantityAsync(productId, soldQuantity, operationStatus::postValue);
+    }
+
+    /**
+     * Get the progress of the running import, and then its outcome
+     * @return LiveData of the import status
+     */
+    public LiveData<ProductImporter.Status> getImportStatus() {
+        return importStatus;
+    }
+
+    /**
+     * Import products from a CSV or TSV file picked by the user. Rows that
+     * cannot be imported are saved next to the generated bills.
+     * @param uri Content URI of the file
+     */
+    public void importProducts(Uri uri) {
+        InputStream in;
+        try {
+            in = getApplication().getContentResolver().openInputStream(uri);
+        } catch (FileNotFoundException | SecurityException e) {
+            in = null;
+        }
+        if (in == null) {
+            importStatus.setValue(new ProductImporter.Status(0, 0, 0, null, "Could not open the file", true));
+            return;
+        }
+        
+        File dir = getApplication().getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
+        if (dir == null) {
+            dir = getApplication().getFilesDir();
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        File rejectedFile = new File(new File(dir, "DastakMobile7"), "rejected_products_" + stamp + ".csv");
+        
+        importStatus.setValue(new ProductImporter.Status(0, 0, 0, null, null, false));
+        tasks.add(repository.importProductsAsync(in, rejectedFile, importStatus::postValue, importStatus::postValue));
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        searchHandler.removeCallbacks(searchRunnable);
+        tasks.cancelAll();
     }
 }
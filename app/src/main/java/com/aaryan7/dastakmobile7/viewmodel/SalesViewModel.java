@@ -7,102 +7,118 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import com.aaryan7.dastakmobile7.models.Sales;
+import com.aaryan7.dastakmobile7.database.InvalidationTracker;
+import com.aaryan7.dastakmobile7.models.SalesSeries;
+import com.aaryan7.dastakmobile7.models.SalesSummary;
 import com.aaryan7.dastakmobile7.repository.SalesRepository;
+import com.aaryan7.dastakmobile7.utils.DateRangeUtils;
+import com.aaryan7.dastakmobile7.utils.TaskTracker;
 
-import java.util.Calendar;
+import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ViewModel for Sales and Profit Analysis
  */
 public class SalesViewModel extends AndroidViewModel {
     private SalesRepository repository;
-    private MutableLiveData<List<Sales>> salesData;
-    private MutableLiveData<Double> totalSales;
-    private MutableLiveData<Double> totalProfit;
+    private MutableLiveData<SalesSummary> salesSummary;
     private MutableLiveData<Integer> selectedPeriod; // 0: Day, 1: Week, 2: Month, 3: Year
+    private MutableLiveData<SalesSeries> chartSeries;
+    private int chartBucketSize = DateRangeUtils.DAY;
+    private int chartBucketCount = 7;
+    private final AtomicInteger salesLoadGeneration = new AtomicInteger();
+    private final AtomicInteger chartLoadGeneration = new AtomicInteger();
+    private final TaskTracker tasks = new TaskTracker();
+    private final InvalidationTracker.Observer salesObserver = tables -> refresh();
+    
+    // Summaries already loaded per period, valid while neither the data
+    // version nor the current day changes
+    private final Map<Integer, SalesSummary> summaryCache = new ConcurrentHashMap<>();
+    private volatile long loadedVersion;
+    private volatile long loadedDay;
 
     public SalesViewModel(@NonNull Application application) {
         super(application);
         repository = new SalesRepository(application);
-        salesData = new MutableLiveData<>();
-        totalSales = new MutableLiveData<>(0.0);
-        totalProfit = new MutableLiveData<>(0.0);
+        salesSummary = new MutableLiveData<>(new SalesSummary(0, 0, 0, 0));
         selectedPeriod = new MutableLiveData<>(0); // Default to Day
-        loadSalesData();
+        chartSeries = new MutableLiveData<>();
+        refresh();
+        
+        // Reload whenever sales are written, e.g. by a bill saved on the billing screen
+        repository.addSalesObserver(salesObserver);
     }
 
     /**
-     * Load sales data based on selected period
+     * Load the sales summary of the selected period from the daily rollup
      */
     private void loadSalesData() {
-        Date currentDate = new Date();
-        List<Sales> data;
+        // Only the latest request may publish, so a slow year query cannot
+        // overwrite the day that was selected after it
+        int generation = salesLoadGeneration.incrementAndGet();
+        int period = selectedPeriod.getValue();
         
-        switch (selectedPeriod.getValue()) {
-            case 1: // Week
-                data = repository.getSalesForWeek(currentDate);
-                break;
-            case 2: // Month
-                data = repository.getSalesForMonth(currentDate);
-                break;
-            case 3: // Year
-                data = repository.getSalesForYear(currentDate);
-                break;
-            case 0: // Day (default)
-            default:
-                data = repository.getSalesForDay(currentDate);
-                break;
+        SalesSummary cached = summaryCache.get(period);
+        if (cached != null) {
+            salesSummary.setValue(cached);
+            return;
         }
         
-        salesData.setValue(data);
-        calculateTotals(data);
-    }
-
-    /**
-     * Calculate total sales and profit
-     * @param data Sales data list
-     */
-    private void calculateTotals(List<Sales> data) {
-        double salesAmount = repository.getTotalSalesAmount(data);
-        double profitAmount = repository.getTotalProfit(data);
+        long version = loadedVersion;
+        long[] range = DateRangeUtils.getRange(period, new Date());
         
-        totalSales.setValue(salesAmount);
-        totalProfit.setValue(profitAmount);
+        // Period ranges start and end at local midnight, so whole rollup days cover them
+        tasks.add(repository.getDailySalesSummaryAsync(range, summary -> {
+            if (summary == null) {
+                return;
+            }
+            if (version == loadedVersion) {
+                summaryCache.put(period, summary);
+            }
+            if (generation == salesLoadGeneration.get()) {
+                salesSummary.postValue(summary);
+            }
+        }));
     }
 
     /**
-     * Get sales data as LiveData
-     * @return LiveData of sales data list
+     * Get count, totals and average of the selected period as LiveData
+     * @return LiveData of the sales summary
      */
-    public LiveData<List<Sales>> getSalesData() {
-        return salesData;
+    public LiveData<SalesSummary> getSalesSummary() {
+        return salesSummary;
     }
 
     /**
-     * Get total sales as LiveData
-     * @return LiveData of total sales amount
+     * Get selected period as LiveData
+     * @return LiveData of selected period
      */
-    public LiveData<Double> getTotalSales() {
-        return totalSales;
+    public LiveData<Integer> getSelectedPeriod() {
+        return selectedPeriod;
     }
 
     /**
-     * Get total profit as LiveData
-     * @return LiveData of total profit amount
+     * Get sales and profit per chart bucket as LiveData
+     * @return LiveData of the chart series, oldest bucket first
      */
-    public LiveData<Double> getTotalProfit() {
-        return totalProfit;
+    public LiveData<SalesSeries> getChartSeries() {
+        return chartSeries;
     }
 
     /**
-     * Get selected period as LiveData
-     * @return LiveData of selected period
+     * Set the chart window and reload it, e.g. 24 hours, 7 days or 12 months
+     * @param bucketSize Bucket size (DateRangeUtils.HOUR, DAY, WEEK, or MONTH)
+     * @param count Number of buckets ending with the current one
      */
-    public LiveData<Integer> getSelectedPeriod() {
-        return selectedPeriod;
+    public void setChartWindow(int bucketSize, int count) {
+        chartBucketSize = bucketSize;
+        chartBucketCount = count;
+        loadChartData();
     }
 
     /**
@@ -110,77 +126,86 @@ public class SalesViewModel extends AndroidViewModel {
      * @param period Period to select (0: Day, 1: Week, 2: Month, 3: Year)
      */
     public void setSelectedPeriod(int period) {
+        Integer current = selectedPeriod.getValue();
+        if (current != null && current == period) {
+            return;
+        }
+        
         selectedPeriod.setValue(period);
         loadSalesData();
     }
 
     /**
-     * Add sales data from a bill
-     * @param amount Bill amount
-     * @param profit Bill profit
+     * Reload the selected period and the charts
      */
-    public void addSalesData(double amount, double profit) {
-        Sales sales = new Sales(new Date(), amount, profit);
-        repository.addSales(sales);
-        loadSalesData(); // Reload data to reflect changes
+    public void refresh() {
+        loadedVersion = repository.getDataVersion();
+        loadedDay = DateRangeUtils.startOfDay(new Date()).getTimeInMillis();
+        summaryCache.clear();
+        loadSalesData();
+        loadChartData();
     }
 
     /**
-     * Get sales data for chart (last 7 days)
-     * @return Array of sales amounts for last 7 days
+     * Reload only if sales were written or the day changed since the last load
      */
-    public double[] getSalesDataForChart() {
-        double[] data = new double[7];
-        Calendar calendar = Calendar.getInstance();
-        
-        // Get data for last 7 days
-        for (int i = 6; i >= 0; i--) {
-            calendar.setTime(new Date());
-            calendar.add(Calendar.DAY_OF_MONTH, -i);
-            
-            List<Sales> dayData = repository.getSalesForDay(calendar.getTime());
-            data[6 - i] = repository.getTotalSalesAmount(dayData);
+    public void refreshIfStale() {
+        if (repository.getDataVersion() != loadedVersion
+                || DateRangeUtils.startOfDay(new Date()).getTimeInMillis() != loadedDay) {
+            refresh();
         }
-        
-        return data;
     }
 
     /**
-     * Get profit data for chart (last 7 days)
-     * @return Array of profit amounts for last 7 days
+     * Load the chart window with one grouped query in the background
      */
-    public double[] getProfitDataForChart() {
-        double[] data = new double[7];
-        Calendar calendar = Calendar.getInstance();
-        
-        // Get data for last 7 days
-        for (int i = 6; i >= 0; i--) {
-            calendar.setTime(new Date());
-            calendar.add(Calendar.DAY_OF_MONTH, -i);
-            
-            List<Sales> dayData = repository.getSalesForDay(calendar.getTime());
-            data[6 - i] = repository.getTotalProfit(dayData);
-        }
+    private void loadChartData() {
+        int generation = chartLoadGeneration.incrementAndGet();
         
-        return data;
+        tasks.add(repository.getSalesSeriesAsync(chartBucketSize, new Date(), chartBucketCount, series -> {
+            if (series != null && generation == chartLoadGeneration.get()) {
+                chartSeries.postValue(series);
+            }
+        }));
     }
 
     /**
-     * Get day labels for chart (last 7 days)
-     * @return Array of day labels for last 7 days
+     * Get axis labels for a chart series
+     * @param series Chart series
+     * @return One label per bucket: hour, day of month, week start, or month
      */
-    public String[] getDayLabelsForChart() {
-        String[] labels = new String[7];
-        Calendar calendar = Calendar.getInstance();
+    public String[] getChartLabels(SalesSeries series) {
+        String pattern;
+        switch (series.getBucketSize()) {
+            case DateRangeUtils.HOUR:
+                pattern = "HH";
+                break;
+            case DateRangeUtils.WEEK:
+                pattern = "d MMM";
+                break;
+            case DateRangeUtils.MONTH:
+                pattern = "MMM";
+                break;
+            case DateRangeUtils.DAY:
+            default:
+                pattern = "d";
+                break;
+        }
         
-        // Get labels for last 7 days
-        for (int i = 6; i >= 0; i--) {
-            calendar.setTime(new Date());
-            calendar.add(Calendar.DAY_OF_MONTH, -i);
-            
-            labels[6 - i] = String.valueOf(calendar.get(Calendar.DAY_OF_MONTH));
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.getDefault());
+        long[] bucketStarts = series.getBucketStarts();
+        String[] labels = new String[bucketStarts.length];
+        for (int i = 0; i < bucketStarts.length; i++) {
+            labels[i] = format.format(new Date(bucketStarts[i]));
         }
         
         return labels;
     }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        repository.removeSalesObserver(salesObserver);
+        tasks.cancelAll();
+    }
 }
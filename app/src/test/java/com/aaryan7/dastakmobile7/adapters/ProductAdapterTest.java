@@ -0,0 +1,136 @@
+package com.aaryan7.dastakmobile7.adapters;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import com.aaryan7.dastakmobile7.models.Product;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the product list rebinds only what changed
+ */
+public class ProductAdapterTest {
+    private static final int PRODUCT_COUNT = 5000;
+
+    @Test
+    public void saleRebindsOnlyTheQuantityOfOneRow() {
+        List<Product> oldList = new ArrayList<>(PRODUCT_COUNT);
+        for (int i = 1; i <= PRODUCT_COUNT; i++) {
+            Product product = new Product("Product " + i, 1000, 1250, 100);
+            product.setId(i);
+            oldList.add(product);
+        }
+
+        // One product's stock changed, as after a sale
+        List<Product> newList = new ArrayList<>(PRODUCT_COUNT);
+        for (Product product : oldList) {
+            newList.add(new Product(product));
+        }
+        int soldIndex = PRODUCT_COUNT / 2;
+        newList.get(soldIndex).setQuantity(newList.get(soldIndex).getQuantity() - 1);
+
+        List<String> updates = new ArrayList<>();
+        diff(oldList, newList).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates.add(count + " inserted at " + position);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates.add(count + " removed at " + position);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates.add("moved " + fromPosition + " to " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                updates.add(count + " changed at " + position + " with payload " + payload);
+            }
+        });
+
+        assertEquals(1, updates.size());
+        assertEquals("1 changed at " + soldIndex + " with payload " + ProductAdapter.CHANGED_QUANTITY,
+                updates.get(0));
+    }
+
+    @Test
+    public void unchangedListGivesNoUpdates() {
+        List<Product> oldList = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            Product product = new Product("Product " + i, 1000, 1250, 100);
+            product.setId(i);
+            oldList.add(product);
+        }
+        List<Product> newList = new ArrayList<>();
+        for (Product product : oldList) {
+            newList.add(new Product(product));
+        }
+
+        int[] updates = new int[1];
+        diff(oldList, newList).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates[0]++;
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates[0]++;
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates[0]++;
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                updates[0]++;
+            }
+        });
+        assertEquals(0, updates[0]);
+    }
+
+    /**
+     * Diff two product lists with the adapter's item callback
+     */
+    private static DiffUtil.DiffResult diff(List<Product> oldList, List<Product> newList) {
+        DiffUtil.ItemCallback<Product> itemCallback = ProductAdapter.DIFF_CALLBACK;
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldList.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newList.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return itemCallback.areItemsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return itemCallback.areContentsTheSame(oldList.get(oldPosition), newList.get(newPosition));
+            }
+
+            @Override
+            public Object getChangePayload(int oldPosition, int newPosition) {
+                return itemCallback.getChangePayload(oldList.get(oldPosition), newList.get(newPosition));
+            }
+        }, false);
+    }
+}
@@ -0,0 +1,372 @@
+package com.aaryan7.dastakmobile7.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Seeds a version 1 database file and upgrades it, one step at a time and
+ * through DatabaseHelper as the app does on start, checking that the shop
+ * data survives
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class MigrationsTest {
+    private static final String SALE_DATE = "2024-03-05 10:15:00";
+    private static final int ITEM_COUNT = 7;
+    private static final int LATEST_VERSION = 9;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private SQLiteDatabase db;
+
+    @Before
+    public void createVersion1Database() {
+        context = RuntimeEnvironment.getApplication();
+        File file = context.getDatabasePath(DatabaseHelper.DATABASE_NAME);
+        file.getParentFile().mkdirs();
+        SQLiteDatabase seed = SQLiteDatabase.openOrCreateDatabase(file, null);
+
+        // Schema as shipped in version 1
+        seed.execSQL("CREATE TABLE products(id INTEGER PRIMARY KEY AUTOINCREMENT,name TEXT,"
+                + "purchase_price REAL,selling_price REAL,quantity INTEGER,profit REAL)");
+        seed.execSQL("CREATE TABLE bills(id INTEGER PRIMARY KEY AUTOINCREMENT,date TEXT,"
+                + "total REAL,discount REAL,final_amount REAL)");
+        seed.execSQL("CREATE TABLE bill_items(id INTEGER PRIMARY KEY AUTOINCREMENT,bill_id INTEGER,"
+                + "product_id INTEGER,quantity INTEGER,price REAL,subtotal REAL,"
+                + "FOREIGN KEY(bill_id) REFERENCES bills(id),"
+                + "FOREIGN KEY(product_id) REFERENCES products(id))");
+        seed.execSQL("CREATE TABLE sales(id INTEGER PRIMARY KEY AUTOINCREMENT,date TEXT,amount REAL,profit REAL)");
+
+        seed.execSQL("INSERT INTO products VALUES (1, 'Tea 250g', 40.5, 55.25, 10, 14.75)");
+        seed.execSQL("INSERT INTO products VALUES (2, 'Sugar', 30, 38.1, 5, 8.1)");
+        seed.execSQL("INSERT INTO bills VALUES (1, '" + SALE_DATE + "', 93.35, 3.35, 90.0)");
+        seed.execSQL("INSERT INTO bills VALUES (2, 'not a date', 10, 0, 10)");
+        // Items 1-6 alternate between the two products; item 7 is of a deleted product
+        for (int id = 1; id < ITEM_COUNT; id++) {
+            seed.execSQL("INSERT INTO bill_items VALUES (?, 1, ?, 1, 38.1, 38.1)",
+                    new Object[] { id, id % 2 == 0 ? 2 : 1 });
+        }
+        seed.execSQL("INSERT INTO bill_items VALUES (" + ITEM_COUNT + ", 2, 99, 2, 5, 10)");
+        seed.execSQL("INSERT INTO sales VALUES (1, '" + SALE_DATE + "', 90.0, 22.85)");
+        seed.execSQL("INSERT INTO sales VALUES (2, NULL, 10, 2)");
+        seed.setVersion(1);
+        seed.close();
+    }
+
+    @After
+    public void closeDatabase() {
+        if (helper != null) {
+            helper.close();
+        }
+        if (db != null && db.isOpen()) {
+            db.close();
+        }
+        context.deleteDatabase(DatabaseHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void openingThroughHelperUpgradesToLatest() {
+        db = openThroughHelper();
+
+        assertEquals(LATEST_VERSION, db.getVersion());
+        assertRowCounts();
+        assertEquals(9000, longValue("SELECT final_amount FROM bills WHERE id = 1"));
+        assertEquals(1, longValue("SELECT docid FROM products_fts WHERE products_fts MATCH 'tea'"));
+        // The snapshot backfill waits for the app to start it
+        assertEquals(ITEM_COUNT, longValue("SELECT end_id FROM migration_backfills"
+                + " WHERE name = 'bill_item_snapshot' AND done = 0"));
+    }
+
+    @Test
+    public void upgradeStepsKeepRows() throws Exception {
+        // Steps run one at a time on the file, so each version can be inspected
+        db = openFile();
+        long saleDate = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).parse(SALE_DATE).getTime();
+
+        migrate(1, 2);
+        assertRowCounts();
+        assertEquals(saleDate, longValue("SELECT date FROM bills WHERE id = 1"));
+        assertEquals(saleDate, longValue("SELECT date FROM sales WHERE id = 1"));
+        // Unreadable dates are kept out of current reports
+        assertEquals(Migrations.UNREADABLE_DATE, longValue("SELECT date FROM bills WHERE id = 2"));
+        assertEquals(Migrations.UNREADABLE_DATE, longValue("SELECT date FROM sales WHERE id = 2"));
+        assertEquals(93.35, doubleValue("SELECT total FROM bills WHERE id = 1"), 0);
+        assertTrue(hasObject("index", "idx_bills_date"));
+        assertTrue(hasObject("index", "idx_sales_date"));
+
+        migrate(2, 3);
+        assertRowCounts();
+        assertTrue(hasObject("table", MigrationRunner.TABLE_BACKFILLS));
+        assertTrue(columnExists(MigrationRunner.TABLE_BACKFILLS, "end_id"));
+
+        migrate(3, 4);
+        assertRowCounts();
+        assertEquals(0, longValue("SELECT TOTAL(item_count) FROM sales"));
+        assertEquals(2, count("daily_sales_summary"));
+        assertEquals(90.0, doubleValue("SELECT amount FROM daily_sales_summary WHERE day_start = "
+                + startOfDay(saleDate)), 1e-9);
+
+        migrate(4, 5);
+        assertRowCounts();
+        assertTrue(hasObject("index", "idx_bill_items_bill_id"));
+        assertTrue(hasObject("index", "idx_bill_items_product_id"));
+
+        migrate(5, 6);
+        assertRowCounts();
+        assertEquals(ITEM_COUNT, longValue("SELECT COUNT(*) FROM bill_items"
+                + " WHERE product_name IS NULL AND purchase_price IS NULL"));
+        assertEquals(0, longValue("SELECT last_id FROM migration_backfills WHERE name = 'bill_item_snapshot'"
+                + " AND done = 0"));
+        // The backfill stops at the last item that existed at the upgrade
+        assertEquals(ITEM_COUNT, longValue("SELECT end_id FROM migration_backfills"
+                + " WHERE name = 'bill_item_snapshot'"));
+
+        migrate(6, 7);
+        assertRowCounts();
+        // The index is rebuilt from the existing products
+        assertEquals(1, longValue("SELECT docid FROM products_fts WHERE products_fts MATCH 'tea'"));
+        assertEquals(2, longValue("SELECT docid FROM products_fts WHERE products_fts MATCH 'sug*'"));
+
+        migrate(7, 8);
+        assertRowCounts();
+        assertEquals(0, longValue("SELECT COUNT(sku) FROM products"));
+        assertTrue(hasObject("index", "idx_products_sku"));
+
+        migrate(8, 9);
+        assertRowCounts();
+        // Rupees become whole paise, rounded to the nearest paisa
+        assertEquals(Arrays.asList(4050L, 5525L, 1475L), longRow("SELECT purchase_price, selling_price, profit"
+                + " FROM products WHERE id = 1"));
+        assertEquals(Arrays.asList(3000L, 3810L, 810L), longRow("SELECT purchase_price, selling_price, profit"
+                + " FROM products WHERE id = 2"));
+        assertEquals(Arrays.asList(9335L, 335L, 9000L), longRow("SELECT total, discount, final_amount"
+                + " FROM bills WHERE id = 1"));
+        assertEquals(Arrays.asList(3810L, 3810L), longRow("SELECT price, subtotal FROM bill_items WHERE id = 1"));
+        assertEquals(Arrays.asList(9000L, 2285L), longRow("SELECT amount, profit FROM sales WHERE id = 1"));
+        assertEquals("integer", stringValue("SELECT typeof(total) FROM bills WHERE id = 1"));
+        assertEquals(Arrays.asList(9000L, 2285L), longRow("SELECT amount, profit FROM daily_sales_summary"
+                + " WHERE day_start = " + startOfDay(saleDate)));
+        assertEquals(saleDate, longValue("SELECT date FROM bills WHERE id = 1"));
+        for (String index : new String[] { "idx_bills_date", "idx_sales_date", "idx_bill_items_bill_id",
+                "idx_bill_items_product_id", "idx_products_sku" }) {
+            assertTrue(index, hasObject("index", index));
+        }
+
+        // The search triggers were recreated on the rebuilt products table
+        db.execSQL("INSERT INTO products (name) VALUES ('Green tea')");
+        assertEquals(2, count("products_fts WHERE products_fts MATCH 'tea'"));
+        db.execSQL("UPDATE products SET name = 'Jaggery' WHERE id = 2");
+        assertEquals(0, count("products_fts WHERE products_fts MATCH 'sugar'"));
+        assertEquals(1, count("products_fts WHERE products_fts MATCH 'jaggery'"));
+    }
+
+    @Test
+    public void backfillCopiesProductSnapshot() {
+        db = openThroughHelper();
+        helper.runPendingBackfills();
+
+        assertEquals("Tea 250g", stringValue("SELECT product_name FROM bill_items WHERE id = 1"));
+        assertEquals(3000, longValue("SELECT purchase_price FROM bill_items WHERE id = 2"));
+        assertNull(stringValue("SELECT product_name FROM bill_items WHERE id = " + ITEM_COUNT));
+        assertEquals(1, longValue("SELECT done FROM migration_backfills WHERE name = 'bill_item_snapshot'"));
+    }
+
+    @Test
+    public void interruptedBackfillResumes() {
+        db = openThroughHelper();
+
+        // Stand-in for the process being killed while the third chunk runs
+        Backfill dying = new Backfill(Migrations.BACKFILL_BILL_ITEM_SNAPSHOT.getName()) {
+            private int chunks;
+
+            @Override
+            public long runChunk(SQLiteDatabase db, long afterId, long endId, int chunkSize) {
+                long lastId = Migrations.BACKFILL_BILL_ITEM_SNAPSHOT.runChunk(db, afterId, endId, chunkSize);
+                if (++chunks == 3) {
+                    throw new IllegalStateException("killed");
+                }
+                return lastId;
+            }
+        };
+        try {
+            MigrationRunner.runPendingBackfills(db, Collections.singletonList(dying), 2);
+            fail("Backfill should have stopped");
+        } catch (IllegalStateException expected) {
+            // Two chunks were committed, the third rolled back
+        }
+        assertEquals(4, longValue("SELECT last_id FROM migration_backfills WHERE name = 'bill_item_snapshot'"
+                + " AND done = 0"));
+        assertEquals(4, longValue("SELECT COUNT(*) FROM bill_items WHERE product_name IS NOT NULL"));
+
+        MigrationRunner.runPendingBackfills(db, Migrations.BACKFILLS, 2);
+        assertEquals(ITEM_COUNT - 1, longValue("SELECT COUNT(*) FROM bill_items WHERE product_name IS NOT NULL"));
+        assertEquals(1, longValue("SELECT done FROM migration_backfills WHERE name = 'bill_item_snapshot'"));
+
+        // A finished backfill is not run again
+        db.execSQL("UPDATE bill_items SET product_name = NULL WHERE id = 1");
+        MigrationRunner.runPendingBackfills(db, Migrations.BACKFILLS, 2);
+        assertNull(stringValue("SELECT product_name FROM bill_items WHERE id = 1"));
+    }
+
+    @Test
+    public void backfillLeavesBillsSavedAfterUpgrade() {
+        db = openThroughHelper();
+
+        // A bill saved before the backfill ran records the name and cost it was sold at
+        db.execSQL("INSERT INTO bill_items (id, bill_id, product_id, quantity, price, subtotal, product_name,"
+                + " purchase_price) VALUES (8, 2, 1, 1, 5525, 5525, 'Tea 250g (old pack)', 3900)");
+        // Past the recorded bound, so left alone even without a name
+        db.execSQL("INSERT INTO bill_items (id, bill_id, product_id, quantity, price, subtotal)"
+                + " VALUES (9, 2, 1, 1, 5525, 5525)");
+        MigrationRunner.runPendingBackfills(db, Migrations.BACKFILLS, 2);
+
+        assertEquals("Tea 250g", stringValue("SELECT product_name FROM bill_items WHERE id = 1"));
+        assertEquals("Tea 250g (old pack)", stringValue("SELECT product_name FROM bill_items WHERE id = 8"));
+        assertEquals(3900, longValue("SELECT purchase_price FROM bill_items WHERE id = 8"));
+        assertNull(stringValue("SELECT product_name FROM bill_items WHERE id = 9"));
+
+        // A name already filled in before the bound is not overwritten either
+        db.execSQL("UPDATE migration_backfills SET last_id = 0, done = 0");
+        db.execSQL("UPDATE products SET name = 'Tea 500g' WHERE id = 1");
+        MigrationRunner.runPendingBackfills(db, Migrations.BACKFILLS, 2);
+        assertEquals("Tea 250g", stringValue("SELECT product_name FROM bill_items WHERE id = 1"));
+    }
+
+    @Test
+    public void failedUpgradeLeavesVersion1() {
+        // A table left over in the file makes the step to version 4 fail
+        db = openFile();
+        db.execSQL("CREATE TABLE daily_sales_summary(day_start INTEGER PRIMARY KEY)");
+        db.close();
+
+        helper = new DatabaseHelper(context);
+        try {
+            helper.getDatabase();
+            fail("Upgrade to version 4 should have failed");
+        } catch (SQLiteException expected) {
+            // The rollup table already exists
+        }
+
+        // The upgrade transaction rolled back the steps that had succeeded too
+        db = openFile();
+        assertEquals(1, db.getVersion());
+        assertFalse(hasObject("table", MigrationRunner.TABLE_BACKFILLS));
+        assertFalse(hasObject("index", "idx_bills_date"));
+        assertEquals(SALE_DATE, stringValue("SELECT date FROM bills WHERE id = 1"));
+        assertFalse(columnExists("sales", "item_count"));
+        assertRowCounts();
+
+        // The next start upgrades from version 1 again
+        db.execSQL("DROP TABLE daily_sales_summary");
+        db.close();
+        db = helper.getDatabase();
+        assertEquals(LATEST_VERSION, db.getVersion());
+        assertRowCounts();
+    }
+
+    private SQLiteDatabase openFile() {
+        return SQLiteDatabase.openDatabase(context.getDatabasePath(DatabaseHelper.DATABASE_NAME).getPath(),
+                null, SQLiteDatabase.OPEN_READWRITE);
+    }
+
+    private SQLiteDatabase openThroughHelper() {
+        helper = new DatabaseHelper(context);
+        return helper.getDatabase();
+    }
+
+    private void migrate(int from, int to) {
+        MigrationRunner.migrate(db, from, to, Migrations.ALL);
+    }
+
+    private void assertRowCounts() {
+        assertEquals(2, count("products"));
+        assertEquals(2, count("bills"));
+        assertEquals(ITEM_COUNT, count("bill_items"));
+        assertEquals(2, count("sales"));
+    }
+
+    private long count(String table) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + table, null);
+    }
+
+    private long longValue(String sql) {
+        return DatabaseUtils.longForQuery(db, sql, null);
+    }
+
+    private double doubleValue(String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            assertTrue(sql, cursor.moveToFirst());
+            return cursor.getDouble(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private String stringValue(String sql) {
+        return DatabaseUtils.stringForQuery(db, sql, null);
+    }
+
+    private List<Long> longRow(String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            assertTrue(sql, cursor.moveToFirst());
+            Long[] values = new Long[cursor.getColumnCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = cursor.getLong(i);
+            }
+            return Arrays.asList(values);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean hasObject(String type, String name) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = ? AND name = ?",
+                new String[] { type, name }) > 0;
+    }
+
+    private boolean columnExists(String table, String column) {
+        Cursor cursor = db.rawQuery("SELECT * FROM " + table + " LIMIT 0", null);
+        try {
+            return cursor.getColumnIndex(column) >= 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long startOfDay(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+}
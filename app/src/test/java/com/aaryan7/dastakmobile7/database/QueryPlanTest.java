@@ -0,0 +1,189 @@
+package com.aaryan7.dastakmobile7.database;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.SQLiteMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on the filtered queries issued by the repositories
+ * and DatabaseHelper, as they appear there, against the current schema. A
+ * query that stops using its index fails the build.
+ */
+@RunWith(RobolectricTestRunner.class)
+@SQLiteMode(SQLiteMode.Mode.NATIVE)
+public class QueryPlanTest {
+    // A plan step that reads a whole table, by name or by the aliases used below. Newer
+    // SQLite versions print only the alias. "SCAN t USING INDEX" walks an index in order
+    // and is fine.
+    private static final Pattern FULL_SCAN = Pattern.compile(
+            "^SCAN (TABLE )?(products|bills|bill_items|sales|daily_sales_summary|b|i|p)\\b(?!.*USING)");
+    // Stands for a lookup by INTEGER PRIMARY KEY, which needs no separate index
+    private static final String ROW_ID = "rowid";
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void createSchema() {
+        db = SQLiteDatabase.create(null);
+        DatabaseHelper.getInstance(RuntimeEnvironment.getApplication()).onCreate(db);
+    }
+
+    @After
+    public void closeDatabase() {
+        db.close();
+    }
+
+    @Test
+    public void billItemQueriesUseBillIndex() {
+        // BillRepository.getBillItems
+        assertUsesIndex("idx_bill_items_bill_id",
+                "SELECT i.id, i.product_id, i.product_name, i.quantity, i.price, i.purchase_price, i.subtotal"
+                        + " FROM bill_items i WHERE i.bill_id = ? ORDER BY i.id");
+        // BillRepository cost of a bill
+        assertUsesIndex("idx_bill_items_bill_id",
+                "SELECT IFNULL(SUM(quantity * purchase_price), 0) FROM bill_items WHERE bill_id = ?");
+        // BillRepository.getBill
+        assertUsesIndex("idx_bill_items_bill_id",
+                "SELECT b.id, b.date, b.total, b.discount, b.final_amount, i.id, i.product_id, i.product_name,"
+                        + " i.quantity, i.price, i.purchase_price, i.subtotal FROM (SELECT * FROM bills WHERE id = ?) b"
+                        + " LEFT JOIN bill_items i ON i.bill_id = b.id ORDER BY b.date DESC, b.id DESC, i.id");
+    }
+
+    @Test
+    public void productSalesQueryUsesProductIndex() {
+        assertUsesIndex("idx_bill_items_product_id",
+                "SELECT IFNULL(SUM(quantity), 0), IFNULL(SUM(subtotal), 0) FROM bill_items WHERE product_id = ?");
+    }
+
+    @Test
+    public void billDateRangesUseDateIndex() {
+        // BillRepository.getBillsBefore and getBillsAfter
+        assertUsesIndex("idx_bills_date",
+                "SELECT id, date, total, discount, final_amount FROM bills WHERE date <= ? AND (date < ? OR id < ?)"
+                        + " ORDER BY date DESC, id DESC LIMIT 50");
+        assertUsesIndex("idx_bills_date",
+                "SELECT id, date, total, discount, final_amount FROM bills WHERE date >= ? AND (date > ? OR id > ?)"
+                        + " ORDER BY date ASC, id ASC LIMIT 50");
+        // BillRepository.streamAllBills, one page with its items
+        String streamPage = "SELECT b.id, b.date, b.total, b.discount, b.final_amount, i.id, i.product_id,"
+                + " i.product_name, i.quantity, i.price, i.purchase_price, i.subtotal FROM (SELECT * FROM bills"
+                + " WHERE date <= ? AND (date < ? OR id < ?) ORDER BY date DESC, id DESC LIMIT 200) b"
+                + " LEFT JOIN bill_items i ON i.bill_id = b.id ORDER BY b.date DESC, b.id DESC, i.id";
+        assertUsesIndex("idx_bills_date", streamPage);
+        assertUsesIndex("idx_bill_items_bill_id", streamPage);
+        // LedgerExporter
+        assertUsesIndex("idx_bills_date",
+                "SELECT id, date, total, discount, final_amount FROM bills"
+                        + " WHERE date >= ? AND date < ? AND (date > ? OR (date = ? AND id > ?))"
+                        + " ORDER BY date, id LIMIT 1000");
+        String ledgerItems = "SELECT i.id, b.id, b.date, i.product_id, i.product_name, i.quantity, i.price,"
+                + " i.purchase_price, i.subtotal FROM bills b JOIN bill_items i ON i.bill_id = b.id"
+                + " WHERE b.date >= ? AND b.date < ?"
+                + " AND (b.date > ? OR (b.date = ? AND (b.id > ? OR (b.id = ? AND i.id > ?))))"
+                + " ORDER BY b.date, b.id, i.id LIMIT 1000";
+        assertUsesIndex("idx_bills_date", ledgerItems);
+        assertUsesIndex("idx_bill_items_bill_id", ledgerItems);
+    }
+
+    @Test
+    public void salesDateRangesUseDateIndex() {
+        // SalesRepository
+        assertUsesIndex("idx_sales_date", "SELECT * FROM sales WHERE date >= ? AND date < ? ORDER BY date DESC");
+        assertUsesIndex("idx_sales_date",
+                "SELECT CASE WHEN date < 3600000 THEN 0 ELSE 1 END AS bucket, SUM(amount), SUM(profit) FROM sales"
+                        + " WHERE date >= ? AND date < ? GROUP BY bucket");
+        // LedgerExporter
+        assertUsesIndex("idx_sales_date",
+                "SELECT id, date, amount, profit, item_count FROM sales"
+                        + " WHERE date >= ? AND date < ? AND (date > ? OR (date = ? AND id > ?))"
+                        + " ORDER BY date, id LIMIT 1000");
+    }
+
+    @Test
+    public void keyLookupsUsePrimaryKey() {
+        // DatabaseHelper stock decrement
+        assertUsesIndex(ROW_ID,
+                "UPDATE products SET quantity = quantity - ? WHERE id = ? AND quantity >= ?");
+        // SalesRepository daily rollup
+        assertUsesIndex(ROW_ID,
+                "SELECT IFNULL(SUM(bill_count), 0), IFNULL(SUM(amount), 0), IFNULL(SUM(profit), 0)"
+                        + " FROM daily_sales_summary WHERE day_start >= ? AND day_start < ?");
+        assertUsesIndex(ROW_ID,
+                "UPDATE daily_sales_summary SET amount = amount + ?, profit = profit + ?,"
+                        + " bill_count = bill_count + 1, item_count = item_count + ? WHERE day_start = ?");
+        // Migrations.BACKFILL_BILL_ITEM_SNAPSHOT
+        assertUsesIndex(ROW_ID,
+                "UPDATE bill_items SET product_name = (SELECT name FROM products"
+                        + " WHERE products.id = bill_items.product_id) WHERE id > ? AND id <= ? AND product_name IS NULL");
+    }
+
+    @Test
+    public void productSearchDoesNotScanProducts() {
+        // DatabaseHelper product search
+        assertNoFullScan(plan("SELECT p.id FROM products_fts JOIN products p ON p.id = products_fts.docid"
+                + " WHERE products_fts MATCH ? AND (CAST(? AS INTEGER) = 0 OR p.quantity > 0)"
+                + " ORDER BY p.name LIKE ? ESCAPE '\\' DESC, length(p.name), p.name COLLATE NOCASE LIMIT 20"));
+        assertUsesIndex("idx_products_sku", "SELECT id FROM products WHERE sku = ?");
+    }
+
+    /**
+     * Assert that a query reads through an index and scans no table
+     * @param index Index name, or ROW_ID for a row ID lookup
+     * @param sql Query as issued by the app
+     */
+    private void assertUsesIndex(String index, String sql) {
+        List<String> plan = plan(sql);
+        assertNoFullScan(plan);
+
+        Pattern usesIndex = Pattern.compile(index.equals(ROW_ID) ? "USING INTEGER PRIMARY KEY"
+                : "USING (COVERING )?INDEX " + Pattern.quote(index) + "\\b");
+        boolean found = false;
+        for (String step : plan) {
+            found |= usesIndex.matcher(step).find();
+        }
+        assertTrue("Expected " + index + " in " + plan + " for: " + sql, found);
+    }
+
+    private static void assertNoFullScan(List<String> plan) {
+        for (String step : plan) {
+            assertFalse("Full scan: " + step, FULL_SCAN.matcher(step).find());
+        }
+    }
+
+    /**
+     * Get the plan of a query, with every parameter bound to 0
+     * @param sql Query with ? parameters
+     * @return Detail text of each plan step
+     */
+    private List<String> plan(String sql) {
+        String[] args = new String[sql.length() - sql.replace("?", "").length()];
+        Arrays.fill(args, "0");
+
+        List<String> steps = new ArrayList<>();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                steps.add(cursor.getString(detailIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return steps;
+    }
+}
@@ -0,0 +1,88 @@
+package com.aaryan7.dastakmobile7.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the running total, product index and change log of a bill
+ */
+public class BillTest {
+    private static final int OPERATIONS = 500;
+
+    /**
+     * Add, merge and remove random lines, and check after every few changes
+     * that the running total and product index match a full recount, and
+     * that replaying the recorded changes onto an earlier copy of the lines
+     * gives the current lines
+     */
+    @Test
+    public void randomChangesKeepTotalIndexAndReplayInStep() {
+        Random random = new Random(42);
+        Bill bill = new Bill();
+        List<BillItem> mirror = new ArrayList<>();
+        int mirrorRevision = bill.getRevision();
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            if (!bill.getItems().isEmpty() && random.nextInt(4) == 0) {
+                bill.removeItem(random.nextInt(bill.getItems().size()));
+            } else {
+                long productId = random.nextInt(20);
+                bill.addItem(new BillItem(productId, "Item " + productId, 1 + random.nextInt(3), 100 + productId));
+            }
+
+            // Catch up every few changes, as a list observing the bill would
+            if (random.nextInt(5) != 0) {
+                continue;
+            }
+            List<Bill.Change> changes = bill.getChangesSince(mirrorRevision);
+            assertNotNull("Changes since revision " + mirrorRevision + " were lost", changes);
+            for (Bill.Change change : changes) {
+                if (change.getType() == Bill.Change.INSERTED) {
+                    mirror.add(change.getPosition(), change.getItem());
+                } else if (change.getType() == Bill.Change.CHANGED) {
+                    mirror.set(change.getPosition(), change.getItem());
+                } else {
+                    mirror.remove(change.getPosition());
+                }
+            }
+            mirrorRevision = bill.getRevision();
+
+            assertEquals("Replayed line count", bill.getItems().size(), mirror.size());
+            long total = 0;
+            for (int position = 0; position < bill.getItems().size(); position++) {
+                BillItem line = bill.getItem(position);
+                BillItem shown = mirror.get(position);
+                total += line.getSubtotal();
+                assertEquals("Line of product " + line.getProductId(),
+                        position, bill.indexOfProduct(line.getProductId()));
+                assertEquals("Product of replayed line " + position, line.getProductId(), shown.getProductId());
+                assertEquals("Quantity of replayed line " + position, line.getQuantity(), shown.getQuantity());
+            }
+            assertEquals("Running total", total, bill.getTotal());
+        }
+    }
+
+    @Test
+    public void addingAProductAgainMergesIntoItsLine() {
+        Bill bill = new Bill();
+        bill.addItem(new BillItem(1, "Tea", 2, 5500));
+        bill.addItem(new BillItem(2, "Sugar", 1, 3800));
+        bill.addItem(new BillItem(1, "Tea", 3, 5500));
+
+        assertEquals(2, bill.getItems().size());
+        assertEquals(0, bill.indexOfProduct(1));
+        assertEquals(5, bill.getItem(0).getQuantity());
+        assertEquals(5 * 5500 + 3800, bill.getTotal());
+
+        bill.removeItem(0);
+        assertEquals(-1, bill.indexOfProduct(1));
+        assertEquals(0, bill.indexOfProduct(2));
+        assertEquals(3800, bill.getTotal());
+    }
+}
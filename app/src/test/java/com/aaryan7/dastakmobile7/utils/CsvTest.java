@@ -0,0 +1,53 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Checks reading and writing of CSV files as exported by spreadsheets
+ */
+public class CsvTest {
+    private static final String[] QUOTED_RECORD = { "Say \"hi\"\nmug", "3" };
+
+    @Test
+    public void readsQuotedFieldsAcrossLines() throws IOException {
+        // Byte order mark, CRLF, quoted delimiters, doubled quotes and a line break inside quotes
+        String text = "\uFEFFname,selling_price\r\n\"Tea, 250g\",\"12.50\"\r\n\"Say \"\"hi\"\"\nmug\",3\r\n";
+        CsvReader reader = new CsvReader(new StringReader(text));
+
+        assertArrayEquals(new String[] { "name", "selling_price" }, reader.readRecord());
+        assertArrayEquals(new String[] { "Tea, 250g", "12.50" }, reader.readRecord());
+        assertArrayEquals(QUOTED_RECORD, reader.readRecord());
+        assertNull(reader.readRecord());
+        assertEquals(3, reader.getLineNumber());
+    }
+
+    @Test
+    public void recognisesTabSeparatedFiles() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("name\tqty\nRice, basmati\t5\n"));
+
+        assertArrayEquals(new String[] { "name", "qty" }, reader.readRecord());
+        assertEquals('\t', reader.getDelimiter());
+        assertArrayEquals(new String[] { "Rice, basmati", "5" }, reader.readRecord());
+    }
+
+    @Test
+    public void writtenRecordsReadBackUnchanged() throws IOException {
+        StringWriter written = new StringWriter();
+        CsvWriter writer = new CsvWriter(written);
+        writer.writeRow(QUOTED_RECORD);
+        writer.writeRow("plain", "");
+
+        CsvReader reader = new CsvReader(new StringReader(written.toString()));
+        assertArrayEquals(QUOTED_RECORD, reader.readRecord());
+        assertArrayEquals(new String[] { "plain", "" }, reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+}
@@ -0,0 +1,42 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import com.aaryan7.dastakmobile7.models.Bill;
+import com.aaryan7.dastakmobile7.models.BillItem;
+
+import org.junit.Test;
+
+/**
+ * Checks parsing, formatting and arithmetic on amounts held in paise
+ */
+public class MoneyTest {
+
+    @Test
+    public void parsedAmountsFormatBack() {
+        assertEquals("0.10", Money.format(Money.parse("0.1")));
+        assertEquals("12.00", Money.format(Money.parse("12")));
+        assertEquals("12.35", Money.format(Money.parse("12.345")));
+        assertEquals("-0.05", Money.format(Money.parse("-0.05")));
+        assertEquals("99.99", Money.format(Money.parse(" 99.99 ")));
+    }
+
+    @Test
+    public void billTotalDoesNotDrift() {
+        // Ten sales of 0.10 and one of 0.20 are exactly 1.20, where doubles drift
+        Bill bill = new Bill();
+        for (int i = 0; i < 10; i++) {
+            bill.addItem(new BillItem(i, "Item " + i, 1, Money.parse("0.10")));
+        }
+        bill.addItem(new BillItem(10, "Item 10", 1, Money.parse("0.20")));
+
+        assertEquals(120, bill.getTotal());
+    }
+
+    @Test
+    public void divisionRoundsHalfAwayFromZero() {
+        assertEquals(333, Money.divide(1000, 3));
+        assertEquals(501, Money.divide(1001, 2));
+        assertEquals(-501, Money.divide(-1001, 2));
+    }
+}
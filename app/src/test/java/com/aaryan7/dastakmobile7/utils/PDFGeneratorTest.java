@@ -0,0 +1,66 @@
+package com.aaryan7.dastakmobile7.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks how the lines of a bill are split over PDF pages
+ */
+public class PDFGeneratorTest {
+    // Rows that fit on an A4 page below the bill header, on later pages, and under the totals
+    private static final int FIRST_PAGE_ROWS = 31;
+    private static final int PAGE_ROWS = 34;
+    private static final int SUMMARY_ROWS = 9;
+
+    @Test
+    public void everyBillSizeFitsItsPages() {
+        for (int count = 0; count <= 300; count++) {
+            int[] starts = paginate(count);
+            String pages = count + " lines paginated as " + Arrays.toString(starts);
+            int last = starts.length - 2;
+
+            assertTrue(pages, last >= 0);
+            assertEquals(pages, 0, starts[0]);
+            assertEquals(pages, count, starts[last + 1]);
+            for (int page = 0; page <= last; page++) {
+                int lines = starts[page + 1] - starts[page];
+                int rows = page == 0 ? FIRST_PAGE_ROWS : PAGE_ROWS;
+                if (page == last) {
+                    // The totals fit below the last lines, which never leave them alone on a page
+                    assertTrue(pages, lines + SUMMARY_ROWS <= rows);
+                    assertTrue(pages, lines > 0 || count == 0);
+                } else {
+                    assertTrue(pages, lines > 0 && lines <= rows);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shortBillsStayOnOnePage() {
+        assertArrayEquals(new int[] { 0, 0 }, paginate(0));
+        assertArrayEquals(new int[] { 0, FIRST_PAGE_ROWS - SUMMARY_ROWS },
+                paginate(FIRST_PAGE_ROWS - SUMMARY_ROWS));
+    }
+
+    @Test
+    public void lastLineMovesWithTheTotals() {
+        // One line too many for the totals to fit: that line goes to the next page with them
+        int count = FIRST_PAGE_ROWS - SUMMARY_ROWS + 1;
+        assertArrayEquals(new int[] { 0, count - 1, count }, paginate(count));
+    }
+
+    @Test
+    public void fullPagesAreFilled() {
+        assertArrayEquals(new int[] { 0, FIRST_PAGE_ROWS, FIRST_PAGE_ROWS + PAGE_ROWS, 70 }, paginate(70));
+    }
+
+    private static int[] paginate(int count) {
+        return PDFGenerator.paginate(count, FIRST_PAGE_ROWS, PAGE_ROWS, SUMMARY_ROWS);
+    }
+}